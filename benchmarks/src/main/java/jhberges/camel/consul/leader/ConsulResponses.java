@@ -0,0 +1,33 @@
+package jhberges.camel.consul.leader;
+
+import java.util.Base64;
+
+/**
+ * Canned Consul responses, shaped like the real thing (including a base64 <code>Value</code>).
+ */
+final class ConsulResponses {
+	private static final String VALUE = Base64.getEncoder().encodeToString("http://node-17.example.com:8080/leader".getBytes());
+
+	private ConsulResponses() {
+	}
+
+	static String leaderKey(final String serviceName, final String session, final long index) {
+		return "[" + leaderKeyEntry(serviceName, session, index) + "]";
+	}
+
+	static String leaderKeys(final int count, final String session) {
+		final StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			json.append(leaderKeyEntry("service-" + i, session, 4711 + i));
+		}
+		return json.append(']').toString();
+	}
+
+	private static String leaderKeyEntry(final String serviceName, final String session, final long index) {
+		return "{\"LockIndex\":1,\"Key\":\"service/" + serviceName + "/leader\",\"Flags\":0,\"Value\":\"" + VALUE + "\","
+				+ "\"Session\":\"" + session + "\",\"CreateIndex\":" + (index - 1) + ",\"ModifyIndex\":" + index + "}";
+	}
+}
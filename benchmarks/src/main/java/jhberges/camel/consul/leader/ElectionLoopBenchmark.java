@@ -0,0 +1,157 @@
+package jhberges.camel.consul.leader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time for many electors in one JVM to each complete a few polls against an agent with some latency: electors
+ * scheduled on a pool of platform threads, versus each looping on a virtual thread of its own. The virtual mode needs
+ * Java 21 to run.
+ * <p>
+ * Each elector has a connection pool of its own: on Java 21 a virtual thread waiting for the lock of a shared pool is
+ * pinned to its carrier, and with enough electors contending all carriers end up pinned and the run stalls.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ElectionLoopBenchmark {
+	private static final int POLLS = 3;
+	private static final RouteControlStrategy NO_ROUTES = new RouteControlStrategy() {
+		@Override
+		public void startRoute(final CamelContext camelContext, final String routeId) {
+		}
+
+		@Override
+		public void stopRoute(final CamelContext camelContext, final String routeId) {
+		}
+	};
+
+	@Param({ "pool", "virtual" })
+	public String mode;
+
+	@Param({ "100", "500" })
+	public int electors;
+
+	@Param({ "8" })
+	public int poolThreads;
+
+	@Param({ "5" })
+	public long latencyInMillis;
+
+	private StubConsulServer consul;
+	private final List<PooledConsulHttpClient> connections = new ArrayList<>();
+	private DefaultCamelContext camelContext;
+	private ExecutorService setupPool;
+	private final List<ConsulLeaderElector> running = new ArrayList<>();
+	private final List<Future<?>> scheduled = new ArrayList<>();
+	private ScheduledExecutorService pool;
+	private CountDownLatch polled;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		if ("virtual".equals(mode) && !VirtualThreads.isAvailable()) {
+			throw new IllegalStateException("Virtual threads require Java 21 or later");
+		}
+		consul = new StubConsulServer(4, latencyInMillis);
+		for (int i = 0; i < electors; i++) {
+			connections.add(new PooledConsulHttpClient(2, 2, 2000, 10000, PooledConsulHttpClient.DEFAULT_KEEP_ALIVE_IN_MILLIS));
+		}
+		camelContext = new DefaultCamelContext();
+		setupPool = Executors.newFixedThreadPool(64);
+	}
+
+	@Setup(Level.Invocation)
+	public void createElectors() throws Exception {
+		polled = new CountDownLatch(electors);
+		final List<Future<ConsulLeaderElector>> created = new ArrayList<>();
+		for (final PooledConsulHttpClient pooled : connections) {
+			created.add(setupPool.submit(() -> {
+				final ConsulFacadeBean facade = new ConsulFacadeBean(consul.getUrl(),
+						new FluentConsulHttpTransport(pooled.newExecutor(), Runnable::run, Optional.of(pooled), false),
+						10, 0, 1, 1, 1.0);
+				final ConsulLeaderElector elector = new ConsulLeaderElector(facade, PollBenchmark.SERVICE_NAME, "route",
+						camelContext, null, true);
+				elector.setRouteControl(NO_ROUTES);
+				final AtomicInteger polls = new AtomicInteger();
+				elector.setMetrics(new ElectionMetrics() {
+					@Override
+					public void pollCompleted(final String serviceName, final Optional<Boolean> result) {
+						if (polls.incrementAndGet() == POLLS) {
+							polled.countDown();
+						}
+					}
+				});
+				return elector;
+			}));
+		}
+		for (final Future<ConsulLeaderElector> elector : created) {
+			running.add(elector.get());
+		}
+		pool = Executors.newScheduledThreadPool(poolThreads);
+	}
+
+	@TearDown(Level.Invocation)
+	public void stopElectors() throws Exception {
+		scheduled.forEach(future -> future.cancel(false));
+		scheduled.clear();
+		pool.shutdownNow();
+		final List<Future<?>> stopped = new ArrayList<>();
+		running.forEach(elector -> stopped.add(setupPool.submit(() -> elector.onContextStop(camelContext))));
+		for (final Future<?> stop : stopped) {
+			stop.get();
+		}
+		running.clear();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		setupPool.shutdownNow();
+		for (final PooledConsulHttpClient pooled : connections) {
+			pooled.close();
+		}
+		connections.clear();
+		consul.close();
+	}
+
+	@Benchmark
+	public void electUntilAllPolled() throws InterruptedException {
+		for (final ConsulLeaderElector elector : running) {
+			if ("virtual".equals(mode)) {
+				elector.startLoop(VirtualThreads.newThread("elector", elector.loop(0, () -> elector.electStep(1))));
+			} else {
+				scheduled.add(pool.scheduleWithFixedDelay(elector, 0, 1, TimeUnit.MILLISECONDS));
+			}
+		}
+		if (!polled.await(5, TimeUnit.MINUTES)) {
+			throw new IllegalStateException("Electors did not complete their polls");
+		}
+	}
+}
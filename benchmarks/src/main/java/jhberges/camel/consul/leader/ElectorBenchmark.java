@@ -0,0 +1,74 @@
+package jhberges.camel.consul.leader;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One scheduled tick of {@link ConsulLeaderElector#run()} in steady state: the route is already in the state the poll
+ * asks for, so this is the poll plus the route status lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ElectorBenchmark {
+	private static final String ROUTE_ID = "benchmark-route";
+
+	@Param({ "leader", "follower" })
+	public String role;
+
+	private StubConsulServer consul;
+	private ConsulFacadeBean facade;
+	private DefaultCamelContext camelContext;
+	private ConsulLeaderElector elector;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		consul = new StubConsulServer(4);
+		if ("follower".equals(role)) {
+			consul.lockByOtherSession(PollBenchmark.SERVICE_NAME);
+		}
+		facade = PollBenchmark.newFacade(consul.getUrl());
+		camelContext = new DefaultCamelContext();
+		camelContext.addRoutes(new RouteBuilder() {
+			@Override
+			public void configure() throws Exception {
+				from("direct:benchmark").routeId(ROUTE_ID).noAutoStartup().to("log:benchmark?level=OFF");
+			}
+		});
+		camelContext.start();
+		elector = new ConsulLeaderElector(facade, PollBenchmark.SERVICE_NAME, ROUTE_ID, camelContext,
+				camelContext.createProducerTemplate(), false);
+		camelContext.addLifecycleStrategy(elector);
+		elector.run();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		camelContext.stop(); // closes the facade through the elector
+		consul.close();
+	}
+
+	@Benchmark
+	public void run() {
+		elector.run();
+	}
+}
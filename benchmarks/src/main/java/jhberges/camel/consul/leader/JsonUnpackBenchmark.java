@@ -0,0 +1,83 @@
+package jhberges.camel.consul.leader;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Unpacking of leader key responses: the streaming parser against the former <code>ObjectMapper</code> into
+ * <code>List&lt;Map&lt;String, String&gt;&gt;</code> approach. Run with <code>-prof gc</code> to compare allocation
+ * per poll.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonUnpackBenchmark {
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Param({ "1", "40" })
+	public int keys;
+
+	private byte[] keyResponse;
+	private byte[] recursiveResponse;
+
+	@Setup
+	public void setup() {
+		keyResponse = ConsulResponses.leaderKey("service-0", "adf4238a-882b-9ddc-4a9d-5b6758e4159e", 4711).getBytes();
+		recursiveResponse = ConsulResponses.leaderKeys(keys, "adf4238a-882b-9ddc-4a9d-5b6758e4159e").getBytes();
+	}
+
+	@Benchmark
+	public Optional<String> keyDatabind() throws IOException {
+		final List<Map<String, String>> mapList = objectMapper.readValue(keyResponse,
+				new TypeReference<List<Map<String, String>>>() {
+				});
+		return mapList.stream().findFirst().map(map -> map.get("Session"));
+	}
+
+	@Benchmark
+	public Optional<String> keyStreaming() throws IOException {
+		return ConsulResponseParser.keyState(keyResponse).flatMap(ConsulResponseParser.KeyState::getSession);
+	}
+
+	@Benchmark
+	public int recursiveDatabind() throws IOException {
+		final List<Map<String, String>> mapList = objectMapper.readValue(recursiveResponse,
+				new TypeReference<List<Map<String, String>>>() {
+				});
+		int held = 0;
+		for (final Map<String, String> entry : mapList) {
+			if (entry.get("Session") != null && entry.get("Key").endsWith("/leader")) {
+				held++;
+			}
+		}
+		return held;
+	}
+
+	@Benchmark
+	public int recursiveStreaming() throws IOException {
+		return (int) ConsulResponseParser.leaderKeyStates(recursiveResponse).values().stream()
+				.filter(state -> state.getSession().isPresent())
+				.count();
+	}
+}
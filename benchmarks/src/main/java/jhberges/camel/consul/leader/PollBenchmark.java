@@ -0,0 +1,93 @@
+package jhberges.camel.consul.leader;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Round trips of the facade against {@link StubConsulServer} over loopback, as the leader (renew and check) and as a
+ * follower (renew, check and a failed acquire).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PollBenchmark {
+	static final String SERVICE_NAME = "benchmark";
+
+	@Param({ "leader", "follower" })
+	public String role;
+
+	@Param({ "false", "true" })
+	public boolean transactions;
+
+	@Param({ "false", "true" })
+	public boolean leaderLease;
+
+	private StubConsulServer consul;
+	private ConsulFacadeBean facade;
+	private Optional<String> sessionKey;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		try {
+			consul = new StubConsulServer(4);
+		} catch (final IOException e) {
+			throw new IllegalStateException(e);
+		}
+		if ("follower".equals(role)) {
+			consul.lockByOtherSession(SERVICE_NAME);
+		}
+		facade = newFacade(consul.getUrl());
+		facade.setUseTransactions(transactions);
+		// Half the stub session's TTL
+		facade.setLeaderLeaseInMillis(leaderLease ? 4000 : 0);
+		sessionKey = facade.initSessionKey(SERVICE_NAME);
+		if (!sessionKey.isPresent()) {
+			throw new IllegalStateException("No session from stub at " + consul.getUrl());
+		}
+		final Optional<Boolean> expected = Optional.of("leader".equals(role));
+		if (!expected.equals(facade.pollConsul(SERVICE_NAME))) {
+			throw new IllegalStateException("Stub did not make us " + role);
+		}
+	}
+
+	static ConsulFacadeBean newFacade(final String consulUrl) {
+		final PooledConsulHttpClient pool = new PooledConsulHttpClient();
+		return new ConsulFacadeBean(consulUrl,
+				new FluentConsulHttpTransport(pool.newExecutor(), Runnable::run, Optional.of(pool), true),
+				8, 1, 1, 1, 1.0);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		facade.close();
+		consul.close();
+	}
+
+	@Benchmark
+	public Optional<Boolean> pollConsul() {
+		return facade.pollConsul(SERVICE_NAME);
+	}
+
+	@Benchmark
+	public boolean isCurrentLeader() {
+		return facade.isCurrentLeader(consul.getUrl(), SERVICE_NAME, sessionKey);
+	}
+}
@@ -0,0 +1,239 @@
+package jhberges.camel.consul.leader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Just enough of the Consul HTTP API for the poll path: sessions, <code>service/&lt;name&gt;/leader</code> keys with
+ * <code>?acquire=</code>, recursive reads and <code>/v1/txn</code>. No TTLs, no blocking -- responses are immediate so
+ * that the benchmarks measure the client, unless a latency is given, by which each response is held back (without
+ * holding a thread).
+ */
+class StubConsulServer implements Closeable {
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+	private static final String SESSION_PREFIX = "/v1/session/";
+	private static final String KV_PREFIX = "/v1/kv/";
+
+	static {
+		// Otherwise Nagle on the response body meets delayed ACK on loopback, and every request takes ~40ms
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		// And keep-alive connections beyond the default 200 are closed, which clients then find out the hard way
+		System.setProperty("sun.net.httpserver.maxIdleConnections", "2000");
+	}
+
+	private final HttpServer server;
+	private final ExecutorService handlers;
+	private final ScheduledExecutorService delayed;
+	private final long latencyInMillis;
+	private final Set<String> sessions = ConcurrentHashMap.newKeySet();
+	private final Map<String, String> holders = new ConcurrentHashMap<>();
+	private final AtomicLong index = new AtomicLong(1);
+
+	StubConsulServer(final int handlerThreads) throws IOException {
+		this(handlerThreads, 0);
+	}
+
+	StubConsulServer(final int handlerThreads, final long latencyInMillis) throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+		handlers = Executors.newFixedThreadPool(handlerThreads);
+		delayed = Executors.newSingleThreadScheduledExecutor();
+		this.latencyInMillis = latencyInMillis;
+		server.setExecutor(handlers);
+		server.createContext("/", this::handleOrDelay);
+		server.start();
+	}
+
+	String getUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	/**
+	 * Creates a session that is not ours and lets it hold the leader key of <code>serviceName</code>.
+	 */
+	void lockByOtherSession(final String serviceName) {
+		final String other = UUID.randomUUID().toString();
+		sessions.add(other);
+		holders.put(ConsulResponseParser.LEADER_KEY_PREFIX + serviceName + ConsulResponseParser.LEADER_KEY_SUFFIX, other);
+		index.incrementAndGet();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		delayed.shutdownNow();
+		handlers.shutdownNow();
+		try {
+			handlers.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void handleOrDelay(final HttpExchange exchange) throws IOException {
+		if (latencyInMillis <= 0) {
+			handle(exchange);
+			return;
+		}
+		delayed.schedule(() -> handlers.execute(() -> {
+			try {
+				handle(exchange);
+			} catch (final IOException e) {
+				// The client went away
+			}
+		}), latencyInMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void handle(final HttpExchange exchange) throws IOException {
+		try {
+			final String path = exchange.getRequestURI().getPath();
+			final String query = Optional.ofNullable(exchange.getRequestURI().getQuery()).orElse("");
+			final byte[] body = readBody(exchange.getRequestBody());
+			if (path.startsWith(SESSION_PREFIX)) {
+				session(exchange, path.substring(SESSION_PREFIX.length()));
+			} else if (path.equals("/v1/txn")) {
+				transaction(exchange, body);
+			} else if (path.startsWith(KV_PREFIX)) {
+				keyValue(exchange, path.substring(KV_PREFIX.length()), query);
+			} else {
+				respond(exchange, 404, "");
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void session(final HttpExchange exchange, final String operation) throws IOException {
+		if (operation.equals("create")) {
+			final String id = UUID.randomUUID().toString();
+			sessions.add(id);
+			respond(exchange, 200, "{\"ID\":\"" + id + "\"}");
+		} else if (operation.startsWith("renew/")) {
+			final String id = operation.substring("renew/".length());
+			if (sessions.contains(id)) {
+				respond(exchange, 200, "[{\"ID\":\"" + id + "\",\"TTL\":\"8s\",\"Behavior\":\"release\"}]");
+			} else {
+				respond(exchange, 404, "Session id '" + id + "' not found");
+			}
+		} else if (operation.startsWith("destroy/")) {
+			final String id = operation.substring("destroy/".length());
+			sessions.remove(id);
+			holders.values().removeIf(id::equals);
+			respond(exchange, 200, "true");
+		} else {
+			respond(exchange, 404, "");
+		}
+	}
+
+	private void keyValue(final HttpExchange exchange, final String key, final String query) throws IOException {
+		if ("PUT".equals(exchange.getRequestMethod())) {
+			if (query.startsWith("acquire=")) {
+				respond(exchange, 200, String.valueOf(acquire(key, query.substring("acquire=".length()))));
+			} else if (query.startsWith("release=")) {
+				final String session = query.substring("release=".length());
+				respond(exchange, 200, String.valueOf(holders.remove(key, session)));
+			} else {
+				respond(exchange, 200, "true");
+			}
+		} else if (query.contains("recurse")) {
+			final StringBuilder json = new StringBuilder("[");
+			holders.forEach((heldKey, session) -> {
+				if (heldKey.startsWith(key)) {
+					json.append(json.length() > 1 ? "," : "").append(entry(heldKey, session));
+				}
+			});
+			respond(exchange, 200, json.append(']').toString());
+		} else {
+			final String session = holders.get(key);
+			respond(exchange, session == null ? 404 : 200, session == null ? "" : "[" + entry(key, session) + "]");
+		}
+	}
+
+	private void transaction(final HttpExchange exchange, final byte[] body) throws IOException {
+		final List<Map<String, Map<String, String>>> operations = objectMapper.readValue(body,
+				new TypeReference<List<Map<String, Map<String, String>>>>() {
+				});
+		final StringBuilder results = new StringBuilder("{\"Results\":[");
+		for (final Map<String, Map<String, String>> operation : operations) {
+			final Map<String, String> kv = operation.get("KV");
+			final String key = kv.get("Key");
+			final boolean ok;
+			switch (kv.get("Verb")) {
+			case "lock":
+				ok = acquire(key, kv.get("Session"));
+				break;
+			case "check-session":
+				ok = kv.get("Session").equals(holders.get(key));
+				break;
+			default:
+				ok = true;
+			}
+			if (!ok) {
+				respond(exchange, 409, "{\"Results\":null,\"Errors\":[{\"OpIndex\":0,\"What\":\"failed to lock key\"}]}");
+				return;
+			}
+			results.append(results.charAt(results.length() - 1) == '[' ? "" : ",")
+					.append("{\"KV\":").append(entry(key, holders.get(key))).append('}');
+		}
+		respond(exchange, 200, results.append("],\"Errors\":null}").toString());
+	}
+
+	private boolean acquire(final String key, final String session) {
+		if (!sessions.contains(session)) {
+			return false;
+		}
+		final String holder = holders.putIfAbsent(key, session);
+		if (holder == null) {
+			index.incrementAndGet();
+		}
+		return holder == null || holder.equals(session);
+	}
+
+	private String entry(final String key, final String session) {
+		return "{\"LockIndex\":1,\"Key\":\"" + key + "\",\"Flags\":0,\"Value\":null,"
+				+ (session == null ? "" : "\"Session\":\"" + session + "\",")
+				+ "\"CreateIndex\":1,\"ModifyIndex\":" + index.get() + "}";
+	}
+
+	private void respond(final HttpExchange exchange, final int status, final String body) throws IOException {
+		final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set(ConsulFacadeBean.CONSUL_INDEX_HEADER, String.valueOf(index.get()));
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+		if (bytes.length > 0) {
+			try (final OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+		}
+	}
+
+	private static byte[] readBody(final InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[1024];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+}
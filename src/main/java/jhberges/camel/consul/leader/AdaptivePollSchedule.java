@@ -0,0 +1,72 @@
+package jhberges.camel.consul.leader;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delay until the next poll, depending on what the last one found:
+ * <ul>
+ * <li>leader: only the session needs renewing, so a third of the TTL</li>
+ * <li>follower: the poll interval (capped by the renewal interval), or at most a second while the leader key is
+ * vacant but could not be acquired, e.g. during lock-delay</li>
+ * <li>unknown (Consul erroring or unreachable): exponential backoff from the poll interval, up to half the TTL</li>
+ * </ul>
+ * All delays are jittered, and so is the initial delay, so that nodes started together do not poll together.
+ */
+public final class AdaptivePollSchedule {
+	private static final double JITTER = 0.1;
+	private static final long VACANT_INTERVAL_IN_MILLIS = 1000;
+	private static final int MAX_BACKOFF_EXPONENT = 16;
+
+	private final long renewIntervalInMillis;
+	private final long followerIntervalInMillis;
+	private final long maxBackoffInMillis;
+	private volatile int consecutiveFailures = 0;
+
+	public AdaptivePollSchedule(final int ttlInSeconds, final long pollIntervalInSeconds) {
+		final long ttlInMillis = TimeUnit.SECONDS.toMillis(Math.max(1, ttlInSeconds));
+		this.renewIntervalInMillis = ttlInMillis / 3;
+		this.followerIntervalInMillis = Math.min(renewIntervalInMillis, TimeUnit.SECONDS.toMillis(Math.max(1, pollIntervalInSeconds)));
+		this.maxBackoffInMillis = Math.max(followerIntervalInMillis, ttlInMillis / 2);
+	}
+
+	/**
+	 * @return <code>initialDelay</code> plus a random share of the follower interval
+	 */
+	public long initialDelayInMillis(final long initialDelay, final TimeUnit unit) {
+		return unit.toMillis(initialDelay) + ThreadLocalRandom.current().nextLong(followerIntervalInMillis);
+	}
+
+	public long nextDelayInMillis(final LeadershipState state, final boolean leaderKeyVacant) {
+		switch (state) {
+		case LEADER:
+			consecutiveFailures = 0;
+			return jittered(renewIntervalInMillis);
+		case FOLLOWER:
+			consecutiveFailures = 0;
+			return jittered(leaderKeyVacant ? Math.min(VACANT_INTERVAL_IN_MILLIS, followerIntervalInMillis) : followerIntervalInMillis);
+		default:
+			final int failures = Math.min(consecutiveFailures++, MAX_BACKOFF_EXPONENT);
+			final long backoff = Math.min(maxBackoffInMillis, followerIntervalInMillis << failures);
+			// "Equal jitter": at least half the backoff, so that retries keep backing off
+			return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+		}
+	}
+
+	private static long jittered(final long intervalInMillis) {
+		final long spread = (long) (intervalInMillis * JITTER);
+		return intervalInMillis - spread + ThreadLocalRandom.current().nextLong(2 * spread + 1);
+	}
+
+	long getRenewIntervalInMillis() {
+		return renewIntervalInMillis;
+	}
+
+	long getFollowerIntervalInMillis() {
+		return followerIntervalInMillis;
+	}
+
+	long getMaxBackoffInMillis() {
+		return maxBackoffInMillis;
+	}
+}
@@ -0,0 +1,11 @@
+package jhberges.camel.consul.leader;
+
+public interface ConnectionPoolStatisticsMXBean {
+	int getLeased();
+
+	int getAvailable();
+
+	int getPending();
+
+	int getMax();
+}
@@ -4,92 +4,319 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
-import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.fluent.Executor;
-import org.apache.http.client.fluent.Request;
-import org.apache.http.client.fluent.Response;
-import org.apache.http.entity.ContentType;
-import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 public class ConsulFacadeBean implements Closeable {
 	private static final Logger logger = LoggerFactory.getLogger(ConsulFacadeBean.class);
 
-	private static final ObjectMapper objectMapper = new ObjectMapper();
-	private Optional<String> sessionKey = Optional.empty();
+	static final String CONSUL_INDEX_HEADER = "X-Consul-Index";
+	private static final int BLOCKING_QUERY_SOCKET_MARGIN_IN_SECONDS = 5;
+	private static final String LEADER_KEY_PREFIX = ConsulResponseParser.LEADER_KEY_PREFIX;
+	private static final String LEADER_KEY_SUFFIX = ConsulResponseParser.LEADER_KEY_SUFFIX;
+	private static final String ALL_LEADER_KEYS = "*";
+	// Only fires retry delays: the retried request is handed to the transport, which does not block on I/O
+	private static final ScheduledExecutorService retryTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		final Thread thread = new Thread(runnable, "consul-leader-retry-timer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private volatile Optional<String> sessionKey = Optional.empty();
+	private volatile String renewUri;
+	private CompletableFuture<Optional<String>> pendingSessionKey;
+	private final Map<String, Long> leaderKeyIndexes = new ConcurrentHashMap<>();
+	private final Set<String> lockedServices = ConcurrentHashMap.newKeySet();
+	private volatile boolean useTransactions = false;
+	private volatile boolean fairShare = false;
+	// Request URIs are built once per service/session rather than formatted on every poll
+	private final Map<String, String> leaderKeyUris = new ConcurrentHashMap<>();
+	private volatile ElectionMetrics metrics = ElectionMetrics.NONE;
+	// When each leader key was first seen without a holder (e.g. held back by lock-delay)
+	private final Map<String, Long> vacantSince = new ConcurrentHashMap<>();
+	// LockIndex of each leader key when last read, and the highest one held by this session
+	private final Map<String, Long> lockIndexes = new ConcurrentHashMap<>();
+	private final Map<String, Long> fencingTokens = new ConcurrentHashMap<>();
+	// Until when (System.nanoTime()) each service is handed over, and not to be led by this session
+	private final Map<String, Long> heldOffUntil = new ConcurrentHashMap<>();
+	// Until when (System.nanoTime()) leadership of each service is trusted without reading its leader key
+	private final Map<String, Long> leaderLeases = new ConcurrentHashMap<>();
+	private volatile long leaderLeaseInMillis = 0;
+	private volatile Optional<SessionStateFile> stateFile = Optional.empty();
+	private volatile boolean keepingSessionOnClose = false;
+	// Address published in the Value of the leader keys acquired by this session, and base64 encoded as Consul has it
+	private volatile Optional<String> advertisedAddress = Optional.empty();
+	private volatile Optional<String> advertisedValue = Optional.empty();
+	// Address of the leader of each service, decoded only when its Value changes
+	private final Map<String, String> leaderValues = new ConcurrentHashMap<>();
+	private final Map<String, String> leaderAddresses = new ConcurrentHashMap<>();
+	// Renewal left to a timer shared with other facades, and when (System.nanoTime()) the session was last renewed
+	private volatile SessionRenewer sessionRenewer;
+	private volatile boolean renewed = false;
+	private volatile long renewedAt;
+	private final AtomicBoolean renewing = new AtomicBoolean();
+	private volatile String sessionName;
 
-	private static String leaderKey(final String baseUrl, final String serviceName, final String command, final String sessionKey) {
-		return String.format("%s/v1/kv/service/%s/leader?%s=%s", baseUrl, serviceName, command, sessionKey);
+	private String leaderKeyUri(final String serviceName) {
+		return leaderKeyUris.computeIfAbsent(String.valueOf(serviceName),
+				name -> consulUrl + "/v1/kv/" + leaderKeyName(name));
 	}
 
-	private static String leaderKeyInfo(final String baseUrl, final String serviceName) {
-		return String.format("%s/v1/kv/service/%s/leader", baseUrl, serviceName);
+	private static String leaderKeyName(final String serviceName) {
+		return LEADER_KEY_PREFIX + serviceName + LEADER_KEY_SUFFIX;
 	}
 
-	private boolean renewSession(final Executor executor, final String url, final String serviceName) throws IOException {
-		assert sessionKey.isPresent();
-		final String _sessionKey = sessionKey.get();
-		final String uri = String.format("%s/v1/session/renew/%s", url, _sessionKey);
-		logger.debug("PUT {}", uri);
-		final Response response = executor.execute(Request.Put(uri));
-		boolean renewedOk = response.returnResponse().getStatusLine().getStatusCode() == 200;
-
-		logger.debug("Session {} renewed={}", _sessionKey, renewedOk);
-		if (!renewedOk) {
-			logger.debug("Attempting to re-establish session for serviceName={}", serviceName);
-			destroySession(url, _sessionKey);
-			sessionKey = Optional.empty();
-			sessionKey = initSessionKey(serviceName);
-			renewedOk = sessionKey.isPresent();
+	private void setSessionKey(final Optional<String> newSessionKey) {
+		renewUri = newSessionKey.map(_sessionKey -> consulUrl + "/v1/session/renew/" + _sessionKey).orElse(null);
+		sessionKey = newSessionKey;
+		// A session just created (or restored) needs no renewal for now
+		renewedAt = System.nanoTime();
+		renewed = newSessionKey.isPresent();
+		saveState();
+		newSessionKey.ifPresent(_sessionKey -> metrics.sessionCreated(Objects.toString(sessionName, ""), _sessionKey));
+	}
+
+	private void saveState() {
+		stateFile.ifPresent(file -> file.save(sessionKey, fencingTokens));
+	}
+
+	private static Optional<ConsulResponseParser.KeyState> unpackTransactionKeyState(final ConsulHttpResponse response) {
+		try {
+			return ConsulResponseParser.lastTransactionKeyState(response.getBody());
+		} catch (final IOException e) {
+			logger.warn("Failed to parse JSON: {}\n {}", response.asString(), e.getMessage());
 		}
-		return renewedOk;
+		return Optional.empty();
 	}
 
-	private static Optional<String> unpackCurrentSessionOnKey(final HttpEntity entity) {
+	private static <T> T await(final CompletableFuture<T> future) {
 		try {
-			final List<Map<String, String>> mapList = objectMapper.readValue(entity.getContent(),
-					new TypeReference<List<Map<String, String>>>() {
-					});
-			if (Objects.nonNull(mapList)) {
-				return mapList.stream().findFirst()
-						.map(stringStringMap -> stringStringMap.get("Session"));
+			return future.join();
+		} catch (final CompletionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private static CompletableFuture<Void> delay(final long millis) {
+		if (millis <= 0) {
+			return CompletableFuture.completedFuture(null);
+		}
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+		retryTimer.schedule(() -> future.complete(null), millis, TimeUnit.MILLISECONDS);
+		return future;
+	}
+
+	private static Throwable unwrap(final Throwable throwable) {
+		return throwable instanceof CompletionException && Objects.nonNull(throwable.getCause())
+				? throwable.getCause()
+				: throwable;
+	}
+
+	private CompletableFuture<ConsulHttpResponse> execute(final String name, final ElectionMetrics.Operation operation,
+			final ConsulHttpRequest request) {
+		final ElectionMetrics _metrics = metrics;
+		if (_metrics == ElectionMetrics.NONE) {
+			return transport.execute(request);
+		}
+		final long started = System.nanoTime();
+		return transport.execute(request)
+				.whenComplete((response, throwable) -> _metrics.requestCompleted(name, operation, System.nanoTime() - started,
+						Objects.isNull(throwable) && isExpectedStatus(operation, response.getStatusCode())));
+	}
+
+	private static boolean isExpectedStatus(final ElectionMetrics.Operation operation, final int statusCode) {
+		switch (operation) {
+		case CHECK:
+			return statusCode == 200 || statusCode == 404;
+		case TRANSACTION:
+			return statusCode == 200 || statusCode == 409;
+		default:
+			return statusCode == 200;
+		}
+	}
+
+	private void observeHolder(final String serviceName, final Optional<String> holder) {
+		if (holder.isPresent()) {
+			vacantSince.remove(serviceName);
+		} else {
+			vacantSince.putIfAbsent(serviceName, System.nanoTime());
+			observeAddress(serviceName, Optional.empty());
+		}
+	}
+
+	private void observeAddress(final String serviceName, final Optional<String> value) {
+		if (!value.isPresent()) {
+			leaderValues.remove(serviceName);
+			leaderAddresses.remove(serviceName);
+		} else if (!value.get().equals(leaderValues.put(serviceName, value.get()))) {
+			final String address = new String(Base64.getDecoder().decode(value.get()), StandardCharsets.UTF_8);
+			if (address.isEmpty()) {
+				leaderAddresses.remove(serviceName);
+			} else {
+				leaderAddresses.put(serviceName, address);
 			}
-		} catch (UnsupportedOperationException | IOException e) {
-			logger.warn("Failed to parse JSON: {}\n {}", entity.toString(), e.getMessage());
+		}
+	}
+
+	private void observeKey(final String serviceName, final ConsulResponseParser.KeyState state, final String _sessionKey) {
+		lockIndexes.put(serviceName, state.getLockIndex());
+		observeAddress(serviceName, state.getSession().isPresent() ? state.getValue() : Optional.empty());
+		if (state.getSession().filter(_sessionKey::equals).isPresent()) {
+			fence(serviceName, state.getLockIndex());
+		}
+	}
+
+	private void fence(final String serviceName, final long token) {
+		final Long previous = fencingTokens.get(serviceName);
+		if (Objects.isNull(previous) || previous < token) {
+			fencingTokens.merge(serviceName, token, Math::max);
+			saveState();
+		}
+	}
+
+	private void acquired(final String serviceName, final String _sessionKey) {
+		logger.info("Leadership acquired: session={} service={}", _sessionKey, serviceName);
+		final Long since = vacantSince.remove(serviceName);
+		if (Objects.nonNull(since)) {
+			metrics.failoverCompleted(serviceName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - since));
+		}
+	}
+
+	private long ttlInNanos() {
+		// Sessions are created with a TTL of at least 10 seconds
+		return TimeUnit.SECONDS.toNanos(Math.max(10, ttlInSeconds));
+	}
+
+	private CompletableFuture<Boolean> renewSessionAsync(final String serviceName) {
+		// With a renewer, a poll within half the TTL of the latest renewal does not renew again
+		if (Objects.nonNull(sessionRenewer) && renewed && System.nanoTime() - renewedAt < ttlInNanos() / 2) {
+			logger.debug("Session {} renewed by the renewer -- not renewed on poll", sessionKey.orElse(null));
+			return CompletableFuture.completedFuture(true);
+		}
+		return renewSessionNowAsync(serviceName);
+	}
+
+	/**
+	 * @return whether the session was last renewed a third of the TTL before <code>now</code> (or not renewed by the
+	 *         latest attempt), and no renewal by the {@link SessionRenewer} is still under way
+	 */
+	boolean isSessionRenewalDue(final long now) {
+		return sessionKey.isPresent() && !renewing.get() && (!renewed || now - renewedAt >= ttlInNanos() / 3);
+	}
+
+	/**
+	 * Renews the session if {@link #isSessionRenewalDue(long) due}; called by the {@link SessionRenewer}.
+	 */
+	void renewSessionIfDue(final long now) {
+		if (isSessionRenewalDue(now) && renewing.compareAndSet(false, true)) {
+			try {
+				renewSessionNowAsync(Objects.nonNull(sessionName) ? sessionName : "")
+						.whenComplete((ok, throwable) -> renewing.set(false))
+						.exceptionally(throwable -> {
+							logger.warn("Failed to renew session: {}", unwrap(throwable).getMessage());
+							return false;
+						});
+			} catch (final RuntimeException e) {
+				renewing.set(false);
+				throw e;
+			}
+		}
+	}
+
+	private CompletableFuture<Boolean> renewSessionNowAsync(final String serviceName) {
+		final String _sessionKey = sessionKey.get();
+		final String uri = renewUri;
+		logger.debug("PUT {}", uri);
+		final long started = System.nanoTime();
+		return execute(serviceName, ElectionMetrics.Operation.RENEW, ConsulHttpRequest.put(uri))
+				.thenCompose(response -> {
+					final boolean renewedOk = response.getStatusCode() == 200;
+					logger.debug("Session {} renewed={}", _sessionKey, renewedOk);
+					if (renewedOk) {
+						renewedAt = started;
+						renewed = true;
+						return CompletableFuture.completedFuture(true);
+					}
+					renewed = false;
+					logger.debug("Attempting to re-establish session for serviceName={}", serviceName);
+					leaderLeases.clear();
+					metrics.sessionRecreated(serviceName);
+					return destroySessionAsync(consulUrl, _sessionKey)
+							.thenCompose(ignored -> {
+								setSessionKey(Optional.empty());
+								lockedServices.clear();
+								return initSessionKeyAsync(serviceName);
+							})
+							.thenApply(Optional::isPresent);
+				})
+				.whenComplete((ok, throwable) -> {
+					if (Objects.nonNull(throwable)) {
+						// Whether the session is still alive is unknown, and so is the lock
+						renewed = false;
+						leaderLeases.clear();
+					}
+				});
+	}
+
+	private static Optional<ConsulResponseParser.KeyState> unpackKeyState(final ConsulHttpResponse response) {
+		try {
+			return ConsulResponseParser.keyState(response.getBody());
+		} catch (final IOException e) {
+			logger.warn("Failed to parse JSON: {}\n {}", response.asString(), e.getMessage());
 		}
 		return Optional.empty();
 	}
 
-	private static Optional<String> unpackSessionKey(final HttpEntity entity) {
+	private static Map<String, ConsulResponseParser.KeyState> unpackLeaderKeyStates(final ConsulHttpResponse response) {
 		try {
-			final Map<String, String> map = objectMapper.readValue(entity.getContent(), new TypeReference<Map<String, String>>() {
-			});
-			if (Objects.nonNull(map) && map.containsKey("ID")) {
-				return Optional.ofNullable(map.get("ID"));
-			} else {
+			return ConsulResponseParser.leaderKeyStates(response.getBody());
+		} catch (final IOException e) {
+			logger.warn("Failed to parse JSON: {}\n {}", response.asString(), e.getMessage());
+		}
+		return new HashMap<>();
+	}
+
+	private static Optional<String> unpackSessionKey(final ConsulHttpResponse response) {
+		try {
+			final Optional<String> id = ConsulResponseParser.sessionId(response.getBody());
+			if (!id.isPresent()) {
 				logger.warn("What? No \"ID\"?");
 			}
-		} catch (UnsupportedOperationException | IOException e) {
-			logger.warn("Failed to parse JSON: {}\n {}", entity.toString(), e.getMessage());
+			return id;
+		} catch (final IOException e) {
+			logger.warn("Failed to parse JSON: {}\n {}", response.asString(), e.getMessage());
 		}
 		return Optional.empty();
 	}
 
 	private final String consulUrl;
-	private final Executor executor;
+	private final String leaderKeysUri;
+	private final String transactionUri;
+	private final String sessionListUri;
+	private final ConsulHttpTransport transport;
 	private int ttlInSeconds;
 	private int lockDelayInSeconds;
 	private int createSessionTries;
@@ -99,7 +326,15 @@ public class ConsulFacadeBean implements Closeable {
 	public ConsulFacadeBean(final String consulUrl, final Optional<String> username, final Optional<String> password,
 			final int ttlInSeconds, final int lockDelayInSeconds, final boolean allowIslandMode, final int createSessionTries, final int retryPeriod, final double backOffMultiplier)
 			throws MalformedURLException {
-		this(consulUrl, username, password, Executor.newInstance());
+		this(consulUrl, username, password, Executor.newInstance(),
+				ttlInSeconds, lockDelayInSeconds, createSessionTries, retryPeriod, backOffMultiplier);
+	}
+
+	public ConsulFacadeBean(final String consulUrl, final Optional<String> username, final Optional<String> password,
+			final Executor executor,
+			final int ttlInSeconds, final int lockDelayInSeconds, final int createSessionTries, final int retryPeriod, final double backOffMultiplier)
+			throws MalformedURLException {
+		this(consulUrl, username, password, executor);
 		this.ttlInSeconds = ttlInSeconds;
 		this.lockDelayInSeconds = lockDelayInSeconds;
 		this.createSessionTries = createSessionTries;
@@ -110,69 +345,96 @@ public class ConsulFacadeBean implements Closeable {
 	public ConsulFacadeBean(final String consulUrl, final Optional<String> username, final Optional<String> password,
 			final Executor executor)
 					throws MalformedURLException {
+		this(consulUrl, new FluentConsulHttpTransport(authenticated(executor, consulUrl, username, password)));
+	}
+
+	public ConsulFacadeBean(final String consulUrl, final ConsulHttpTransport transport,
+			final int ttlInSeconds, final int lockDelayInSeconds, final int createSessionTries, final int retryPeriod, final double backOffMultiplier) {
+		this(consulUrl, transport);
+		this.ttlInSeconds = ttlInSeconds;
+		this.lockDelayInSeconds = lockDelayInSeconds;
+		this.createSessionTries = createSessionTries;
+		this.retryPeriod = retryPeriod;
+		this.backOffMultiplier = backOffMultiplier;
+	}
+
+	public ConsulFacadeBean(final String consulUrl, final ConsulHttpTransport transport) {
 		this.consulUrl = consulUrl;
-		this.executor = executor;
+		this.leaderKeysUri = consulUrl + "/v1/kv/" + LEADER_KEY_PREFIX + "?recurse";
+		this.transactionUri = consulUrl + "/v1/txn";
+		this.sessionListUri = consulUrl + "/v1/session/list";
+		this.transport = transport;
+	}
+
+	static Executor authenticated(final Executor executor, final String consulUrl,
+			final Optional<String> username, final Optional<String> password) throws MalformedURLException {
 		if (username.isPresent()) {
 			executor
 					.auth(username.get(), password.get())
 					.authPreemptive(new HttpHost(new URL(consulUrl).getHost()));
 		}
+		return executor;
 	}
 
 	public Optional<String> createSession(final String serviceName,
 			final int ttlInSeconds, final int lockDelayInSeconds, final int createSessionTries, final int retryPeriod,
 			final double backOffMultiplier) {
-		HttpResponse response;
-		for (int i = 0; i < createSessionTries; i++) {
-			try {
-				final String sessionUrl = String.format("%s/v1/session/create", consulUrl);
-				final String sessionBody = String.format("{\"Name\": \"%s\", \"TTL\": \"%ds\", \"LockDelay\" : \"%ds\"}",
-						serviceName,
-						10 > ttlInSeconds ? 10 : ttlInSeconds,
-						0 > lockDelayInSeconds ? 0 : lockDelayInSeconds);
-				logger.debug("PUT {}\n{}", sessionUrl, sessionBody);
-				response = executor.execute(
-						Request.Put(sessionUrl)
-								.bodyString(
-										sessionBody,
-										ContentType.APPLICATION_JSON))
-						.returnResponse();
-				if (response.getStatusLine().getStatusCode() == 200) {
-					final Optional<String> newSessionKey = unpackSessionKey(response.getEntity());
-					logger.info("Consul sessionKey={}", newSessionKey);
-					return newSessionKey;
-				} else {
-					logger.warn("Unable to obtain sessionKey: {}/{}",
-							response.getStatusLine().toString(), EntityUtils.toString(response.getEntity()));
-				}
-			} catch (final ClientProtocolException e) {
-				logger.warn("Failed to obtain sessionKey \"{}\"", e.getMessage());
-			} catch (final IOException e) {
-				logger.error("Failed to obtain sessionKey \"{}\"", e.getMessage());
-			}
-			logger.info("Failed to create session try {}/{}", i, createSessionTries);
-			try {
-				Thread.sleep(
-						TimeUnit.MILLISECONDS.convert(
-								(long) (retryPeriod * ((i + 1) * Math.max(1, i * backOffMultiplier))),
-								TimeUnit.SECONDS));
-			} catch (final InterruptedException e) {
-				logger.warn("Sleep interrupted");
-			}
+		return await(createSessionAsync(serviceName, ttlInSeconds, lockDelayInSeconds, createSessionTries, retryPeriod, backOffMultiplier));
+	}
+
+	public CompletableFuture<Optional<String>> createSessionAsync(final String serviceName,
+			final int ttlInSeconds, final int lockDelayInSeconds, final int createSessionTries, final int retryPeriod,
+			final double backOffMultiplier) {
+		final String sessionUrl = consulUrl + "/v1/session/create";
+		final String sessionBody = ConsulResponseParser.sessionBody(
+				serviceName,
+				10 > ttlInSeconds ? 10 : ttlInSeconds,
+				0 > lockDelayInSeconds ? 0 : lockDelayInSeconds);
+		return createSessionAttempt(0, ConsulHttpRequest.put(sessionUrl, sessionBody), createSessionTries, retryPeriod, backOffMultiplier);
+	}
+
+	private CompletableFuture<Optional<String>> createSessionAttempt(final int i, final ConsulHttpRequest request,
+			final int createSessionTries, final int retryPeriod, final double backOffMultiplier) {
+		if (i >= createSessionTries) {
+			logger.error("Failed to obtain sessionKey -- will potentially continue as an island");
+			return CompletableFuture.completedFuture(Optional.empty());
 		}
-		logger.error("Failed to obtain sessionKey -- will potentially continue as an island");
-		return Optional.empty();
+		logger.debug("{}\n{}", request, request.getBody().orElse(""));
+		return transport.execute(request)
+				.handle((response, throwable) -> {
+					if (Objects.isNull(throwable)) {
+						if (response.getStatusCode() == 200) {
+							final Optional<String> newSessionKey = unpackSessionKey(response);
+							logger.info("Consul sessionKey={}", newSessionKey);
+							return CompletableFuture.completedFuture(newSessionKey);
+						} else {
+							logger.warn("Unable to obtain sessionKey: {}/{}", response.getStatusLine(), response.asString());
+						}
+					} else {
+						logger.error("Failed to obtain sessionKey \"{}\"", unwrap(throwable).getMessage());
+					}
+					logger.info("Failed to create session try {}/{}", i, createSessionTries);
+					if (i + 1 >= createSessionTries) {
+						return createSessionAttempt(i + 1, request, createSessionTries, retryPeriod, backOffMultiplier);
+					}
+					// Scheduled rather than slept, so no thread is held while waiting to retry
+					return delay(TimeUnit.MILLISECONDS.convert(
+							(long) (retryPeriod * ((i + 1) * Math.max(1, i * backOffMultiplier))),
+							TimeUnit.SECONDS))
+									.thenCompose(ignored -> createSessionAttempt(i + 1, request, createSessionTries, retryPeriod,
+											backOffMultiplier));
+				})
+				.thenCompose(Function.identity());
 	}
 
 	public void destroySession(final Optional<String> sessionKey, final String serviceName) {
 		sessionKey.ifPresent(_sessionKey -> {
 			logger.info("Releasing Consul session");
-			final String uri = leaderKey(consulUrl, serviceName, "release", _sessionKey);
+			final String uri = leaderKeyUri(serviceName) + "?release=" + _sessionKey;
 			logger.debug("PUT {}", uri);
 			try {
-				final Response response = executor.execute(Request
-						.Put(uri));
-				final Optional<Boolean> result = Optional.ofNullable(Boolean.valueOf(response.returnContent().asString()));
+				final ConsulHttpResponse response = await(transport.execute(ConsulHttpRequest.put(uri)));
+				final Optional<Boolean> result = Optional.ofNullable(Boolean.valueOf(response.asString().trim()));
 				logger.debug("Result: {}", result);
 
 				destroySession(consulUrl, _sessionKey);
@@ -183,94 +445,656 @@ public class ConsulFacadeBean implements Closeable {
 	}
 
 	public void destroySession(final String consulUrl, final String sessionKey) {
-		logger.info("Destroying consul session {}", sessionKey);
-		try {
-			final HttpResponse response = executor.execute(
-					Request.Put(String.format("%s/v1/session/destroy/%s", consulUrl, sessionKey))).returnResponse();
-			if (response.getStatusLine().getStatusCode() == 200) {
-				logger.debug("All OK");
-			} else {
-				logger.warn("Failed to destroy consul session: {}",
-						response.getStatusLine().toString(), EntityUtils.toString(response.getEntity()));
-			}
-		} catch (final IOException e) {
-			logger.error("Failed to destroy consul session: {}", e.getMessage());
-		}
+		await(destroySessionAsync(consulUrl, sessionKey));
+	}
 
+	private CompletableFuture<Void> destroySessionAsync(final String consulUrl, final String sessionKey) {
+		logger.info("Destroying consul session {}", sessionKey);
+		return transport.execute(ConsulHttpRequest.put(consulUrl + "/v1/session/destroy/" + sessionKey))
+				.handle((response, throwable) -> {
+					if (Objects.nonNull(throwable)) {
+						logger.error("Failed to destroy consul session: {}", unwrap(throwable).getMessage());
+					} else if (response.getStatusCode() == 200) {
+						logger.debug("All OK");
+					} else {
+						logger.warn("Failed to destroy consul session: {}/{}", response.getStatusLine(), response.asString());
+					}
+					return null;
+				});
 	}
 
 	public Optional<String> initSessionKey(final String serviceName) {
+		return await(initSessionKeyAsync(serviceName));
+	}
 
-		if (!sessionKey.isPresent()) {
-			sessionKey = createSession(
-					serviceName, ttlInSeconds, lockDelayInSeconds,
-					createSessionTries, retryPeriod, backOffMultiplier);
+	public CompletableFuture<Optional<String>> initSessionKeyAsync(final String serviceName) {
+		final CompletableFuture<Optional<String>> creation;
+		// Only the pending future is set up under the lock; the requests are made outside it
+		synchronized (this) {
+			if (Objects.isNull(sessionName)) {
+				sessionName = serviceName;
+			}
+			if (sessionKey.isPresent()) {
+				return CompletableFuture.completedFuture(sessionKey);
+			}
+			// Concurrent callers share one creation attempt instead of racing for separate sessions
+			if (Objects.nonNull(pendingSessionKey)) {
+				return pendingSessionKey;
+			}
+			creation = new CompletableFuture<>();
+			pendingSessionKey = creation;
 		}
-		return sessionKey;
+		restoreSessionAsync()
+				.thenCompose(restored -> restored.isPresent()
+						? CompletableFuture.completedFuture(restored)
+						: createSessionAsync(
+								serviceName, ttlInSeconds, lockDelayInSeconds,
+								createSessionTries, retryPeriod, backOffMultiplier))
+				.whenComplete((newSessionKey, throwable) -> {
+					if (Objects.isNull(throwable)) {
+						setSessionKey(newSessionKey);
+					}
+					synchronized (this) {
+						pendingSessionKey = null;
+					}
+					if (Objects.isNull(throwable)) {
+						creation.complete(newSessionKey);
+					} else {
+						creation.completeExceptionally(throwable);
+					}
+				});
+		return creation;
 	}
 
+	/**
+	 * Renews the session saved in the state file, if any, to find out whether it is still valid.
+	 */
+	private CompletableFuture<Optional<String>> restoreSessionAsync() {
+		final Optional<String> saved = stateFile.flatMap(SessionStateFile::getSessionKey);
+		if (!saved.isPresent()) {
+			return CompletableFuture.completedFuture(Optional.empty());
+		}
+		final String _sessionKey = saved.get();
+		return transport.execute(ConsulHttpRequest.put(consulUrl + "/v1/session/renew/" + _sessionKey))
+				.handle((response, throwable) -> {
+					if (Objects.nonNull(throwable)) {
+						logger.info("Unable to renew saved session {}: {}", _sessionKey, unwrap(throwable).getMessage());
+						return Optional.<String> empty();
+					} else if (response.getStatusCode() != 200) {
+						logger.info("Saved session {} is no longer valid: {}", _sessionKey, response.getStatusLine());
+						return Optional.<String> empty();
+					}
+					logger.info("Reusing saved consul sessionKey={}", _sessionKey);
+					stateFile.ifPresent(file -> file.getFencingTokens().forEach((service, token) -> fencingTokens.merge(service, token, Math::max)));
+					return saved;
+				});
+	}
 
 	public boolean isCurrentLeader(final String url, final String serviceName, final Optional<String> sessionKey) {
+		return await(isCurrentLeaderAsync(url, serviceName, sessionKey));
+	}
+
+	public CompletableFuture<Boolean> isCurrentLeaderAsync(final String url, final String serviceName, final Optional<String> sessionKey) {
 		return sessionKey.map(_sessionKey -> {
-			try {
-				final String uri = leaderKeyInfo(url, serviceName);
-				logger.debug("GET {}", uri);
-				final HttpResponse response = executor.execute(Request
-						.Get(uri))
-						.returnResponse();
-				if (response.getStatusLine().getStatusCode() == 200) {
-					final Optional<String> leaderSessionKey = unpackCurrentSessionOnKey(response.getEntity());
-					logger.debug("Consul current leader: service=\"{}\", sessionKey=\"{}\" mySession=\"{}\"", serviceName, leaderSessionKey, _sessionKey);
-					return leaderSessionKey.filter(s -> s.equals(_sessionKey)).isPresent();
-				} else {
-					logger.debug("Unable to obtain current leader -- will continue as an not the current leader: {}",
-							EntityUtils.toString(response.getEntity()));
-					return Boolean.FALSE;
-				}
-			} catch (final Exception exception) {
-				logger.warn("Failed to poll consul for leadership: {}", exception.getMessage());
-				return Boolean.FALSE;
-			}
-		}).orElse(Boolean.FALSE);
+			final String uri = consulUrl.equals(url) ? leaderKeyUri(serviceName) : url + "/v1/kv/" + leaderKeyName(serviceName);
+			logger.debug("GET {}", uri);
+			return execute(serviceName, ElectionMetrics.Operation.CHECK, ConsulHttpRequest.get(uri))
+					.handle((response, throwable) -> {
+						if (Objects.nonNull(throwable)) {
+							logger.warn("Failed to poll consul for leadership: {}", unwrap(throwable).getMessage());
+							return Boolean.FALSE;
+						}
+						response.getConsulIndex().ifPresent(index -> leaderKeyIndexes.put(serviceName, index));
+						if (response.getStatusCode() == 200) {
+							final Optional<ConsulResponseParser.KeyState> state = unpackKeyState(response);
+							state.ifPresent(_state -> observeKey(serviceName, _state, _sessionKey));
+							final Optional<String> leaderSessionKey = state.flatMap(ConsulResponseParser.KeyState::getSession);
+							logger.debug("Consul current leader: service=\"{}\", sessionKey=\"{}\" mySession=\"{}\"", serviceName, leaderSessionKey, _sessionKey);
+							observeHolder(serviceName, leaderSessionKey);
+							return leaderSessionKey.filter(s -> s.equals(_sessionKey)).isPresent();
+						} else {
+							if (response.getStatusCode() == 404) {
+								lockIndexes.remove(serviceName);
+								observeHolder(serviceName, Optional.empty());
+							}
+							logger.debug("Unable to obtain current leader -- will continue as an not the current leader: {}",
+									response.asString());
+							return Boolean.FALSE;
+						}
+					});
+		}).orElse(CompletableFuture.completedFuture(Boolean.FALSE));
 	}
 
-	public Optional<Boolean> pollConsul(final String serviceName) {
-		if (sessionKey.isPresent()) {
-			try {
-				if (renewSession(executor, consulUrl, serviceName)) {
-					if (isCurrentLeader(consulUrl, serviceName, sessionKey)) {
+	public Optional<Boolean> awaitLeaderChange(final String serviceName, final int waitInSeconds) {
+		return await(awaitLeaderChangeAsync(serviceName, waitInSeconds));
+	}
+
+	public CompletableFuture<Optional<Boolean>> awaitLeaderChangeAsync(final String serviceName, final int waitInSeconds) {
+		return awaitChange(leaderKeyUri(serviceName), serviceName, waitInSeconds);
+	}
+
+	public Optional<Boolean> awaitLeaderChanges(final int waitInSeconds) {
+		return await(awaitLeaderChangesAsync(waitInSeconds));
+	}
+
+	public CompletableFuture<Optional<Boolean>> awaitLeaderChangesAsync(final int waitInSeconds) {
+		return awaitChange(leaderKeysUri, ALL_LEADER_KEYS, waitInSeconds);
+	}
+
+	private CompletableFuture<Optional<Boolean>> awaitChange(final String keyUri, final String indexName, final int waitInSeconds) {
+		final long lastIndex = leaderKeyIndexes.getOrDefault(indexName, 0L);
+		final String uri = keyUri + (keyUri.indexOf('?') < 0 ? "?index=" : "&index=") + lastIndex + "&wait=" + waitInSeconds + "s";
+		logger.debug("GET {}", uri);
+		final ConsulHttpRequest request = ConsulHttpRequest.get(uri)
+				.withSocketTimeout((int) TimeUnit.MILLISECONDS.convert(
+						waitInSeconds + waitInSeconds / 16 + BLOCKING_QUERY_SOCKET_MARGIN_IN_SECONDS,
+						TimeUnit.SECONDS));
+		return transport.execute(request)
+				.handle((response, throwable) -> {
+					if (Objects.nonNull(throwable)) {
+						logger.warn("Failed to watch consul leader key: {}", unwrap(throwable).getMessage());
+						return Optional.<Boolean> empty();
+					}
+					final int statusCode = response.getStatusCode();
+					if (statusCode != 200 && statusCode != 404) {
+						logger.warn("Blocking query on leader key failed: {}/{}", response.getStatusLine(), response.asString());
+						return Optional.<Boolean> empty();
+					}
+					final Optional<Long> index = response.getConsulIndex();
+					if (!index.isPresent()) {
+						return Optional.<Boolean> empty();
+					}
+					// Consul may reset the index (e.g. snapshot restore); start over from zero if so
+					leaderKeyIndexes.put(indexName, index.get() < lastIndex ? 0L : index.get());
+					final boolean changed = index.get() != lastIndex;
+					logger.debug("Leader key {} index={} changed={}", indexName, index.get(), changed);
+					return Optional.of(changed);
+				});
+	}
+
+	private CompletableFuture<Optional<Boolean>> acquireAsync(final String serviceName, final String _sessionKey) {
+		final String uri = leaderKeyUri(serviceName) + "?acquire=" + _sessionKey;
+		logger.debug("PUT {}", uri);
+		final Optional<String> value = advertisedValue;
+		final ConsulHttpRequest request = advertisedAddress
+				.map(address -> ConsulHttpRequest.put(uri, address))
+				.orElseGet(() -> ConsulHttpRequest.put(uri));
+		return execute(serviceName, ElectionMetrics.Operation.ACQUIRE, request)
+				.thenCompose(response -> {
+					if (response.getStatusCode() != 200) {
+						throw new CompletionException(new IOException(
+								String.format("Acquire failed: %s/%s", response.getStatusLine(), response.asString())));
+					}
+					final Optional<Boolean> result = Optional.ofNullable(Boolean.valueOf(response.asString().trim()));
+					logger.debug("pollConsul - session={} service={} result={}", _sessionKey, serviceName, result);
+					if (!result.orElse(false)) {
+						return CompletableFuture.completedFuture(result);
+					}
+					// The acquire answers true/false only, and the LockIndex read before it is only a lower bound of the
+					// new one -- so no token until the key is read back
+					if (Objects.nonNull(fencingTokens.remove(serviceName))) {
+						saveState();
+					}
+					observeAddress(serviceName, value);
+					acquired(serviceName, _sessionKey);
+					return isCurrentLeaderAsync(consulUrl, serviceName, Optional.of(_sessionKey))
+							.thenApply(ignored -> result);
+				});
+	}
+
+	private CompletableFuture<Optional<Boolean>> checkOrAcquireAsync(final String serviceName, final String _sessionKey) {
+		return isCurrentLeaderAsync(consulUrl, serviceName, Optional.of(_sessionKey))
+				.thenCompose(isLeader -> {
+					if (isLeader) {
 						logger.debug("I am the current leader, no need to acquire leadership");
-						return Optional.of(true);
+						return CompletableFuture.completedFuture(Optional.of(true));
 					} else {
 						logger.debug("I am not the current leader, and I need to acquire leadership");
-						final String uri = leaderKey(consulUrl, serviceName, "acquire", sessionKey.get());
-						logger.debug("PUT {}", uri);
-						final Response response = executor.execute(Request.Put(uri));
-						final Optional<Boolean> result = Optional.ofNullable(Boolean.valueOf(response.returnContent().asString()));
-						logger.debug("pollConsul - session={} service={} result={}", sessionKey.get(), serviceName, result);
-						result.ifPresent(flag -> {
-						    if (flag) {
-						        logger.info("Leadership acquired: session={} service={}", sessionKey.get(), serviceName);
-						    }
-						});
-						return result;
+						return acquireAsync(serviceName, _sessionKey);
 					}
-				} else {
-					return Optional.of(false);
+				});
+	}
+
+	private CompletableFuture<Optional<Boolean>> lockOrVerifyAsync(final String serviceName, final String _sessionKey) {
+		final boolean verifyOnly = lockedServices.contains(serviceName);
+		final String uri = transactionUri;
+		// "lock" re-applied by the holder would bump ModifyIndex and wake every watcher, so the holder only verifies
+		final String body = ConsulResponseParser.transactionBody(leaderKeyName(serviceName), _sessionKey, verifyOnly,
+				advertisedValue);
+		logger.debug("PUT {}\n{}", uri, body);
+		return execute(serviceName, ElectionMetrics.Operation.TRANSACTION, ConsulHttpRequest.put(uri, body))
+				.thenCompose(response -> {
+					switch (response.getStatusCode()) {
+					case 200:
+						final Optional<ConsulResponseParser.KeyState> state = unpackTransactionKeyState(response);
+						state.ifPresent(_state -> observeKey(serviceName, _state, _sessionKey));
+						final boolean isLeader = state.flatMap(ConsulResponseParser.KeyState::getSession)
+								.filter(s -> s.equals(_sessionKey)).isPresent();
+						logger.debug("pollConsul - session={} service={} verifyOnly={} result={}", _sessionKey, serviceName, verifyOnly, isLeader);
+						if (isLeader) {
+							if (lockedServices.add(serviceName)) {
+								acquired(serviceName, _sessionKey);
+							}
+						} else {
+							lockedServices.remove(serviceName);
+						}
+						return CompletableFuture.completedFuture(Optional.of(isLeader));
+					case 409:
+						// Rolled back: the key is locked by another session (or, when verifying, no longer by ours)
+						logger.debug("pollConsul - session={} service={} verifyOnly={} rolled back: {}", _sessionKey, serviceName, verifyOnly,
+								response.asString());
+						lockedServices.remove(serviceName);
+						// A rollback has no key to tell the leader's address by; read it once per leader if addresses are in use
+						if (advertisedAddress.isPresent() && !leaderAddresses.containsKey(serviceName)) {
+							return readLeaderAddressAsync(serviceName)
+									.handle((address, throwable) -> Optional.of(false));
+						}
+						return CompletableFuture.completedFuture(Optional.of(false));
+					case 404:
+					case 405:
+						logger.warn("Consul transactions unavailable ({}) -- falling back to separate check and acquire",
+								response.getStatusLine());
+						useTransactions = false;
+						return checkOrAcquireAsync(serviceName, _sessionKey);
+					default:
+						// E.g. 500 during a Consul leader election, or 403 from an ACL: leadership is unknown this time
+						logger.warn("Transaction failed: {}/{}", response.getStatusLine(), response.asString());
+						return CompletableFuture.completedFuture(Optional.<Boolean> empty());
+					}
+				});
+	}
+
+	/**
+	 * When polling several services at once, lead only a fair share of them: as many as there are services divided by
+	 * the number of live sessions with the same name, rounded up.
+	 */
+	public void setFairShare(final boolean fairShare) {
+		this.fairShare = fairShare;
+	}
+
+	/**
+	 * Once a poll has confirmed leadership of a service, trust it for the next <code>leaseInMillis</code> (at most half
+	 * the session TTL) without reading the leader key: as long as the session is renewed, the lock can only be lost by
+	 * someone else releasing or deleting the key, which then goes unnoticed until the lease runs out. A failed renewal
+	 * ends all leases at once. Zero (the default) checks on every poll.
+	 */
+	public void setLeaderLeaseInMillis(final long leaseInMillis) {
+		this.leaderLeaseInMillis = Math.max(0, Math.min(leaseInMillis, TimeUnit.SECONDS.toMillis(ttlInSeconds) / 2));
+		leaderLeases.clear();
+	}
+
+	public void setUseTransactions(final boolean useTransactions) {
+		this.useTransactions = useTransactions;
+	}
+
+	/**
+	 * @return whether the last check found the leader key of <code>serviceName</code> without a holder, while this
+	 *         session did not get to acquire it
+	 */
+	public boolean isLeaderKeyVacant(final String serviceName) {
+		return vacantSince.containsKey(serviceName);
+	}
+
+	/**
+	 * @return the <code>LockIndex</code> of the leader key of <code>serviceName</code> as of the latest leadership of
+	 *         this facade. Consul increments it on every acquisition, so a later leader always has a higher token --
+	 *         as long as the key is not deleted.
+	 */
+	public Optional<Long> getFencingToken(final String serviceName) {
+		return Optional.ofNullable(fencingTokens.get(serviceName));
+	}
+
+	/**
+	 * Publishes <code>address</code> in the <code>Value</code> of each leader key this session acquires, for other nodes
+	 * to find the leader through {@link #getLeaderAddress(String)}.
+	 */
+	public void setAdvertisedAddress(final String address) {
+		advertisedAddress = Optional.ofNullable(address);
+		advertisedValue = advertisedAddress
+				.map(_address -> Base64.getEncoder().encodeToString(_address.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * @return the address published by the current leader of <code>serviceName</code>, as of the latest read of its
+	 *         leader key -- without asking Consul
+	 */
+	public Optional<String> getLeaderAddress(final String serviceName) {
+		return Optional.ofNullable(leaderAddresses.get(serviceName));
+	}
+
+	public Optional<String> readLeaderAddress(final String serviceName) {
+		return await(readLeaderAddressAsync(serviceName));
+	}
+
+	/**
+	 * Reads the leader key of <code>serviceName</code> for the address published by its leader, without taking part in
+	 * the election.
+	 */
+	public CompletableFuture<Optional<String>> readLeaderAddressAsync(final String serviceName) {
+		final String uri = leaderKeyUri(serviceName);
+		logger.debug("GET {}", uri);
+		return execute(serviceName, ElectionMetrics.Operation.CHECK, ConsulHttpRequest.get(uri))
+				.thenApply(response -> {
+					response.getConsulIndex().ifPresent(index -> leaderKeyIndexes.put(serviceName, index));
+					if (response.getStatusCode() == 200) {
+						final Optional<ConsulResponseParser.KeyState> state = unpackKeyState(response);
+						observeAddress(serviceName, state.filter(_state -> _state.getSession().isPresent())
+								.flatMap(ConsulResponseParser.KeyState::getValue));
+					} else if (response.getStatusCode() == 404) {
+						observeAddress(serviceName, Optional.empty());
+					} else {
+						logger.debug("Unable to read leader of service={}: {}", serviceName, response.getStatusLine());
+					}
+					return getLeaderAddress(serviceName);
+				});
+	}
+
+	/**
+	 * Keeps the session in <code>file</code>, to be reused by the next facade given the same file if it is still valid
+	 * then. The file is locked until {@link #close()}, so no two facades restore the same session.
+	 *
+	 * @throws IllegalStateException if the file is in use by another facade
+	 * @see #setKeepingSessionOnClose(boolean)
+	 */
+	public void setSessionStateFile(final Path file) {
+		final Optional<SessionStateFile> previous = stateFile;
+		stateFile = Optional.of(new SessionStateFile(file));
+		previous.ifPresent(this::closeStateFile);
+	}
+
+	/**
+	 * Neither destroy the session on {@link #close()}, nor release its leader keys, so that a node restarted within the
+	 * session TTL still holds them; only for a restart, as the keys are otherwise held until the session expires.
+	 * Requires a {@link #setSessionStateFile(Path) session state file}.
+	 */
+	public void setKeepingSessionOnClose(final boolean keepingSessionOnClose) {
+		this.keepingSessionOnClose = keepingSessionOnClose;
+	}
+
+	public boolean isKeepingSession() {
+		return stateFile.isPresent() && keepingSessionOnClose;
+	}
+
+	/**
+	 * Leaves renewing the session to <code>renewer</code>, shared with other facades, rather than renewing it on every
+	 * poll.
+	 */
+	public void setSessionRenewer(final SessionRenewer renewer) {
+		Optional.ofNullable(sessionRenewer).ifPresent(previous -> previous.unregister(this));
+		sessionRenewer = renewer;
+		Optional.ofNullable(renewer).ifPresent(_renewer -> _renewer.register(this));
+	}
+
+	public void setMetrics(final ElectionMetrics metrics) {
+		this.metrics = Objects.requireNonNull(metrics);
+	}
+
+	public Optional<Boolean> pollConsul(final String serviceName) {
+		return await(pollConsulAsync(serviceName));
+	}
+
+	public CompletableFuture<Optional<Boolean>> pollConsulAsync(final String serviceName) {
+		if (sessionKey.isPresent()) {
+			return renewSessionAsync(serviceName)
+					.thenCompose(renewed -> {
+						final Optional<String> _sessionKey = sessionKey;
+						if (!renewed || !_sessionKey.isPresent()) {
+							return CompletableFuture.completedFuture(Optional.of(false));
+						}
+						if (isHeldOff(serviceName)) {
+							return checkAndReleaseAsync(serviceName, _sessionKey.get());
+						}
+						if (hasLeaderLease(serviceName)) {
+							logger.debug("pollConsul - session={} service={} leads within its lease -- not checked", _sessionKey.get(), serviceName);
+							return CompletableFuture.completedFuture(Optional.of(true));
+						}
+						final long started = System.nanoTime();
+						return (useTransactions
+								? lockOrVerifyAsync(serviceName, _sessionKey.get())
+								: checkOrAcquireAsync(serviceName, _sessionKey.get()))
+										.thenApply(isLeader -> lease(serviceName, started, isLeader));
+					})
+					.exceptionally(throwable -> {
+						logger.warn("Failed to poll consul for leadership: {}", unwrap(throwable).getMessage());
+						return Optional.<Boolean> empty();
+					});
+		} else {
+			return initSessionKeyAsync(serviceName).thenApply(ignored -> Optional.of(false));
+		}
+	}
+
+	public Map<String, Optional<Boolean>> pollConsul(final String sessionName, final Collection<String> serviceNames) {
+		return await(pollConsulAsync(sessionName, serviceNames));
+	}
+
+	public CompletableFuture<Map<String, Optional<Boolean>>> pollConsulAsync(final String sessionName, final Collection<String> serviceNames) {
+		if (!sessionKey.isPresent()) {
+			return initSessionKeyAsync(sessionName).thenApply(ignored -> uniformResult(serviceNames, Optional.of(false)));
+		}
+		return renewSessionAsync(sessionName)
+				.thenCompose(renewed -> {
+					final Optional<String> _sessionKey = sessionKey;
+					if (!renewed || !_sessionKey.isPresent()) {
+						return CompletableFuture.completedFuture(uniformResult(serviceNames, Optional.of(false)));
+					}
+					final CompletableFuture<Integer> share = fairShare
+							? fairShareAsync(sessionName, serviceNames.size())
+							: CompletableFuture.completedFuture(serviceNames.size());
+					return leaderKeyStatesAsync(sessionName)
+							.thenCombine(share, (currentStates, _share) -> acquireAllAsync(serviceNames, _sessionKey.get(), currentStates, _share))
+							.thenCompose(Function.identity());
+				})
+				.exceptionally(throwable -> {
+					logger.warn("Failed to poll consul for leadership: {}", unwrap(throwable).getMessage());
+					return uniformResult(serviceNames, Optional.<Boolean> empty());
+				});
+	}
+
+	private static Map<String, Optional<Boolean>> uniformResult(final Collection<String> serviceNames, final Optional<Boolean> result) {
+		final Map<String, Optional<Boolean>> results = new LinkedHashMap<>();
+		serviceNames.forEach(serviceName -> results.put(serviceName, result));
+		return results;
+	}
+
+	/**
+	 * @param share the most services this session should lead; any beyond it are released, and only as many vacant
+	 *        ones are acquired as needed to reach it
+	 */
+	private CompletableFuture<Map<String, Optional<Boolean>>> acquireAllAsync(final Collection<String> serviceNames,
+			final String mySession, final Map<String, ConsulResponseParser.KeyState> currentStates, final int share) {
+		final Map<String, CompletableFuture<Optional<Boolean>>> pending = new LinkedHashMap<>();
+		final List<String> vacant = new ArrayList<>();
+		int owned = 0;
+		for (final String serviceName : serviceNames) {
+			final ConsulResponseParser.KeyState state = currentStates.get(serviceName);
+			if (Objects.nonNull(state)) {
+				observeKey(serviceName, state, mySession);
+			} else {
+				lockIndexes.remove(serviceName);
+			}
+			final String currentSession = Objects.nonNull(state) ? state.getSession().orElse(null) : null;
+			observeHolder(serviceName, Optional.ofNullable(currentSession));
+			if (mySession.equals(currentSession)) {
+				pending.put(serviceName, isHeldOff(serviceName) || ++owned > share
+						? releaseAsync(serviceName, mySession)
+						: CompletableFuture.completedFuture(Optional.of(true)));
+			} else if (Objects.nonNull(currentSession)) {
+				// Held by another session; an acquire is bound to fail, so don't bother Consul with it
+				pending.put(serviceName, CompletableFuture.completedFuture(Optional.of(false)));
+			} else {
+				pending.put(serviceName, CompletableFuture.completedFuture(Optional.of(false)));
+				if (!isHeldOff(serviceName)) {
+					vacant.add(serviceName);
 				}
-			} catch (final Exception exception) {
-				logger.warn("Failed to poll consul for leadership: {}", exception.getMessage());
-				return Optional.<Boolean> empty();
 			}
+		}
+		// Start at a different vacancy on each node, so that they do not all compete for the same ones
+		if (!vacant.isEmpty() && share < serviceNames.size()) {
+			Collections.rotate(vacant, -Math.floorMod(mySession.hashCode(), vacant.size()));
+		}
+		for (final String serviceName : vacant.subList(0, Math.max(0, Math.min(vacant.size(), share - owned)))) {
+			pending.put(serviceName, acquireAsync(serviceName, mySession)
+					.exceptionally(throwable -> {
+						logger.warn("Failed to acquire leadership for service={}: {}", serviceName, unwrap(throwable).getMessage());
+						return Optional.<Boolean> empty();
+					}));
+		}
+		return CompletableFuture.allOf(pending.values().toArray(new CompletableFuture<?>[pending.size()]))
+				.thenApply(ignored -> {
+					final Map<String, Optional<Boolean>> results = new LinkedHashMap<>();
+					pending.forEach((serviceName, result) -> results.put(serviceName, result.join()));
+					return results;
+				});
+	}
+
+	/**
+	 * @return whether this session still leads <code>serviceName</code> after trying to release it
+	 */
+	private CompletableFuture<Optional<Boolean>> releaseAsync(final String serviceName, final String _sessionKey) {
+		final String uri = leaderKeyUri(serviceName) + "?release=" + _sessionKey;
+		logger.debug("PUT {}", uri);
+		return transport.execute(ConsulHttpRequest.put(uri))
+				.handle((response, throwable) -> {
+					if (Objects.isNull(throwable) && response.getStatusCode() == 200 && Boolean.parseBoolean(response.asString().trim())) {
+						logger.info("Leadership released: session={} service={}", _sessionKey, serviceName);
+						lockedServices.remove(serviceName);
+						leaderLeases.remove(serviceName);
+						observeAddress(serviceName, Optional.empty());
+						return Optional.of(false);
+					}
+					logger.warn("Failed to release leadership of service={}: {}", serviceName,
+							Objects.nonNull(throwable) ? unwrap(throwable).getMessage() : response.getStatusLine());
+					return Optional.of(true);
+				});
+	}
+
+	/**
+	 * @return never leadership: <code>serviceName</code> is held off, and its leader key released if still held
+	 */
+	private CompletableFuture<Optional<Boolean>> checkAndReleaseAsync(final String serviceName, final String _sessionKey) {
+		return isCurrentLeaderAsync(consulUrl, serviceName, Optional.of(_sessionKey))
+				.thenCompose(isLeader -> isLeader
+						? releaseAsync(serviceName, _sessionKey)
+						: CompletableFuture.completedFuture(Optional.of(false)))
+				.thenApply(ignored -> Optional.of(false));
+	}
+
+	/**
+	 * @param started when the check confirming <code>isLeader</code> was sent, from which the lease runs
+	 */
+	private Optional<Boolean> lease(final String serviceName, final long started, final Optional<Boolean> isLeader) {
+		final long leaseInMillis = leaderLeaseInMillis;
+		// Only once the fencing token is known, so that a lease never hides a token still to be read
+		if (leaseInMillis > 0 && isLeader.orElse(false) && fencingTokens.containsKey(serviceName)) {
+			leaderLeases.put(serviceName, started + TimeUnit.MILLISECONDS.toNanos(leaseInMillis));
 		} else {
-			sessionKey = initSessionKey(serviceName);
-			return Optional.of(false);
+			leaderLeases.remove(serviceName);
 		}
+		return isLeader;
+	}
+
+	private boolean hasLeaderLease(final String serviceName) {
+		final Long until = leaderLeases.get(serviceName);
+		return Objects.nonNull(until) && until - System.nanoTime() > 0;
+	}
+
+	private boolean isHeldOff(final String serviceName) {
+		final Long until = heldOffUntil.get(serviceName);
+		if (Objects.isNull(until)) {
+			return false;
+		} else if (until - System.nanoTime() > 0) {
+			return true;
+		}
+		heldOffUntil.remove(serviceName, until);
+		return false;
+	}
+
+	/**
+	 * Keeps this session from leading <code>serviceName</code> for the next <code>holdOffInMillis</code>: polls
+	 * neither acquire its leader key nor report leadership of it, and release the key if it is still held.
+	 */
+	public void holdOff(final String serviceName, final long holdOffInMillis) {
+		leaderLeases.remove(serviceName);
+		heldOffUntil.put(serviceName, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(holdOffInMillis));
+	}
+
+	/**
+	 * Releases the leader key of <code>serviceName</code>, if held by this session. Unlike a destroyed or expired
+	 * session, a release is not followed by lock-delay, so another session can acquire the key right away.
+	 *
+	 * @return whether the key is no longer held by this session
+	 */
+	public boolean releaseLeadership(final String serviceName) {
+		return await(releaseLeadershipAsync(serviceName));
+	}
+
+	public CompletableFuture<Boolean> releaseLeadershipAsync(final String serviceName) {
+		return sessionKey
+				.map(_sessionKey -> releaseAsync(serviceName, _sessionKey).thenApply(stillLeads -> !stillLeads.orElse(false)))
+				.orElse(CompletableFuture.completedFuture(true));
+	}
+
+	/**
+	 * @return how many of <code>partitions</code> services each live session called <code>sessionName</code> should
+	 *         lead, rounded up
+	 */
+	private CompletableFuture<Integer> fairShareAsync(final String sessionName, final int partitions) {
+		final String uri = sessionListUri;
+		logger.debug("GET {}", uri);
+		return transport.execute(ConsulHttpRequest.get(uri))
+				.thenApply(response -> {
+					if (response.getStatusCode() != 200) {
+						throw new CompletionException(new IOException(
+								String.format("Unable to list sessions: %s", response.getStatusLine())));
+					}
+					int members;
+					try {
+						members = ConsulResponseParser.countSessionsNamed(response.getBody(), sessionName);
+					} catch (final IOException e) {
+						throw new CompletionException(e);
+					}
+					// Our own session is live, even if the agent answering has not caught up with it
+					members = Math.max(1, members);
+					final int share = (partitions + members - 1) / members;
+					logger.debug("Fair share for sessionName={}: {} of {} partitions among {} members", sessionName, share, partitions, members);
+					return share;
+				});
+	}
+
+	private CompletableFuture<Map<String, ConsulResponseParser.KeyState>> leaderKeyStatesAsync(final String sessionName) {
+		final String uri = leaderKeysUri;
+		logger.debug("GET {}", uri);
+		return execute(sessionName, ElectionMetrics.Operation.CHECK, ConsulHttpRequest.get(uri))
+				.thenApply(response -> {
+					response.getConsulIndex().ifPresent(index -> leaderKeyIndexes.put(ALL_LEADER_KEYS, index));
+					final int statusCode = response.getStatusCode();
+					if (statusCode == 200) {
+						return unpackLeaderKeyStates(response);
+					} else if (statusCode == 404) {
+						return new HashMap<>();
+					}
+					throw new CompletionException(new IOException(
+							String.format("Unable to read leader keys: %s", response.getStatusLine())));
+				});
 	}
 
 	@Override
 	public void close() throws IOException {
-		sessionKey.ifPresent(_session -> destroySession(consulUrl, _session));
+		Optional.ofNullable(sessionRenewer).ifPresent(renewer -> renewer.unregister(this));
+		if (!isKeepingSession()) {
+			sessionKey.ifPresent(_session -> destroySession(consulUrl, _session));
+			stateFile.ifPresent(SessionStateFile::delete);
+		}
+		stateFile.ifPresent(this::closeStateFile);
+		transport.close();
+	}
+
+	private void closeStateFile(final SessionStateFile file) {
+		try {
+			file.close();
+		} catch (final IOException e) {
+			logger.debug("Exception while closing {}: {}", file.getPath(), e.getMessage());
+		}
 	}
 
 }
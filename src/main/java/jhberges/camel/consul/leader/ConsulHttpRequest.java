@@ -0,0 +1,65 @@
+package jhberges.camel.consul.leader;
+
+import java.util.Objects;
+import java.util.Optional;
+
+public final class ConsulHttpRequest {
+	public static final String GET = "GET";
+	public static final String PUT = "PUT";
+
+	public static ConsulHttpRequest get(final String uri) {
+		return new ConsulHttpRequest(GET, uri, Optional.empty(), 0);
+	}
+
+	public static ConsulHttpRequest put(final String uri) {
+		return new ConsulHttpRequest(PUT, uri, Optional.empty(), 0);
+	}
+
+	public static ConsulHttpRequest put(final String uri, final String body) {
+		return new ConsulHttpRequest(PUT, uri, Optional.of(body), 0);
+	}
+
+	private final String method;
+	private final String uri;
+	private final Optional<String> body;
+	private final int socketTimeoutInMillis;
+
+	private ConsulHttpRequest(final String method, final String uri, final Optional<String> body, final int socketTimeoutInMillis) {
+		this.method = Objects.requireNonNull(method);
+		this.uri = Objects.requireNonNull(uri);
+		this.body = body;
+		this.socketTimeoutInMillis = socketTimeoutInMillis;
+	}
+
+	public ConsulHttpRequest withSocketTimeout(final int millis) {
+		return new ConsulHttpRequest(method, uri, body, millis);
+	}
+
+	public ConsulHttpRequest withUri(final String uri) {
+		return new ConsulHttpRequest(method, uri, body, socketTimeoutInMillis);
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public String getUri() {
+		return uri;
+	}
+
+	public Optional<String> getBody() {
+		return body;
+	}
+
+	/**
+	 * @return socket timeout for this request in milliseconds, or 0 to use the transport default
+	 */
+	public int getSocketTimeoutInMillis() {
+		return socketTimeoutInMillis;
+	}
+
+	@Override
+	public String toString() {
+		return method + " " + uri;
+	}
+}
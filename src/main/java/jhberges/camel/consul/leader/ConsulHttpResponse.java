@@ -0,0 +1,52 @@
+package jhberges.camel.consul.leader;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+public final class ConsulHttpResponse {
+	private final int statusCode;
+	private final String statusLine;
+	private final Optional<Long> consulIndex;
+	private final byte[] body;
+
+	public ConsulHttpResponse(final int statusCode, final String statusLine, final Optional<Long> consulIndex, final byte[] body) {
+		this.statusCode = statusCode;
+		this.statusLine = statusLine;
+		this.consulIndex = consulIndex;
+		this.body = body;
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	public String getStatusLine() {
+		return statusLine;
+	}
+
+	/**
+	 * @return the value of the <code>X-Consul-Index</code> header, if any
+	 */
+	public Optional<Long> getConsulIndex() {
+		return consulIndex;
+	}
+
+	public InputStream getContent() {
+		return new ByteArrayInputStream(body);
+	}
+
+	byte[] getBody() {
+		return body;
+	}
+
+	public String asString() {
+		return new String(body, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public String toString() {
+		return statusLine;
+	}
+}
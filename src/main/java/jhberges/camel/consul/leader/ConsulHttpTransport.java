@@ -0,0 +1,19 @@
+package jhberges.camel.consul.leader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Carries requests to a Consul agent. Implementations must not block the calling thread on I/O, and report failures
+ * by completing the returned future exceptionally.
+ */
+public interface ConsulHttpTransport extends Closeable {
+
+	CompletableFuture<ConsulHttpResponse> execute(ConsulHttpRequest request);
+
+	@Override
+	default void close() throws IOException {
+	}
+
+}
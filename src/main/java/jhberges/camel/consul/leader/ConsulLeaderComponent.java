@@ -0,0 +1,462 @@
+package jhberges.camel.consul.leader;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.Endpoint;
+import org.apache.camel.impl.DefaultComponent;
+import org.apache.camel.util.URISupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>consul-leader</code> component: leader election for any number of routes in a Camel context, sharing one
+ * Consul session, one connection pool and one polling thread.
+ * <p>
+ * Routes opt in either by consuming from <code>consul-leader:serviceName:delegateUri</code>, which only consumes from
+ * the delegate endpoint while this node leads <code>serviceName</code>, or with a {@link ConsulLeaderRoutePolicy}.
+ * Producing to <code>consul-leader:serviceName</code> forwards each exchange to the address published by the
+ * leader (see {@link #setAdvertisedAddress(String)}), without taking part in the election.
+ * <p>
+ * Session options (<code>ttl</code>, <code>lockDelay</code>, <code>pollInterval</code>, <code>watch</code>) are set on
+ * the component, or on any of its endpoint URIs as long as they agree; they are fixed once the session is created.
+ */
+public class ConsulLeaderComponent extends DefaultComponent {
+	private static final Logger logger = LoggerFactory.getLogger(ConsulLeaderComponent.class);
+	public static final String DEFAULT_CONSUL_URL = "http://localhost:8500";
+
+	private String consulUrl = DEFAULT_CONSUL_URL;
+	private String username;
+	private String password;
+	private String sessionName;
+	private int ttl = 60;
+	private int lockDelay = 0;
+	private long pollInterval = 5;
+	private boolean watch = false;
+	private boolean allowIslandMode = true;
+	private int createSessionTries = ConsulLeaderElectorBuilder.DEFAULT_TRIES;
+	private int retryPeriod = ConsulLeaderElectorBuilder.DEFAULT_RETRY_PERIOD;
+	private double backOffMultiplier = ConsulLeaderElectorBuilder.DEFAULT_BACKOFF_MULTIPLIER;
+	private String advertisedAddress;
+	private ConsulHttpTransport httpTransport;
+	// Session options as given on endpoint URIs, which must agree with each other
+	private final Map<String, Object> endpointOptions = new HashMap<>();
+
+	private final Map<String, Set<LeadershipListener>> participants = new ConcurrentHashMap<>();
+	// Services whose leader is only looked up, by producers forwarding to it
+	private final Map<String, Set<Object>> observers = new ConcurrentHashMap<>();
+	private final Map<String, LeadershipState> states = new ConcurrentHashMap<>();
+	private volatile ConsulFacadeBean consulFacade;
+	private ScheduledExecutorService scheduler;
+
+	@Override
+	protected Endpoint createEndpoint(final String uri, final String remaining, final Map<String, Object> parameters)
+			throws Exception {
+		ttl = endpointOption(parameters, "ttl", Integer.class, ttl);
+		lockDelay = endpointOption(parameters, "lockDelay", Integer.class, lockDelay);
+		pollInterval = endpointOption(parameters, "pollInterval", Long.class, pollInterval);
+		watch = endpointOption(parameters, "watch", Boolean.class, watch);
+		createSessionTries = endpointOption(parameters, "createSessionTries", Integer.class, createSessionTries);
+		retryPeriod = endpointOption(parameters, "retryPeriod", Integer.class, retryPeriod);
+		backOffMultiplier = endpointOption(parameters, "backOffMultiplier", Double.class, backOffMultiplier);
+		final int separator = remaining.indexOf(':');
+		final String serviceName = separator < 0 ? remaining : remaining.substring(0, separator);
+		if (serviceName.isEmpty()) {
+			throw new IllegalArgumentException("No service name in " + uri);
+		}
+		// Any other parameters belong to the delegate
+		String delegateUri = separator < 0 ? null : remaining.substring(separator + 1);
+		if (Objects.nonNull(delegateUri) && !parameters.isEmpty()) {
+			delegateUri = delegateUri + "?" + URISupport.createQueryString(parameters);
+		}
+		parameters.clear();
+		return new ConsulLeaderEndpoint(uri, this, serviceName, delegateUri);
+	}
+
+	private synchronized <T> T endpointOption(final Map<String, Object> parameters, final String name, final Class<T> type,
+			final T current) {
+		final T value = getAndRemoveParameter(parameters, name, type);
+		if (Objects.isNull(value)) {
+			return current;
+		}
+		final Object previous = endpointOptions.putIfAbsent(name, value);
+		if ((Objects.nonNull(previous) && !previous.equals(value)) || (Objects.nonNull(consulFacade) && !value.equals(current))) {
+			throw new IllegalArgumentException(String.format(
+					"%s=%s conflicts with %s=%s of the session shared by all consul-leader endpoints", name, value, name,
+					Objects.nonNull(previous) ? previous : current));
+		}
+		return value;
+	}
+
+	/**
+	 * @return a route policy starting and stopping the consumer of the route it is added to as this node gains and
+	 *         loses leadership of <code>serviceName</code>
+	 */
+	public ConsulLeaderRoutePolicy routePolicy(final String serviceName) {
+		return new ConsulLeaderRoutePolicy(serviceName, this);
+	}
+
+	public LeadershipState getLeadershipState(final String serviceName) {
+		return states.getOrDefault(serviceName, LeadershipState.UNKNOWN);
+	}
+
+	/**
+	 * Has <code>participant</code> notified of changes to the leadership of <code>serviceName</code>, on the polling
+	 * thread, starting with its current state. The session is created (and polling started) by the first participant.
+	 */
+	void join(final String serviceName, final LeadershipListener participant) {
+		final ScheduledExecutorService _scheduler = startElection();
+		participants.computeIfAbsent(serviceName, ignored -> new CopyOnWriteArraySet<>()).add(participant);
+		logger.debug("Joined serviceName={}: {}", serviceName, participant);
+		try {
+			_scheduler.execute(() -> {
+				final LeadershipState state = getLeadershipState(serviceName);
+				if (state != LeadershipState.UNKNOWN) {
+					notify(participant, serviceName, state);
+				}
+			});
+			// A service not seen before is polled right away, rather than at the next poll; watches wait off the scheduler
+			_scheduler.execute(this::pollSafely);
+		} catch (final RejectedExecutionException e) {
+			logger.debug("Component stopping -- not polling for serviceName={}", serviceName);
+		}
+	}
+
+	/**
+	 * Has the address of the leader of <code>serviceName</code> kept up to date for <code>observer</code>, without
+	 * taking part in its election.
+	 */
+	void observe(final String serviceName, final Object observer) {
+		final ScheduledExecutorService _scheduler = startElection();
+		observers.computeIfAbsent(serviceName, ignored -> new CopyOnWriteArraySet<>()).add(observer);
+		logger.debug("Observing serviceName={}: {}", serviceName, observer);
+		try {
+			_scheduler.execute(this::pollSafely);
+		} catch (final RejectedExecutionException e) {
+			logger.debug("Component stopping -- not polling for serviceName={}", serviceName);
+		}
+	}
+
+	void unobserve(final String serviceName, final Object observer) {
+		observers.computeIfPresent(serviceName, (ignored, members) -> {
+			members.remove(observer);
+			return members.isEmpty() ? null : members;
+		});
+	}
+
+	/**
+	 * @return the address published by the current leader of <code>serviceName</code>, as of the latest poll -- without
+	 *         asking Consul
+	 */
+	public Optional<String> getLeaderAddress(final String serviceName) {
+		return Optional.ofNullable(consulFacade).flatMap(facade -> facade.getLeaderAddress(serviceName));
+	}
+
+	void leave(final String serviceName, final LeadershipListener participant) {
+		participants.computeIfPresent(serviceName, (ignored, members) -> {
+			members.remove(participant);
+			return members.isEmpty() ? null : members;
+		});
+		logger.debug("Left serviceName={}: {}", serviceName, participant);
+	}
+
+	private synchronized ScheduledExecutorService startElection() {
+		if (Objects.nonNull(scheduler)) {
+			return scheduler;
+		}
+		sessionName = Objects.nonNull(sessionName) ? sessionName : getCamelContext().getName();
+		ConsulHttpTransport transport = httpTransport;
+		if (Objects.isNull(transport)) {
+			final PooledConsulHttpClient pool = new PooledConsulHttpClient();
+			try {
+				transport = new FluentConsulHttpTransport(
+						ConsulFacadeBean.authenticated(pool.newExecutor(), consulUrl, Optional.ofNullable(username), Optional.ofNullable(password)),
+						FluentConsulHttpTransport.DEFAULT_IO_EXECUTOR, Optional.of(pool), true);
+			} catch (final MalformedURLException e) {
+				throw new IllegalArgumentException("Invalid consulUrl " + consulUrl, e);
+			}
+		}
+		final ConsulFacadeBean _consulFacade = new ConsulFacadeBean(consulUrl, transport, ttl, lockDelay,
+				createSessionTries, retryPeriod, backOffMultiplier);
+		_consulFacade.setAdvertisedAddress(advertisedAddress);
+		consulFacade = _consulFacade;
+		final ScheduledExecutorService _scheduler = getCamelContext().getExecutorServiceManager()
+				.newSingleThreadScheduledExecutor(this, "ConsulLeader");
+		logger.info("Starting leader election: consulUrl={} sessionName={} ttl={} lockDelay={} pollInterval={} watch={}",
+				consulUrl, sessionName, ttl, lockDelay, pollInterval, watch);
+		if (watch) {
+			// The session must be renewed within its TTL, so never block for longer than half of it
+			final int waitInSeconds = Math.max(1, ttl / 2);
+			_scheduler.execute(() -> watch(_scheduler, waitInSeconds));
+		} else {
+			_scheduler.scheduleAtFixedRate(this::pollSafely, pollInterval, pollInterval, TimeUnit.SECONDS);
+		}
+		scheduler = _scheduler;
+		return _scheduler;
+	}
+
+	/**
+	 * Polls on the scheduler, and then waits for a change of the leader keys off it, so that the scheduler is free to
+	 * poll for services joining meanwhile.
+	 */
+	private void watch(final ScheduledExecutorService _scheduler, final int waitInSeconds) {
+		pollSafely();
+		final Set<String> services = new TreeSet<>(participants.keySet());
+		services.addAll(observers.keySet());
+		CompletableFuture<Optional<Boolean>> change;
+		try {
+			if (services.size() == 1) {
+				change = consulFacade.awaitLeaderChangeAsync(services.iterator().next(), waitInSeconds);
+			} else if (!services.isEmpty()) {
+				change = consulFacade.awaitLeaderChangesAsync(waitInSeconds);
+			} else {
+				change = CompletableFuture.completedFuture(Optional.empty());
+			}
+		} catch (final RuntimeException e) {
+			change = new CompletableFuture<>();
+			change.completeExceptionally(e);
+		}
+		change.whenComplete((changed, throwable) -> {
+			if (Objects.nonNull(throwable)) {
+				logger.warn("Watch failed for sessionName={}: {}", sessionName,
+						(throwable instanceof CompletionException ? throwable.getCause() : throwable).getMessage());
+			}
+			try {
+				_scheduler.schedule(() -> watch(_scheduler, waitInSeconds),
+						Objects.nonNull(changed) && changed.isPresent() ? 0 : pollInterval, TimeUnit.SECONDS);
+			} catch (final RejectedExecutionException e) {
+				logger.debug("Component stopping -- ending watch of sessionName={}", sessionName);
+			}
+		});
+	}
+
+	private void pollSafely() {
+		try {
+			poll();
+		} catch (final RuntimeException e) {
+			logger.warn("Election failed for sessionName={}: {}", sessionName, e.getMessage());
+		}
+	}
+
+	private void poll() {
+		observers.keySet().stream()
+				.filter(service -> !participants.containsKey(service))
+				.forEach(consulFacade::readLeaderAddress);
+		final Set<String> services = new TreeSet<>(participants.keySet());
+		if (services.isEmpty()) {
+			return;
+		}
+		final Map<String, Optional<Boolean>> results = services.size() == 1
+				? Collections.singletonMap(services.iterator().next(), consulFacade.pollConsul(services.iterator().next()))
+				: consulFacade.pollConsul(sessionName, services);
+		results.forEach((service, isLeader) -> update(service, LeadershipState.of(isLeader)));
+	}
+
+	private void update(final String serviceName, final LeadershipState state) {
+		// Only called on the scheduler, so nothing changes the state in between
+		final LeadershipState previous = states.get(serviceName);
+		if (state == previous) {
+			return;
+		}
+		logger.debug("Leadership of serviceName={} changed from {} to {}", serviceName, previous, state);
+		participants.getOrDefault(serviceName, Collections.emptySet())
+				.forEach(participant -> notify(participant, serviceName, state));
+		// Published once the participants have acted on it, e.g. a leader's consumer has started
+		states.put(serviceName, state);
+	}
+
+	private static void notify(final LeadershipListener participant, final String serviceName, final LeadershipState state) {
+		try {
+			switch (state) {
+			case LEADER:
+				participant.onElected(serviceName);
+				break;
+			case FOLLOWER:
+				participant.onRevoked(serviceName);
+				break;
+			default:
+				participant.onUnknown(serviceName);
+			}
+		} catch (final RuntimeException e) {
+			logger.error("Leadership participant failed for serviceName={} state={}", serviceName, state, e);
+		}
+	}
+
+	@Override
+	protected void doStop() throws Exception {
+		final ScheduledExecutorService _scheduler;
+		synchronized (this) {
+			_scheduler = scheduler;
+			scheduler = null;
+		}
+		if (Objects.isNull(_scheduler)) {
+			return;
+		}
+		getCamelContext().getExecutorServiceManager().shutdownNow(_scheduler);
+		final List<String> led = new ArrayList<>();
+		states.forEach((service, state) -> {
+			if (state == LeadershipState.LEADER) {
+				led.add(service);
+			}
+		});
+		// Released keys are free at once, whereas those of a destroyed session are held back by lock-delay
+		led.forEach(consulFacade::releaseLeadership);
+		try {
+			consulFacade.close();
+		} catch (final IOException e) {
+			logger.debug("Exception while closing facade: {}", e.getMessage());
+		}
+		states.clear();
+		super.doStop();
+	}
+
+	public String getConsulUrl() {
+		return consulUrl;
+	}
+
+	public void setConsulUrl(final String consulUrl) {
+		this.consulUrl = consulUrl;
+	}
+
+	public void setUsername(final String username) {
+		this.username = username;
+	}
+
+	public void setPassword(final String password) {
+		this.password = password;
+	}
+
+	public String getSessionName() {
+		return sessionName;
+	}
+
+	/**
+	 * @param sessionName name of the Consul session; the Camel context's name if not set
+	 */
+	public void setSessionName(final String sessionName) {
+		this.sessionName = sessionName;
+	}
+
+	public int getTtl() {
+		return ttl;
+	}
+
+	/**
+	 * @param ttl TTL of the session, in seconds
+	 */
+	public void setTtl(final int ttl) {
+		this.ttl = ttl;
+	}
+
+	public int getLockDelay() {
+		return lockDelay;
+	}
+
+	/**
+	 * @param lockDelay lock-delay of the session, in seconds
+	 */
+	public void setLockDelay(final int lockDelay) {
+		this.lockDelay = lockDelay;
+	}
+
+	public long getPollInterval() {
+		return pollInterval;
+	}
+
+	/**
+	 * @param pollInterval seconds between polls, or between a failed watch and the next
+	 */
+	public void setPollInterval(final long pollInterval) {
+		this.pollInterval = pollInterval;
+	}
+
+	public boolean isWatch() {
+		return watch;
+	}
+
+	/**
+	 * @param watch watch the leader keys with blocking queries (of up to half the TTL) instead of polling
+	 */
+	public void setWatch(final boolean watch) {
+		this.watch = watch;
+	}
+
+	public int getCreateSessionTries() {
+		return createSessionTries;
+	}
+
+	/**
+	 * @param createSessionTries attempts at creating the session before giving up (and, if allowed, going island)
+	 */
+	public void setCreateSessionTries(final int createSessionTries) {
+		this.createSessionTries = createSessionTries;
+	}
+
+	public int getRetryPeriod() {
+		return retryPeriod;
+	}
+
+	/**
+	 * @param retryPeriod seconds before the first retry at creating the session
+	 */
+	public void setRetryPeriod(final int retryPeriod) {
+		this.retryPeriod = retryPeriod;
+	}
+
+	public double getBackOffMultiplier() {
+		return backOffMultiplier;
+	}
+
+	/**
+	 * @param backOffMultiplier growth of the period between further retries at creating the session
+	 */
+	public void setBackOffMultiplier(final double backOffMultiplier) {
+		this.backOffMultiplier = backOffMultiplier;
+	}
+
+	public boolean isAllowIslandMode() {
+		return allowIslandMode;
+	}
+
+	/**
+	 * @param allowIslandMode keep consuming while leadership is unknown (e.g. Consul is unreachable)
+	 */
+	public void setAllowIslandMode(final boolean allowIslandMode) {
+		this.allowIslandMode = allowIslandMode;
+	}
+
+	public String getAdvertisedAddress() {
+		return advertisedAddress;
+	}
+
+	/**
+	 * @param advertisedAddress endpoint URI by which other nodes forward to this one while it leads, published in the
+	 *        value of its leader keys
+	 */
+	public void setAdvertisedAddress(final String advertisedAddress) {
+		this.advertisedAddress = advertisedAddress;
+	}
+
+	/**
+	 * @param httpTransport the HTTP client to use, rather than a connection pool of the component's own
+	 */
+	public void setHttpTransport(final ConsulHttpTransport httpTransport) {
+		this.httpTransport = httpTransport;
+	}
+}
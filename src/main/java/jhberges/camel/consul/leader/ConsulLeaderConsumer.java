@@ -0,0 +1,92 @@
+package jhberges.camel.consul.leader;
+
+import java.util.Objects;
+
+import org.apache.camel.Consumer;
+import org.apache.camel.Endpoint;
+import org.apache.camel.Processor;
+import org.apache.camel.impl.DefaultConsumer;
+import org.apache.camel.util.ServiceHelper;
+
+/**
+ * Starts a consumer of the delegate endpoint when elected, and stops it when revoked (or, unless in island mode, when
+ * leadership is unknown).
+ */
+class ConsulLeaderConsumer extends DefaultConsumer implements LeadershipListener {
+	private final Endpoint delegateEndpoint;
+	private Consumer delegate;
+
+	ConsulLeaderConsumer(final ConsulLeaderEndpoint endpoint, final Processor processor, final Endpoint delegateEndpoint) {
+		super(endpoint, processor);
+		this.delegateEndpoint = delegateEndpoint;
+	}
+
+	@Override
+	public ConsulLeaderEndpoint getEndpoint() {
+		return (ConsulLeaderEndpoint) super.getEndpoint();
+	}
+
+	synchronized boolean isConsuming() {
+		return Objects.nonNull(delegate);
+	}
+
+	@Override
+	protected void doStart() throws Exception {
+		super.doStart();
+		getEndpoint().getComponent().join(getEndpoint().getServiceName(), this);
+	}
+
+	@Override
+	protected void doStop() throws Exception {
+		getEndpoint().getComponent().leave(getEndpoint().getServiceName(), this);
+		stopConsuming();
+		super.doStop();
+	}
+
+	@Override
+	public void onElected(final String serviceName) {
+		startConsuming();
+	}
+
+	@Override
+	public void onRevoked(final String serviceName) {
+		stopConsuming();
+	}
+
+	@Override
+	public void onUnknown(final String serviceName) {
+		if (getEndpoint().getComponent().isAllowIslandMode()) {
+			startConsuming();
+		} else {
+			stopConsuming();
+		}
+	}
+
+	private synchronized void startConsuming() {
+		if (Objects.nonNull(delegate) || !isRunAllowed()) {
+			return;
+		}
+		log.info("Consuming from {}", delegateEndpoint);
+		try {
+			final Consumer consumer = delegateEndpoint.createConsumer(getProcessor());
+			ServiceHelper.startService(consumer);
+			delegate = consumer;
+		} catch (final Exception e) {
+			getExceptionHandler().handleException("Failed to start consuming from " + delegateEndpoint, e);
+		}
+	}
+
+	private synchronized void stopConsuming() {
+		if (Objects.isNull(delegate)) {
+			return;
+		}
+		log.info("No longer consuming from {}", delegateEndpoint);
+		try {
+			ServiceHelper.stopAndShutdownService(delegate);
+		} catch (final Exception e) {
+			getExceptionHandler().handleException("Failed to stop consuming from " + delegateEndpoint, e);
+		} finally {
+			delegate = null;
+		}
+	}
+}
@@ -1,12 +1,29 @@
 package jhberges.camel.consul.leader;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 
 import org.apache.camel.CamelContext;
 import org.apache.camel.ProducerTemplate;
 import org.apache.camel.ServiceStatus;
+import org.apache.camel.spi.ShutdownStrategy;
 import org.apache.camel.support.LifecycleStrategySupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,13 +33,39 @@ public class ConsulLeaderElector extends LifecycleStrategySupport implements Run
 	static Runnable TERMINATION_CALLBACK = () -> System.exit(1);
 	static final String CONTROLBUS_ROUTE = "controlbus:language:simple";
 	private static final Logger logger = LoggerFactory.getLogger(ConsulLeaderElector.class);
+	static final long DEFAULT_HANDOVER_HOLD_OFF_IN_MILLIS = TimeUnit.SECONDS.toMillis(60);
+	private static final long DRAIN_POLL_IN_MILLIS = 10;
+	// Default listener executor: single-threaded, so that callbacks are delivered in order
+	private static final Executor listenerDispatcher = Executors.newSingleThreadExecutor(runnable -> {
+		final Thread thread = new Thread(runnable, "consul-leader-listeners");
+		thread.setDaemon(true);
+		return thread;
+	});
+	// Creates sessions off the caller's thread, one thread per elector so that they are created in parallel
+	private static final Executor bootstrapper = Executors.newCachedThreadPool(runnable -> {
+		final Thread thread = new Thread(runnable, "consul-leader-bootstrap");
+		thread.setDaemon(true);
+		return thread;
+	});
 
-	private final String routeToControl;
+	private final Map<String, String> routesByService;
 	private final CamelContext camelContext;
-	private final ProducerTemplate producerTemplate;
 	private final String serviceName;
 	private final boolean allowIslandMode;
 	private final ConsulFacadeBean consulFacade;
+	private volatile boolean stopped = false;
+	private boolean asynchronous = false;
+	private final AtomicBoolean pollInFlight = new AtomicBoolean(false);
+	private ElectionMetrics metrics = ElectionMetrics.NONE;
+	private RouteControlStrategy routeControl;
+	private final Map<String, Boolean> leading = new ConcurrentHashMap<>();
+	private final Map<String, LeadershipState> states = new ConcurrentHashMap<>();
+	private final List<LeadershipListener> listeners = new CopyOnWriteArrayList<>();
+	private Executor listenerExecutor = listenerDispatcher;
+	private volatile Thread loopThread;
+	private long handoverHoldOffInMillis = DEFAULT_HANDOVER_HOLD_OFF_IN_MILLIS;
+	private final CompletableFuture<Optional<String>> bootstrap;
+	private IslandModeGuard islandModeGuard;
 
 	protected ConsulLeaderElector(
 			final ConsulFacadeBean consulFacade,
@@ -30,19 +73,66 @@ public class ConsulLeaderElector extends LifecycleStrategySupport implements Run
 			final String routeToControl, final CamelContext camelContext, final ProducerTemplate producerTemplate,
 			final boolean allowIslandMode)
 					throws Exception {
+		this(consulFacade, serviceName, Collections.singletonMap(serviceName, routeToControl), camelContext, producerTemplate,
+				allowIslandMode);
+	}
+
+	protected ConsulLeaderElector(
+			final ConsulFacadeBean consulFacade,
+			final String sessionName,
+			final Map<String, String> routesByService, final CamelContext camelContext, final ProducerTemplate producerTemplate,
+			final boolean allowIslandMode)
+					throws Exception {
+		this(consulFacade, sessionName, routesByService, camelContext, producerTemplate, allowIslandMode, false);
+	}
+
+	/**
+	 * @param asynchronousBootstrap create the session in the background rather than before returning; until it is
+	 *        created, polls are skipped and leadership is {@link LeadershipState#UNKNOWN}
+	 */
+	protected ConsulLeaderElector(
+			final ConsulFacadeBean consulFacade,
+			final String sessionName,
+			final Map<String, String> routesByService, final CamelContext camelContext, final ProducerTemplate producerTemplate,
+			final boolean allowIslandMode, final boolean asynchronousBootstrap)
+					throws Exception {
 		this.consulFacade = consulFacade;
-		this.serviceName = serviceName;
-		this.routeToControl = routeToControl;
+		this.serviceName = sessionName;
+		this.routesByService = Collections.unmodifiableMap(new LinkedHashMap<>(routesByService));
 		this.camelContext = camelContext;
-		this.producerTemplate = producerTemplate;
+		this.routeControl = new ControlBusRouteControl(producerTemplate);
 		this.allowIslandMode = allowIslandMode;
-		final Optional<String> sessionKey = consulFacade.initSessionKey(serviceName);
-		if (!sessionKey.isPresent() && !allowIslandMode) {
+		this.islandModeGuard = new IslandModeGuard(allowIslandMode);
+		if (asynchronousBootstrap) {
+			bootstrap = CompletableFuture.supplyAsync(() -> consulFacade.initSessionKeyAsync(serviceName), bootstrapper)
+					.thenCompose(Function.identity());
+			bootstrap.whenComplete((sessionKey, throwable) -> {
+				if (Objects.nonNull(throwable)) {
+					logger.error("Failed to create session for serviceName={}: {}", serviceName, throwable.getMessage());
+				}
+				bootstrapped(Objects.isNull(throwable) && sessionKey.isPresent());
+			});
+		} else {
+			bootstrap = CompletableFuture.completedFuture(consulFacade.initSessionKey(serviceName));
+			bootstrapped(bootstrap.join().isPresent());
+		}
+	}
+
+	private void bootstrapped(final boolean hasSession) {
+		if (!hasSession && !allowIslandMode) {
 			logger.error("Island mode disabled -- terminating abruptly!");
 			TERMINATION_CALLBACK.run();
 		}
 	}
 
+	private boolean isBootstrapping() {
+		if (bootstrap.isDone()) {
+			return false;
+		}
+		logger.debug("Session for serviceName={} not yet created -- not polling", serviceName);
+		return true;
+	}
+
 	private boolean isRunning(final String routeToControl) {
 		final ServiceStatus routeStatus = camelContext.getRouteStatus(routeToControl);
 		return Objects.nonNull(routeStatus) && (routeStatus.isStarted() || routeStatus.isStarting());
@@ -51,34 +141,457 @@ public class ConsulLeaderElector extends LifecycleStrategySupport implements Run
 	@Override
 	public void onContextStop(final CamelContext context) {
 		super.onContextStop(context);
+		stopped = true;
+		// Wakes a sleeping loop; unlike an interrupt, this leaves a request in flight alone
+		Optional.ofNullable(loopThread).ifPresent(LockSupport::unpark);
+		// Released keys are free at once, whereas those of a destroyed session are held back by lock-delay.
+		// A kept session instead holds on to them, for the restarted node to resume leading.
+		routesByService.keySet().stream()
+				.filter(this::isLeader)
+				.filter(service -> !consulFacade.isKeepingSession())
+				.forEach(this::releaseLeadership);
 		try {
 			consulFacade.close();
 		} catch (final IOException e) {
 			logger.debug("Exception while closing facade: {}", e.getMessage());
 		}
+		routesByService.keySet().forEach(service -> updateState(service, LeadershipState.UNKNOWN));
 	}
 
-	@Override
-	public void run() {
-		final Optional<Boolean> isLeader = consulFacade.pollConsul(serviceName);
+	/**
+	 * Keeps the session, and the leader keys it holds, when the context stops, for this node to resume leading when
+	 * restarted within the session TTL. Requires a session state file (see
+	 * {@link ConsulLeaderElectorBuilder#usingSessionStateFile(java.nio.file.Path)}); without one, or without calling
+	 * this, a stopping node releases its leader keys and destroys its session.
+	 */
+	public void prepareRestart() {
+		consulFacade.setKeepingSessionOnClose(true);
+		if (!consulFacade.isKeepingSession()) {
+			logger.warn("No session state file -- session of serviceName={} will not be kept for the restart", serviceName);
+		}
+	}
+
+	/**
+	 * Hands leadership over to another node, e.g. ahead of a planned restart, holding off for the default period (the
+	 * session TTL when built by {@link ConsulLeaderElectorBuilder}).
+	 *
+	 * @see #handover(long)
+	 */
+	public void handover() {
+		handover(handoverHoldOffInMillis);
+	}
+
+	/**
+	 * Hands leadership over to another node: stops the routes this node leads, waits for their in-flight exchanges to
+	 * complete, and then releases their leader keys. A released key is free at once (there is no lock-delay as with an
+	 * expired session), so the next follower to poll takes over -- followers using blocking queries right away, as the
+	 * release wakes their watch.
+	 * <p>
+	 * This node neither acquires nor leads these services for the next <code>holdOffInMillis</code>, giving the others
+	 * time to take over.
+	 */
+	public void handover(final long holdOffInMillis) {
+		routesByService.forEach((service, route) -> {
+			consulFacade.holdOff(service, holdOffInMillis);
+			if (!isLeader(service) && !isRunning(route)) {
+				return;
+			}
+			logger.info("Handing over leadership of serviceName={}", service);
+			try {
+				if (isRunning(route)) {
+					logger.info("Stopping route={}", route);
+					routeControl.stopRoute(camelContext, route);
+					metrics.routeStateChanged(service, route, false);
+				}
+				awaitDrained(route);
+			} catch (final Exception exc) {
+				logger.error("Exception during route management", exc);
+			}
+			releaseLeadership(service);
+		});
+	}
+
+	private void releaseLeadership(final String serviceName) {
+		try {
+			if (!consulFacade.releaseLeadership(serviceName)) {
+				logger.warn("Unable to release leadership of serviceName={} -- it passes on once the session expires", serviceName);
+			}
+		} catch (final RuntimeException e) {
+			logger.warn("Unable to release leadership of serviceName={}: {}", serviceName, e.getMessage());
+		}
+		if (Boolean.TRUE.equals(leading.put(serviceName, false))) {
+			metrics.leadershipLost(serviceName);
+		}
+		updateState(serviceName, LeadershipState.FOLLOWER);
+	}
+
+	/**
+	 * Waits for a route stopping (or suspending) in the background, for at most Camel's shutdown timeout.
+	 */
+	private void awaitDrained(final String routeToControl) {
+		long deadline = 0;
+		ServiceStatus status;
+		while (Objects.nonNull(status = camelContext.getRouteStatus(routeToControl)) && !status.isStopped() && !status.isSuspended()) {
+			if (deadline == 0) {
+				final ShutdownStrategy shutdownStrategy = camelContext.getShutdownStrategy();
+				deadline = System.nanoTime() + shutdownStrategy.getTimeUnit().toNanos(shutdownStrategy.getTimeout());
+			} else if (deadline - System.nanoTime() <= 0) {
+				logger.warn("Route={} still {} -- releasing leadership regardless", routeToControl, status);
+				return;
+			}
+			try {
+				TimeUnit.MILLISECONDS.sleep(DRAIN_POLL_IN_MILLIS);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	public void addLeadershipListener(final LeadershipListener listener) {
+		listeners.add(Objects.requireNonNull(listener));
+	}
+
+	public void removeLeadershipListener(final LeadershipListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * @return the address published by the current leader of <code>serviceName</code> (see
+	 *         {@link ConsulLeaderElectorBuilder#advertisingAddress(String)}), as of the latest poll
+	 */
+	public Optional<String> getLeaderAddress(final String serviceName) {
+		return consulFacade.getLeaderAddress(serviceName);
+	}
+
+	public LeadershipState getLeadershipState(final String serviceName) {
+		return states.getOrDefault(serviceName, LeadershipState.UNKNOWN);
+	}
+
+	/**
+	 * @return whether the last poll confirmed leadership of the (first) service. Reads local state only.
+	 */
+	public boolean isLeader() {
+		return isLeader(routesByService.keySet().iterator().next());
+	}
+
+	public boolean isLeader(final String serviceName) {
+		return states.get(serviceName) == LeadershipState.LEADER;
+	}
+
+	/**
+	 * @return the fencing token of the (first) service; see {@link ConsulFacadeBean#getFencingToken(String)}
+	 */
+	public Optional<Long> getFencingToken() {
+		return getFencingToken(routesByService.keySet().iterator().next());
+	}
+
+	public Optional<Long> getFencingToken(final String serviceName) {
+		return consulFacade.getFencingToken(serviceName);
+	}
+
+	/**
+	 * @return a route policy stamping exchanges with the fencing token of the (first) service, to add to the
+	 *         controlled route with <code>.routePolicy(...)</code>
+	 */
+	public FencingTokenRoutePolicy fencingTokenPolicy() {
+		return fencingTokenPolicy(routesByService.keySet().iterator().next());
+	}
+
+	public FencingTokenRoutePolicy fencingTokenPolicy(final String serviceName) {
+		return new FencingTokenRoutePolicy(() -> getFencingToken(serviceName));
+	}
+
+	void setListenerExecutor(final Executor listenerExecutor) {
+		this.listenerExecutor = listenerExecutor;
+	}
+
+	private void updateState(final String serviceName, final LeadershipState state) {
+		final LeadershipState previous = states.put(serviceName, state);
+		if (state == (Objects.isNull(previous) ? LeadershipState.UNKNOWN : previous) || listeners.isEmpty()) {
+			return;
+		}
+		logger.debug("Leadership of serviceName={} changed from {} to {}", serviceName, previous, state);
+		try {
+			listenerExecutor.execute(() -> listeners.forEach(listener -> notify(listener, serviceName, state)));
+		} catch (final RejectedExecutionException e) {
+			logger.warn("Unable to notify leadership listeners of serviceName={} state={}", serviceName, state);
+		}
+	}
+
+	private static void notify(final LeadershipListener listener, final String serviceName, final LeadershipState state) {
+		try {
+			switch (state) {
+			case LEADER:
+				listener.onElected(serviceName);
+				break;
+			case FOLLOWER:
+				listener.onRevoked(serviceName);
+				break;
+			default:
+				listener.onUnknown(serviceName);
+			}
+		} catch (final RuntimeException e) {
+			logger.error("Leadership listener failed for serviceName={} state={}", serviceName, state, e);
+		}
+	}
+
+	void setHandoverHoldOffInMillis(final long handoverHoldOffInMillis) {
+		this.handoverHoldOffInMillis = handoverHoldOffInMillis;
+	}
+
+	void setAsynchronous(final boolean asynchronous) {
+		this.asynchronous = asynchronous;
+	}
+
+	void setMetrics(final ElectionMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	void setIslandModeGuard(final IslandModeGuard islandModeGuard) {
+		this.islandModeGuard = islandModeGuard;
+	}
+
+	void setRouteControl(final RouteControlStrategy routeControl) {
+		this.routeControl = routeControl;
+	}
+
+	public void watch(final ScheduledExecutorService executor, final int waitInSeconds, final long retryDelayInSeconds) {
+		if (stopped) {
+			return;
+		}
+		if (asynchronous) {
+			electAsync()
+					.exceptionally(throwable -> {
+						logger.warn("Election failed for serviceName={}: {}", serviceName, throwable.getMessage());
+						return null;
+					})
+					.thenCompose(ignored -> isSingleService()
+							? consulFacade.awaitLeaderChangeAsync(serviceName, waitInSeconds)
+							: consulFacade.awaitLeaderChangesAsync(waitInSeconds))
+					.thenAccept(changed -> rewatch(executor, changed, waitInSeconds, retryDelayInSeconds));
+			return;
+		}
+		run();
+		final Optional<Boolean> changed = isSingleService()
+				? consulFacade.awaitLeaderChange(serviceName, waitInSeconds)
+				: consulFacade.awaitLeaderChanges(waitInSeconds);
+		rewatch(executor, changed, waitInSeconds, retryDelayInSeconds);
+	}
+
+	private void rewatch(final ScheduledExecutorService executor, final Optional<Boolean> changed, final int waitInSeconds,
+			final long retryDelayInSeconds) {
+		logger.debug("Watch result serviceName={} changed={}", serviceName, changed);
+		try {
+			if (changed.isPresent()) {
+				executor.execute(() -> watch(executor, waitInSeconds, retryDelayInSeconds));
+			} else {
+				executor.schedule(() -> watch(executor, waitInSeconds, retryDelayInSeconds), retryDelayInSeconds, TimeUnit.SECONDS);
+			}
+		} catch (final RejectedExecutionException e) {
+			logger.debug("Executor no longer accepting tasks -- ending watch of serviceName={}", serviceName);
+		}
+	}
+
+	/**
+	 * Polls now and then reschedules itself with a delay from <code>schedule</code>, rather than at a fixed rate.
+	 */
+	public void poll(final ScheduledExecutorService executor, final AdaptivePollSchedule schedule) {
+		if (stopped) {
+			return;
+		}
+		if (asynchronous) {
+			electAsync()
+					.exceptionally(throwable -> {
+						logger.warn("Election failed for serviceName={}: {}", serviceName, throwable.getMessage());
+						return null;
+					})
+					.thenRun(() -> reschedule(executor, schedule));
+			return;
+		}
+		try {
+			run();
+		} catch (final RuntimeException e) {
+			logger.warn("Election failed for serviceName={}: {}", serviceName, e.getMessage());
+		}
+		reschedule(executor, schedule);
+	}
+
+	private long nextDelayInMillis(final AdaptivePollSchedule schedule) {
+		final LeadershipState state = aggregateState();
+		final boolean vacant = state == LeadershipState.FOLLOWER
+				&& routesByService.keySet().stream().anyMatch(consulFacade::isLeaderKeyVacant);
+		final long delay = schedule.nextDelayInMillis(state, vacant);
+		logger.debug("Next poll for serviceName={} state={} leaderKeyVacant={} in {}ms", serviceName, state, vacant, delay);
+		return delay;
+	}
+
+	private void reschedule(final ScheduledExecutorService executor, final AdaptivePollSchedule schedule) {
+		final long delay = nextDelayInMillis(schedule);
+		try {
+			executor.schedule(() -> poll(executor, schedule), delay, TimeUnit.MILLISECONDS);
+		} catch (final RejectedExecutionException e) {
+			logger.debug("Executor no longer accepting tasks -- ending polling of serviceName={}", serviceName);
+		}
+	}
+
+	/**
+	 * Starts a thread running a {@link #loop(long, LongSupplier)}, which is woken up when the context stops.
+	 */
+	void startLoop(final Thread thread) {
+		loopThread = thread;
+		thread.start();
+	}
+
+	/**
+	 * @return a loop electing until the elector stops: each <code>step</code> elects once (blocking) and returns the
+	 *         delay until the next, which is slept. Meant for a virtual thread, where blocking costs no platform thread.
+	 */
+	Runnable loop(final long initialDelayInMillis, final LongSupplier step) {
+		return () -> {
+			sleep(initialDelayInMillis);
+			while (!stopped && !Thread.currentThread().isInterrupted()) {
+				sleep(step.getAsLong());
+			}
+			logger.debug("Election loop for serviceName={} ended", serviceName);
+		};
+	}
+
+	private void sleep(final long millis) {
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+		long remaining;
+		while (!stopped && !Thread.currentThread().isInterrupted() && (remaining = deadline - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(this, remaining);
+		}
+	}
+
+	/**
+	 * @return <code>intervalInMillis</code>, after electing once
+	 */
+	long electStep(final long intervalInMillis) {
+		electSafely();
+		return intervalInMillis;
+	}
+
+	/**
+	 * @return the delay from <code>schedule</code>, after electing once
+	 */
+	long pollStep(final AdaptivePollSchedule schedule) {
+		electSafely();
+		return nextDelayInMillis(schedule);
+	}
+
+	/**
+	 * @return no delay if the leader key(s) could be watched, else <code>retryDelayInSeconds</code>, after electing
+	 *         once and watching the leader key(s) for up to <code>waitInSeconds</code>
+	 */
+	long watchStep(final int waitInSeconds, final long retryDelayInSeconds) {
+		electSafely();
+		if (stopped) {
+			return 0;
+		}
+		final Optional<Boolean> changed = isSingleService()
+				? consulFacade.awaitLeaderChange(serviceName, waitInSeconds)
+				: consulFacade.awaitLeaderChanges(waitInSeconds);
+		logger.debug("Watch result serviceName={} changed={}", serviceName, changed);
+		return changed.isPresent() ? 0 : TimeUnit.SECONDS.toMillis(retryDelayInSeconds);
+	}
+
+	private void electSafely() {
+		try {
+			run();
+		} catch (final RuntimeException e) {
+			logger.warn("Election failed for serviceName={}: {}", serviceName, e.getMessage());
+		}
+	}
+
+	/**
+	 * @return UNKNOWN if any service is, else FOLLOWER if any service is, else LEADER
+	 */
+	private LeadershipState aggregateState() {
+		LeadershipState aggregate = LeadershipState.LEADER;
+		for (final String service : routesByService.keySet()) {
+			final LeadershipState state = getLeadershipState(service);
+			if (state == LeadershipState.UNKNOWN) {
+				return state;
+			} else if (state == LeadershipState.FOLLOWER) {
+				aggregate = state;
+			}
+		}
+		return aggregate;
+	}
+
+	private boolean isSingleService() {
+		return routesByService.size() == 1 && routesByService.containsKey(serviceName);
+	}
+
+	private void manageRoute(final String serviceName, final String routeToControl, final Optional<Boolean> isLeader) {
 		logger.debug("Poll result serviceName={} isLeader={} allowIslandMode={}", serviceName, isLeader, allowIslandMode);
+		metrics.pollCompleted(serviceName, isLeader);
+		updateState(serviceName, LeadershipState.of(isLeader));
+		// I.e if explicitly leader, or poll failed and the guard lets this node run as an island
+		final boolean leads = islandModeGuard.leads(serviceName, isLeader, () -> consulFacade.getLeaderAddress(serviceName),
+				System.nanoTime());
+		final boolean led = Boolean.TRUE.equals(leading.put(serviceName, leads));
+		if (leads && !led) {
+			metrics.leadershipAcquired(serviceName);
+		} else if (!leads && led) {
+			metrics.leadershipLost(serviceName);
+		}
 		try {
-			if (isLeader.orElse(allowIslandMode)) { // I.e if explicitly leader, or poll
-											// failed.
+			if (leads) {
 				if (!isRunning(routeToControl)) {
 					logger.info("Starting route={}", routeToControl);
-					producerTemplate.sendBody(
-							CONTROLBUS_ROUTE,
-							String.format("${camelContext.startRoute(\"%s\")}", routeToControl));
+					routeControl.startRoute(camelContext, routeToControl);
+					metrics.routeStateChanged(serviceName, routeToControl, true);
 				}
 			} else if (isRunning(routeToControl)) {
 				logger.info("Stopping route={}", routeToControl);
-				producerTemplate.sendBody(
-						CONTROLBUS_ROUTE,
-						String.format("${camelContext.stopRoute(\"%s\")}", routeToControl));
+				routeControl.stopRoute(camelContext, routeToControl);
+				metrics.routeStateChanged(serviceName, routeToControl, false);
 			}
 		} catch (final Exception exc) {
 			logger.error("Exception during route management", exc);
 		}
 	}
+
+	private CompletableFuture<Void> electAsync() {
+		if (isBootstrapping()) {
+			return CompletableFuture.completedFuture(null);
+		}
+		final CompletableFuture<Map<String, Optional<Boolean>>> poll = isSingleService()
+				? consulFacade.pollConsulAsync(serviceName).thenApply(isLeader -> Collections.singletonMap(serviceName, isLeader))
+				: consulFacade.pollConsulAsync(serviceName, routesByService.keySet());
+		return poll.thenAccept(results -> results
+				.forEach((service, isLeader) -> manageRoute(service, routesByService.get(service), isLeader)));
+	}
+
+	private void runAsync() {
+		// A slow agent must not pile up overlapping polls
+		if (!pollInFlight.compareAndSet(false, true)) {
+			logger.debug("Previous poll for serviceName={} still in flight -- skipping", serviceName);
+			return;
+		}
+		electAsync().whenComplete((ignored, throwable) -> {
+			pollInFlight.set(false);
+			if (Objects.nonNull(throwable)) {
+				logger.warn("Election failed for serviceName={}: {}", serviceName, throwable.getMessage());
+			}
+		});
+	}
+
+	@Override
+	public void run() {
+		if (isBootstrapping()) {
+			return;
+		} else if (asynchronous) {
+			runAsync();
+		} else if (isSingleService()) {
+			manageRoute(serviceName, routesByService.get(serviceName), consulFacade.pollConsul(serviceName));
+		} else {
+			// One renew and one recursive read for all services sharing this session
+			consulFacade.pollConsul(serviceName, routesByService.keySet())
+					.forEach((service, isLeader) -> manageRoute(service, routesByService.get(service), isLeader));
+		}
+	}
 }
@@ -1,22 +1,32 @@
 package jhberges.camel.consul.leader;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.camel.CamelContext;
 import org.apache.camel.ProducerTemplate;
 import org.apache.camel.impl.DefaultProducerTemplate;
+import org.apache.http.client.fluent.Executor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class ConsulLeaderElectorBuilder {
 	private static final Logger logger = LoggerFactory.getLogger(ConsulLeaderElectorBuilder.class);
 
-	private static final double DEFAULT_BACKOFF_MULTIPLIER = 1.5;
-	private static final int DEFAULT_TRIES = 5;
-	private static final int DEFAULT_RETRY_PERIOD = 2;
+	// Also the defaults of the consul-leader component
+	static final double DEFAULT_BACKOFF_MULTIPLIER = 1.5;
+	static final int DEFAULT_TRIES = 5;
+	static final int DEFAULT_RETRY_PERIOD = 2;
 	private static final int POLL_INTERVAL = 5;
 	private static final int POLL_INITIAL_DELAY = 1;
 
@@ -27,6 +37,7 @@ public class ConsulLeaderElectorBuilder {
 	private final String consulUrl;
 	private String serviceName;
 	private String routeId;
+	private final Map<String, String> routesByService = new LinkedHashMap<>();
 	private CamelContext camelContext;
 	private String username;
 	private String password;
@@ -39,33 +50,213 @@ public class ConsulLeaderElectorBuilder {
 	private int retryPeriod = DEFAULT_RETRY_PERIOD;
 	private double backOffMultiplier = DEFAULT_BACKOFF_MULTIPLIER;
 	private boolean allowIslandMode = true;
+	private int islandModeUnknownPolls = 1;
+	private long islandModeUnknownForInMillis = 0;
+	private boolean keepLastKnownLeader = false;
+	private Optional<PeerCheck> peerCheck = Optional.empty();
+	private int blockingQueryWaitInSeconds = 0;
+	private boolean adaptivePolling = false;
+	private boolean leaderLease = false;
+	private boolean sharedSessionRenewal = false;
+	private boolean asynchronousBootstrap = false;
+	private boolean partitioned = false;
+	private boolean virtualThreads = false;
+	private ConsulHttpTransport httpTransport;
+	private final List<String> failoverUrls = new ArrayList<>();
+	private java.util.concurrent.Executor httpIoExecutor;
+	private boolean useTransactions = false;
+	private PooledConsulHttpClient connectionPool;
+	private boolean pooledConnections = false;
+	private int maxConnections = PooledConsulHttpClient.DEFAULT_MAX_TOTAL;
+	private int maxConnectionsPerRoute = PooledConsulHttpClient.DEFAULT_MAX_PER_ROUTE;
+	private int connectTimeoutInMillis = PooledConsulHttpClient.DEFAULT_CONNECT_TIMEOUT_IN_MILLIS;
+	private int socketTimeoutInMillis = PooledConsulHttpClient.DEFAULT_SOCKET_TIMEOUT_IN_MILLIS;
+	private ElectionMetrics metrics = ElectionMetrics.NONE;
+	private Optional<LeadershipRecorder> recorder = Optional.empty();
+	private RouteControlStrategy routeControl;
+	private final List<LeadershipListener> leadershipListeners = new ArrayList<>();
+	private java.util.concurrent.Executor listenerExecutor;
+	private Path sessionStateFile;
+	private String advertisedAddress;
 
 	private ConsulLeaderElectorBuilder(final String url) {
 		this.consulUrl = url;
 	}
 
+	/**
+	 * @param address published along with leadership, for other nodes to reach the leader by, e.g. a Camel endpoint URI
+	 */
+	public ConsulLeaderElectorBuilder advertisingAddress(final String address) {
+		this.advertisedAddress = address;
+		return this;
+	}
+
 	public ConsulLeaderElectorBuilder allowingIslandMode(final boolean flag) {
 		this.allowIslandMode = flag;
 		return this;
 	}
 
+	/**
+	 * Only run as an island once <code>unknownPolls</code> consecutive polls, over at least <code>unknownFor</code>,
+	 * have failed; until then, keep the last known leadership.
+	 */
+	public ConsulLeaderElectorBuilder allowingIslandModeAfter(final int unknownPolls, final long unknownFor, final TimeUnit unit) {
+		this.allowIslandMode = true;
+		this.islandModeUnknownPolls = unknownPolls;
+		this.islandModeUnknownForInMillis = unit.toMillis(unknownFor);
+		return this;
+	}
+
+	/**
+	 * @param flag keep leading while Consul cannot be reached if this node was the leader when it last could, and only
+	 *        let followers run as islands when a {@link #checkingLeaderWith(PeerCheck)} finds the leader dead
+	 */
+	public ConsulLeaderElectorBuilder keepingLastKnownLeader(final boolean flag) {
+		this.keepLastKnownLeader = flag;
+		return this;
+	}
+
+	/**
+	 * Ask the last known leader directly before running as an island, e.g. {@link PeerCheck#connecting(int)}.
+	 */
+	public ConsulLeaderElectorBuilder checkingLeaderWith(final PeerCheck peerCheck) {
+		this.peerCheck = Optional.of(peerCheck);
+		return this;
+	}
+
 	public ConsulLeaderElector build() throws Exception {
 		Objects.requireNonNull(camelContext, "No CamelContext provided!");
-		final ProducerTemplate producerTemplate = DefaultProducerTemplate.newInstance(camelContext, ConsulLeaderElector.CONTROLBUS_ROUTE);
+		if (Objects.nonNull(connectionPool) && pooledConnections) {
+			throw new IllegalStateException("A shared connection pool keeps its own size and timeouts -- "
+					+ "give them to its constructor rather than to usingConnectionPool(int, int) or usingTimeouts");
+		}
+		// Only the default controlbus route control needs a producer
+		final ProducerTemplate producerTemplate = Objects.isNull(routeControl)
+				? DefaultProducerTemplate.newInstance(camelContext, ConsulLeaderElector.CONTROLBUS_ROUTE)
+				: null;
+		final boolean asynchronous = Objects.nonNull(httpTransport) || Objects.nonNull(httpIoExecutor);
+		final Optional<PooledConsulHttpClient> pool = Objects.nonNull(connectionPool)
+				? Optional.of(connectionPool)
+				: pooledConnections
+						? Optional.of(new PooledConsulHttpClient(
+								maxConnections, maxConnectionsPerRoute,
+								connectTimeoutInMillis, socketTimeoutInMillis, PooledConsulHttpClient.DEFAULT_KEEP_ALIVE_IN_MILLIS))
+						: Optional.empty();
+		ConsulHttpTransport transport;
+		if (Objects.nonNull(httpTransport)) {
+			transport = httpTransport;
+		} else {
+			Executor httpExecutor = ConsulFacadeBean.authenticated(
+					pool.map(PooledConsulHttpClient::newExecutor).orElseGet(Executor::newInstance),
+					consulUrl, Optional.ofNullable(username), Optional.ofNullable(password));
+			for (final String failoverUrl : failoverUrls) {
+				httpExecutor = ConsulFacadeBean.authenticated(
+						httpExecutor, failoverUrl, Optional.ofNullable(username), Optional.ofNullable(password));
+			}
+			transport = new FluentConsulHttpTransport(
+					httpExecutor,
+					Objects.nonNull(httpIoExecutor) ? httpIoExecutor : FluentConsulHttpTransport.DEFAULT_IO_EXECUTOR,
+					pool,
+					Objects.isNull(connectionPool));
+		}
+		if (!failoverUrls.isEmpty()) {
+			transport = new FailoverConsulHttpTransport(consulUrl, failoverUrls, transport);
+		}
+		final ElectionMetrics recordedMetrics = recorder.map(metrics::andThen).orElse(metrics);
+		final ConsulFacadeBean consulFacade = new ConsulFacadeBean(
+				consulUrl,
+				transport,
+				ttlInSeconds, lockDelayInSeconds,
+				createSessionTries, retryPeriod, backOffMultiplier);
+		consulFacade.setUseTransactions(useTransactions);
+		consulFacade.setFairShare(partitioned);
+		consulFacade.setMetrics(recordedMetrics);
+		consulFacade.setAdvertisedAddress(advertisedAddress);
+		if (Objects.nonNull(sessionStateFile)) {
+			consulFacade.setSessionStateFile(sessionStateFile);
+		}
+		if (sharedSessionRenewal) {
+			consulFacade.setSessionRenewer(SessionRenewer.shared());
+		}
+		if (leaderLease) {
+			consulFacade.setLeaderLeaseInMillis(TimeUnit.SECONDS.toMillis(ttlInSeconds) / 2);
+		}
+		final String sessionName = routesByService.isEmpty() || Objects.nonNull(serviceName)
+				? serviceName
+				: String.join(",", routesByService.keySet());
+		if (Objects.isNull(httpTransport)) {
+			pool.ifPresent(_pool -> recordedMetrics.connectionPoolUsed(sessionName, _pool));
+		}
 		final ConsulLeaderElector consulLeaderElector = new ConsulLeaderElector(
-				new ConsulFacadeBean(
-						consulUrl,
-						Optional.ofNullable(username), Optional.ofNullable(password),
-						ttlInSeconds, lockDelayInSeconds,
-						allowIslandMode,
-						createSessionTries, retryPeriod, backOffMultiplier),
-				serviceName,
-				routeId, camelContext, producerTemplate,
-				allowIslandMode);
-		logger.debug("pollInitialDelay={} pollInterval={}", pollInitialDelay, pollInterval);
-		executor.scheduleAtFixedRate(consulLeaderElector, pollInitialDelay, pollInterval, TimeUnit.SECONDS);
+				consulFacade,
+				sessionName,
+				routesByService.isEmpty() ? Collections.singletonMap(serviceName, routeId) : routesByService,
+				camelContext, producerTemplate,
+				allowIslandMode, asynchronousBootstrap);
+		final boolean loop = virtualThreads && VirtualThreads.isAvailable();
+		ScheduledExecutorService scheduler = executor;
+		if (virtualThreads && !loop) {
+			if (Objects.isNull(scheduler)) {
+				logger.warn("Virtual threads unavailable on Java {} -- using a scheduled executor of its own",
+						System.getProperty("java.version"));
+				final String threadName = "consul-leader-" + sessionName;
+				scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+					final Thread thread = new Thread(runnable, threadName);
+					thread.setDaemon(true);
+					return thread;
+				});
+			} else {
+				logger.warn("Virtual threads unavailable on Java {} -- using the given executor", System.getProperty("java.version"));
+			}
+		}
+		final ScheduledExecutorService _executor = scheduler;
+		// A loop blocks on Consul itself; chaining futures would only make it spin
+		consulLeaderElector.setAsynchronous(asynchronous && !loop);
+		consulLeaderElector.setMetrics(recordedMetrics);
+		consulLeaderElector.setIslandModeGuard(new IslandModeGuard(
+				allowIslandMode, islandModeUnknownPolls, islandModeUnknownForInMillis, keepLastKnownLeader, peerCheck));
+		consulLeaderElector.setHandoverHoldOffInMillis(TimeUnit.SECONDS.toMillis(ttlInSeconds));
+		if (Objects.nonNull(routeControl)) {
+			consulLeaderElector.setRouteControl(routeControl);
+		}
+		if (Objects.nonNull(listenerExecutor)) {
+			consulLeaderElector.setListenerExecutor(listenerExecutor);
+		}
+		leadershipListeners.forEach(consulLeaderElector::addLeadershipListener);
+		logger.debug("pollInitialDelay={} pollInterval={} blockingQueryWait={}", pollInitialDelay, pollInterval, blockingQueryWaitInSeconds);
+		// The session must be renewed within its TTL, so never block for longer than half of it
+		final int waitInSeconds = Math.max(1, Math.min(blockingQueryWaitInSeconds, ttlInSeconds / 2));
+		if (loop) {
+			final long initialDelayInMillis = TimeUnit.SECONDS.toMillis(pollInitialDelay);
+			final Runnable election;
+			if (blockingQueryWaitInSeconds > 0) {
+				election = consulLeaderElector.loop(initialDelayInMillis,
+						() -> consulLeaderElector.watchStep(waitInSeconds, pollInterval));
+			} else if (adaptivePolling) {
+				final AdaptivePollSchedule schedule = new AdaptivePollSchedule(Math.max(10, ttlInSeconds), pollInterval);
+				election = consulLeaderElector.loop(schedule.initialDelayInMillis(pollInitialDelay, TimeUnit.SECONDS),
+						() -> consulLeaderElector.pollStep(schedule));
+			} else {
+				final long intervalInMillis = TimeUnit.SECONDS.toMillis(pollInterval);
+				election = consulLeaderElector.loop(initialDelayInMillis, () -> consulLeaderElector.electStep(intervalInMillis));
+			}
+			consulLeaderElector.startLoop(VirtualThreads.newThread("consul-leader-" + sessionName, election));
+		} else if (blockingQueryWaitInSeconds > 0) {
+			_executor.schedule(
+					() -> consulLeaderElector.watch(_executor, waitInSeconds, pollInterval),
+					pollInitialDelay, TimeUnit.SECONDS);
+		} else if (adaptivePolling) {
+			final AdaptivePollSchedule schedule = new AdaptivePollSchedule(Math.max(10, ttlInSeconds), pollInterval);
+			_executor.schedule(
+					() -> consulLeaderElector.poll(_executor, schedule),
+					schedule.initialDelayInMillis(pollInitialDelay, TimeUnit.SECONDS), TimeUnit.MILLISECONDS);
+		} else {
+			_executor.scheduleAtFixedRate(consulLeaderElector, pollInitialDelay, pollInterval, TimeUnit.SECONDS);
+		}
 		camelContext.addLifecycleStrategy(consulLeaderElector);
-		producerTemplate.start();
+		if (Objects.nonNull(producerTemplate)) {
+			producerTemplate.start();
+		}
 
 		return consulLeaderElector;
 	}
@@ -75,6 +266,31 @@ public class ConsulLeaderElectorBuilder {
 		return this;
 	}
 
+	public ConsulLeaderElectorBuilder controllingRoute(final String serviceName, final String routeId) {
+		this.routesByService.put(serviceName, routeId);
+		return this;
+	}
+
+	/**
+	 * Splits the work of <code>serviceName</code> into <code>partitions</code>, each with its own leader key
+	 * (<code>service/&lt;serviceName&gt;/&lt;i&gt;/leader</code>) and route (<code>&lt;routeIdPrefix&gt;-&lt;i&gt;</code>,
+	 * for i in 0..partitions-1). Each node leads a fair share of the partitions, which is rebalanced as nodes join and
+	 * leave.
+	 */
+	public ConsulLeaderElectorBuilder controllingPartitions(final String serviceName, final String routeIdPrefix, final int partitions) {
+		if (partitions < 1) {
+			throw new IllegalArgumentException("At least one partition required");
+		}
+		for (int i = 0; i < partitions; i++) {
+			this.routesByService.put(serviceName + "/" + i, routeIdPrefix + "-" + i);
+		}
+		if (Objects.isNull(this.serviceName)) {
+			this.serviceName = serviceName;
+		}
+		this.partitioned = true;
+		return this;
+	}
+
 	public ConsulLeaderElectorBuilder inCamelContext(final CamelContext camelContext) {
 		this.camelContext = camelContext;
 		return this;
@@ -86,6 +302,122 @@ public class ConsulLeaderElectorBuilder {
 		return this;
 	}
 
+	public ConsulLeaderElectorBuilder usingAsynchronousHttp(final java.util.concurrent.Executor ioExecutor) {
+		this.httpIoExecutor = ioExecutor;
+		return this;
+	}
+
+	/**
+	 * Further Consul agents (of the same cluster) to fail over to when the one given in
+	 * {@link #forConsulHost(String)} cannot be reached.
+	 */
+	public ConsulLeaderElectorBuilder failingOverTo(final String... consulUrls) {
+		this.failoverUrls.addAll(Arrays.asList(consulUrls));
+		return this;
+	}
+
+	public ConsulLeaderElectorBuilder usingHttpTransport(final ConsulHttpTransport transport) {
+		this.httpTransport = transport;
+		return this;
+	}
+
+	public ConsulLeaderElectorBuilder usingConnectionPool(final int maxConnections, final int maxConnectionsPerRoute) {
+		this.pooledConnections = true;
+		this.maxConnections = maxConnections;
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+		return this;
+	}
+
+	/**
+	 * Uses <code>sharedPool</code> as configured, so not to be combined with {@link #usingConnectionPool(int, int)} or
+	 * {@link #usingTimeouts(int, int)}.
+	 */
+	public ConsulLeaderElectorBuilder usingConnectionPool(final PooledConsulHttpClient sharedPool) {
+		this.connectionPool = sharedPool;
+		return this;
+	}
+
+	public ConsulLeaderElectorBuilder usingTimeouts(final int connectTimeoutInMillis, final int socketTimeoutInMillis) {
+		this.pooledConnections = true;
+		this.connectTimeoutInMillis = connectTimeoutInMillis;
+		this.socketTimeoutInMillis = socketTimeoutInMillis;
+		return this;
+	}
+
+	public ConsulLeaderElectorBuilder usingConsulTransactions(final boolean flag) {
+		this.useTransactions = flag;
+		return this;
+	}
+
+	public ConsulLeaderElectorBuilder withLeadershipListener(final LeadershipListener listener) {
+		this.leadershipListeners.add(Objects.requireNonNull(listener));
+		return this;
+	}
+
+	public ConsulLeaderElectorBuilder usingListenerExecutor(final java.util.concurrent.Executor listenerExecutor) {
+		this.listenerExecutor = listenerExecutor;
+		return this;
+	}
+
+	public ConsulLeaderElectorBuilder usingRouteControl(final RouteControlStrategy routeControl) {
+		this.routeControl = Objects.requireNonNull(routeControl);
+		return this;
+	}
+
+	public ConsulLeaderElectorBuilder usingMetrics(final ElectionMetrics metrics) {
+		this.metrics = Objects.requireNonNull(metrics);
+		return this;
+	}
+
+	/**
+	 * Records the election into <code>recorder</code>, in addition to any {@link #usingMetrics(ElectionMetrics)}.
+	 */
+	public ConsulLeaderElectorBuilder recordingTo(final LeadershipRecorder recorder) {
+		this.recorder = Optional.of(recorder);
+		return this;
+	}
+
+	public ConsulLeaderElectorBuilder usingAdaptivePolling(final boolean flag) {
+		this.adaptivePolling = flag;
+		return this;
+	}
+
+	/**
+	 * @param flag have {@link #build()} return right away, and create the session in the background
+	 */
+	public ConsulLeaderElectorBuilder usingAsynchronousBootstrap(final boolean flag) {
+		this.asynchronousBootstrap = flag;
+		return this;
+	}
+
+	public ConsulLeaderElectorBuilder usingSharedSessionRenewal(final boolean flag) {
+		this.sharedSessionRenewal = flag;
+		return this;
+	}
+
+	/**
+	 * @param flag trust confirmed leadership for half the session TTL, rather than reading the leader key on every poll
+	 */
+	public ConsulLeaderElectorBuilder usingLeaderLease(final boolean flag) {
+		this.leaderLease = flag;
+		return this;
+	}
+
+	public ConsulLeaderElectorBuilder usingBlockingQueries(final int maxWaitInSeconds) {
+		this.blockingQueryWaitInSeconds = maxWaitInSeconds;
+		return this;
+	}
+
+	/**
+	 * Run the election on a virtual thread of its own (Java 21+), blocking on Consul, instead of on a scheduled
+	 * executor. If virtual threads are unavailable, the executor given with {@link #usingExecutor} is used instead, or
+	 * a single-threaded one of the elector's own if none is given.
+	 */
+	public ConsulLeaderElectorBuilder usingVirtualThreads(final boolean flag) {
+		this.virtualThreads = flag;
+		return this;
+	}
+
 	public ConsulLeaderElectorBuilder usingExecutor(final ScheduledExecutorService executor) {
 		this.executor = executor;
 		return this;
@@ -104,6 +436,11 @@ public class ConsulLeaderElectorBuilder {
 		return this;
 	}
 
+	public ConsulLeaderElectorBuilder usingSessionStateFile(final Path file) {
+		this.sessionStateFile = file;
+		return this;
+	}
+
 	public ConsulLeaderElectorBuilder usingServiceName(final String serviceName) {
 		this.serviceName = serviceName;
 		return this;
@@ -0,0 +1,67 @@
+package jhberges.camel.consul.leader;
+
+import java.util.Objects;
+
+import org.apache.camel.Consumer;
+import org.apache.camel.Processor;
+import org.apache.camel.Producer;
+import org.apache.camel.impl.DefaultEndpoint;
+
+/**
+ * <code>consul-leader:serviceName:delegateUri</code>: consumes from the delegate endpoint only while this node leads
+ * <code>serviceName</code>. Produced to, it forwards exchanges to the address published by the leader.
+ * <p>
+ * Exchanges are forwarded one by one, not batched. To forward in batches, aggregate in front of the endpoint:
+ *
+ * <pre>
+ * from("file:inbox")
+ *     .aggregate(constant(true), new GroupedExchangeAggregationStrategy()).completionSize(100).completionTimeout(1000)
+ *     .to("consul-leader:my-service");
+ * </pre>
+ */
+public class ConsulLeaderEndpoint extends DefaultEndpoint {
+	private final String serviceName;
+	private final String delegateUri;
+
+	ConsulLeaderEndpoint(final String endpointUri, final ConsulLeaderComponent component, final String serviceName,
+			final String delegateUri) {
+		super(endpointUri, component);
+		this.serviceName = serviceName;
+		this.delegateUri = delegateUri;
+	}
+
+	@Override
+	public ConsulLeaderComponent getComponent() {
+		return (ConsulLeaderComponent) super.getComponent();
+	}
+
+	public String getServiceName() {
+		return serviceName;
+	}
+
+	/**
+	 * @return URI of the endpoint consumed from while leading, with the options not taken by this component
+	 */
+	public String getDelegateUri() {
+		return delegateUri;
+	}
+
+	@Override
+	public Consumer createConsumer(final Processor processor) throws Exception {
+		if (Objects.isNull(delegateUri)) {
+			throw new IllegalArgumentException("No endpoint to consume from in " + getEndpointUri()
+					+ " -- expected consul-leader:" + serviceName + ":<delegateUri>");
+		}
+		return new ConsulLeaderConsumer(this, processor, getCamelContext().getEndpoint(delegateUri));
+	}
+
+	@Override
+	public Producer createProducer() throws Exception {
+		return new ConsulLeaderProducer(this);
+	}
+
+	@Override
+	public boolean isSingleton() {
+		return true;
+	}
+}
@@ -0,0 +1,57 @@
+package jhberges.camel.consul.leader;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultProducer;
+import org.apache.camel.impl.ProducerCache;
+import org.apache.camel.util.ServiceHelper;
+
+/**
+ * Forwards exchanges to the address published by the leader of a service. The address is the one found by the
+ * component's latest poll (or watch) of the leader key, so forwarding adds no request to Consul. Producers to the
+ * leaders' addresses are kept in a {@link ProducerCache}, which hands each exchange a producer of its own (or one
+ * shared safely), so a change of leader never stops a producer still sending an exchange to the previous one.
+ * <p>
+ * Each exchange is forwarded on its own; batching is left to an aggregator in front of the endpoint (see
+ * {@link ConsulLeaderEndpoint}).
+ */
+class ConsulLeaderProducer extends DefaultProducer {
+	private volatile String address;
+	private ProducerCache forwarders;
+
+	ConsulLeaderProducer(final ConsulLeaderEndpoint endpoint) {
+		super(endpoint);
+	}
+
+	@Override
+	public ConsulLeaderEndpoint getEndpoint() {
+		return (ConsulLeaderEndpoint) super.getEndpoint();
+	}
+
+	@Override
+	protected void doStart() throws Exception {
+		super.doStart();
+		forwarders = new ProducerCache(this, getEndpoint().getCamelContext());
+		ServiceHelper.startService(forwarders);
+		getEndpoint().getComponent().observe(getEndpoint().getServiceName(), this);
+	}
+
+	@Override
+	protected void doStop() throws Exception {
+		getEndpoint().getComponent().unobserve(getEndpoint().getServiceName(), this);
+		ServiceHelper.stopService(forwarders);
+		address = null;
+		super.doStop();
+	}
+
+	@Override
+	public void process(final Exchange exchange) throws Exception {
+		final String serviceName = getEndpoint().getServiceName();
+		final String leaderAddress = getEndpoint().getComponent().getLeaderAddress(serviceName)
+				.orElseThrow(() -> new IllegalStateException("No known leader of serviceName=" + serviceName + " to forward to"));
+		if (!leaderAddress.equals(address)) {
+			log.info("Forwarding to leader of serviceName={} at {}", serviceName, leaderAddress);
+			address = leaderAddress;
+		}
+		forwarders.send(getEndpoint().getCamelContext().getEndpoint(leaderAddress), exchange);
+	}
+}
@@ -0,0 +1,99 @@
+package jhberges.camel.consul.leader;
+
+import java.util.Objects;
+
+import org.apache.camel.Route;
+import org.apache.camel.support.RoutePolicySupport;
+
+/**
+ * Starts the consumer of the route it is added to when this node is elected leader of a service, and stops it when
+ * revoked (or, unless in island mode, when leadership is unknown). The route starts as usual, but does not consume
+ * until elected.
+ * <p>
+ * The election is run by the context's <code>consul-leader</code> component, which is looked up (and created with
+ * defaults if need be) unless given, so that all routes share its session.
+ */
+public class ConsulLeaderRoutePolicy extends RoutePolicySupport implements LeadershipListener {
+	private final String serviceName;
+	private ConsulLeaderComponent component;
+	private volatile Route route;
+
+	public ConsulLeaderRoutePolicy(final String serviceName) {
+		this(serviceName, null);
+	}
+
+	ConsulLeaderRoutePolicy(final String serviceName, final ConsulLeaderComponent component) {
+		this.serviceName = Objects.requireNonNull(serviceName);
+		this.component = component;
+	}
+
+	public String getServiceName() {
+		return serviceName;
+	}
+
+	@Override
+	public void onInit(final Route route) {
+		super.onInit(route);
+		this.route = route;
+		if (Objects.isNull(component)) {
+			component = route.getRouteContext().getCamelContext().getComponent("consul-leader", ConsulLeaderComponent.class);
+		}
+	}
+
+	@Override
+	public void onStart(final Route route) {
+		super.onStart(route);
+		if (component.getLeadershipState(serviceName) != LeadershipState.LEADER) {
+			stop(route);
+		}
+		component.join(serviceName, this);
+	}
+
+	@Override
+	public void onStop(final Route route) {
+		component.leave(serviceName, this);
+		super.onStop(route);
+	}
+
+	@Override
+	public void onElected(final String serviceName) {
+		Objects.requireNonNull(route);
+		start(route);
+	}
+
+	@Override
+	public void onRevoked(final String serviceName) {
+		Objects.requireNonNull(route);
+		stop(route);
+	}
+
+	@Override
+	public void onUnknown(final String serviceName) {
+		Objects.requireNonNull(route);
+		if (component.isAllowIslandMode()) {
+			start(route);
+		} else {
+			stop(route);
+		}
+	}
+
+	private void start(final Route route) {
+		try {
+			if (startConsumer(route.getConsumer())) {
+				log.info("Started consumer of route={}, leading serviceName={}", route.getId(), serviceName);
+			}
+		} catch (final Exception e) {
+			handleException(e);
+		}
+	}
+
+	private void stop(final Route route) {
+		try {
+			if (stopConsumer(route.getConsumer())) {
+				log.info("Stopped consumer of route={}, not leading serviceName={}", route.getId(), serviceName);
+			}
+		} catch (final Exception e) {
+			handleException(e);
+		}
+	}
+}
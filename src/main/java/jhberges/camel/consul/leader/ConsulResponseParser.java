@@ -0,0 +1,275 @@
+package jhberges.camel.consul.leader;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Token-scanning readers for the few Consul responses the elector cares about.
+ * <p>
+ * Only the wanted fields are materialized, and everything else is skipped. The base64 <code>Value</code> of a key is
+ * kept as is, for the caller to decode only when it changes.
+ */
+final class ConsulResponseParser {
+	private static final JsonFactory jsonFactory = new JsonFactory();
+
+	static final String LEADER_KEY_PREFIX = "service/";
+	static final String LEADER_KEY_SUFFIX = "/leader";
+
+	private ConsulResponseParser() {
+	}
+
+	/**
+	 * State of a single KV entry, as found in <code>GET /v1/kv/&lt;key&gt;</code> or a transaction result.
+	 */
+	static final class KeyState {
+		private final Optional<String> session;
+		private final long lockIndex;
+		private final long modifyIndex;
+		private final Optional<String> value;
+
+		KeyState(final Optional<String> session, final long lockIndex, final long modifyIndex) {
+			this(session, lockIndex, modifyIndex, Optional.empty());
+		}
+
+		KeyState(final Optional<String> session, final long lockIndex, final long modifyIndex, final Optional<String> value) {
+			this.session = session;
+			this.lockIndex = lockIndex;
+			this.modifyIndex = modifyIndex;
+			this.value = value;
+		}
+
+		Optional<String> getSession() {
+			return session;
+		}
+
+		long getLockIndex() {
+			return lockIndex;
+		}
+
+		long getModifyIndex() {
+			return modifyIndex;
+		}
+
+		/**
+		 * @return the <code>Value</code> of the key, still base64 encoded
+		 */
+		Optional<String> getValue() {
+			return value;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("KeyState[session=%s, lockIndex=%d, modifyIndex=%d]", session.orElse(null), lockIndex, modifyIndex);
+		}
+	}
+
+	/**
+	 * @return the first entry of a <code>GET /v1/kv/&lt;key&gt;</code> response
+	 */
+	static Optional<KeyState> keyState(final byte[] json) throws IOException {
+		try (final JsonParser parser = jsonFactory.createParser(json)) {
+			if (parser.nextToken() != JsonToken.START_ARRAY || parser.nextToken() != JsonToken.START_OBJECT) {
+				return Optional.empty();
+			}
+			return Optional.of(readKeyState(parser));
+		}
+	}
+
+	/**
+	 * @return state of each <code>service/&lt;name&gt;/leader</code> key, by name, from a recursive KV read
+	 */
+	static Map<String, KeyState> leaderKeyStates(final byte[] json) throws IOException {
+		final Map<String, KeyState> states = new HashMap<>();
+		try (final JsonParser parser = jsonFactory.createParser(json)) {
+			if (parser.nextToken() != JsonToken.START_ARRAY) {
+				return states;
+			}
+			while (parser.nextToken() == JsonToken.START_OBJECT) {
+				String key = null;
+				String session = null;
+				long lockIndex = 0;
+				long modifyIndex = 0;
+				String encodedValue = null;
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					final String field = parser.getCurrentName();
+					final JsonToken value = parser.nextToken();
+					if ("Key".equals(field) && value == JsonToken.VALUE_STRING) {
+						key = parser.getText();
+					} else if ("Session".equals(field) && value == JsonToken.VALUE_STRING) {
+						session = parser.getText();
+					} else if ("LockIndex".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+						lockIndex = parser.getLongValue();
+					} else if ("ModifyIndex".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+						modifyIndex = parser.getLongValue();
+					} else if ("Value".equals(field) && value == JsonToken.VALUE_STRING) {
+						encodedValue = parser.getText();
+					} else {
+						parser.skipChildren();
+					}
+				}
+				if (key != null && key.startsWith(LEADER_KEY_PREFIX) && key.endsWith(LEADER_KEY_SUFFIX)) {
+					states.put(key.substring(LEADER_KEY_PREFIX.length(), key.length() - LEADER_KEY_SUFFIX.length()),
+							new KeyState(Optional.ofNullable(session), lockIndex, modifyIndex, Optional.ofNullable(encodedValue)));
+				}
+			}
+		}
+		return states;
+	}
+
+	/**
+	 * @return the number of sessions called <code>name</code> in a <code>GET /v1/session/list</code> response
+	 */
+	static int countSessionsNamed(final byte[] json, final String name) throws IOException {
+		int count = 0;
+		try (final JsonParser parser = jsonFactory.createParser(json)) {
+			if (parser.nextToken() != JsonToken.START_ARRAY) {
+				return count;
+			}
+			while (parser.nextToken() == JsonToken.START_OBJECT) {
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					final String field = parser.getCurrentName();
+					final JsonToken value = parser.nextToken();
+					if ("Name".equals(field) && value == JsonToken.VALUE_STRING && name.equals(parser.getText())) {
+						count++;
+					} else {
+						parser.skipChildren();
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the <code>ID</code> of a <code>PUT /v1/session/create</code> response
+	 */
+	static Optional<String> sessionId(final byte[] json) throws IOException {
+		try (final JsonParser parser = jsonFactory.createParser(json)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return Optional.empty();
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				final String field = parser.getCurrentName();
+				final JsonToken value = parser.nextToken();
+				if ("ID".equals(field) && value == JsonToken.VALUE_STRING) {
+					return Optional.of(parser.getText());
+				}
+				parser.skipChildren();
+			}
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * @return the KV state of the last result of a <code>PUT /v1/txn</code> response
+	 */
+	static Optional<KeyState> lastTransactionKeyState(final byte[] json) throws IOException {
+		Optional<KeyState> last = Optional.empty();
+		try (final JsonParser parser = jsonFactory.createParser(json)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return last;
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				final String field = parser.getCurrentName();
+				if (parser.nextToken() == JsonToken.START_ARRAY && "Results".equals(field)) {
+					while (parser.nextToken() == JsonToken.START_OBJECT) {
+						while (parser.nextToken() == JsonToken.FIELD_NAME) {
+							final String resultField = parser.getCurrentName();
+							if (parser.nextToken() == JsonToken.START_OBJECT && "KV".equals(resultField)) {
+								last = Optional.of(readKeyState(parser));
+							} else {
+								parser.skipChildren();
+							}
+						}
+					}
+				} else {
+					parser.skipChildren();
+				}
+			}
+		}
+		return last;
+	}
+
+	private static KeyState readKeyState(final JsonParser parser) throws IOException {
+		String session = null;
+		long lockIndex = 0;
+		long modifyIndex = 0;
+		String encodedValue = null;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			final String field = parser.getCurrentName();
+			final JsonToken value = parser.nextToken();
+			if ("Session".equals(field) && value == JsonToken.VALUE_STRING) {
+				session = parser.getText();
+			} else if ("LockIndex".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+				lockIndex = parser.getLongValue();
+			} else if ("ModifyIndex".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+				modifyIndex = parser.getLongValue();
+			} else if ("Value".equals(field) && value == JsonToken.VALUE_STRING) {
+				encodedValue = parser.getText();
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return new KeyState(Optional.ofNullable(session), lockIndex, modifyIndex, Optional.ofNullable(encodedValue));
+	}
+
+	static String sessionBody(final String name, final int ttlInSeconds, final int lockDelayInSeconds) {
+		final StringWriter writer = new StringWriter(96);
+		try (final JsonGenerator generator = jsonFactory.createGenerator(writer)) {
+			generator.writeStartObject();
+			generator.writeStringField("Name", name);
+			generator.writeStringField("TTL", ttlInSeconds + "s");
+			generator.writeStringField("LockDelay", lockDelayInSeconds + "s");
+			generator.writeEndObject();
+		} catch (final IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * @param verifyOnly if set, only verify that the session holds the lock, rather than (re-)locking
+	 */
+	static String transactionBody(final String key, final String sessionKey, final boolean verifyOnly) {
+		return transactionBody(key, sessionKey, verifyOnly, Optional.empty());
+	}
+
+	/**
+	 * @param value to set (base64 encoded) along with the lock; not used when only verifying
+	 */
+	static String transactionBody(final String key, final String sessionKey, final boolean verifyOnly,
+			final Optional<String> value) {
+		final StringWriter writer = new StringWriter(192);
+		try (final JsonGenerator generator = jsonFactory.createGenerator(writer)) {
+			generator.writeStartArray();
+			generator.writeStartObject();
+			generator.writeObjectFieldStart("KV");
+			generator.writeStringField("Verb", verifyOnly ? "check-session" : "lock");
+			generator.writeStringField("Key", key);
+			generator.writeStringField("Session", sessionKey);
+			if (!verifyOnly && value.isPresent()) {
+				generator.writeStringField("Value", value.get());
+			}
+			generator.writeEndObject();
+			generator.writeEndObject();
+			generator.writeStartObject();
+			generator.writeObjectFieldStart("KV");
+			generator.writeStringField("Verb", "get");
+			generator.writeStringField("Key", key);
+			generator.writeEndObject();
+			generator.writeEndObject();
+			generator.writeEndArray();
+		} catch (final IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return writer.toString();
+	}
+}
@@ -0,0 +1,30 @@
+package jhberges.camel.consul.leader;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.ProducerTemplate;
+
+/**
+ * Starts and stops routes by sending a Simple expression to <code>controlbus:language:simple</code>. Stopping blocks
+ * the polling thread for the duration of the graceful shutdown.
+ */
+public class ControlBusRouteControl implements RouteControlStrategy {
+	private final ProducerTemplate producerTemplate;
+
+	public ControlBusRouteControl(final ProducerTemplate producerTemplate) {
+		this.producerTemplate = producerTemplate;
+	}
+
+	@Override
+	public void startRoute(final CamelContext camelContext, final String routeId) {
+		producerTemplate.sendBody(
+				ConsulLeaderElector.CONTROLBUS_ROUTE,
+				String.format("${camelContext.startRoute(\"%s\")}", routeId));
+	}
+
+	@Override
+	public void stopRoute(final CamelContext camelContext, final String routeId) {
+		producerTemplate.sendBody(
+				ConsulLeaderElector.CONTROLBUS_ROUTE,
+				String.format("${camelContext.stopRoute(\"%s\")}", routeId));
+	}
+}
@@ -0,0 +1,102 @@
+package jhberges.camel.consul.leader;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.ServiceStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Starts and stops routes by calling the {@link CamelContext} directly, without building an exchange or parsing an
+ * expression.
+ * <p>
+ * Optionally suspends and resumes routes instead (faster to hand over, as the consumer and its endpoint are kept;
+ * routes whose consumer cannot be suspended are stopped by Camel), and performs the graceful stop or suspension on a
+ * separate executor so that polling is not held up by in-flight exchanges.
+ */
+public class DirectRouteControl implements RouteControlStrategy {
+	private static final Logger logger = LoggerFactory.getLogger(DirectRouteControl.class);
+
+	private boolean suspend = false;
+	private long stopTimeout = 0;
+	private TimeUnit stopTimeoutUnit = TimeUnit.SECONDS;
+	private Optional<Executor> stopExecutor = Optional.empty();
+	private final Set<String> stopping = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param flag suspend and resume routes rather than stopping and starting them
+	 */
+	public DirectRouteControl suspendingInsteadOfStopping(final boolean flag) {
+		this.suspend = flag;
+		return this;
+	}
+
+	/**
+	 * @param timeout graceful shutdown timeout, after which in-flight exchanges are forced to stop. Camel's shutdown
+	 *            strategy timeout is used if not set.
+	 */
+	public DirectRouteControl withStopTimeout(final long timeout, final TimeUnit unit) {
+		this.stopTimeout = timeout;
+		this.stopTimeoutUnit = unit;
+		return this;
+	}
+
+	public DirectRouteControl stoppingAsynchronously(final Executor executor) {
+		this.stopExecutor = Optional.of(executor);
+		return this;
+	}
+
+	@Override
+	public void startRoute(final CamelContext camelContext, final String routeId) throws Exception {
+		if (stopping.contains(routeId)) {
+			logger.debug("Route={} is still stopping -- start deferred to next poll", routeId);
+			return;
+		}
+		if (camelContext.getRouteStatus(routeId) == ServiceStatus.Suspended) {
+			camelContext.resumeRoute(routeId);
+		} else {
+			camelContext.startRoute(routeId);
+		}
+	}
+
+	@Override
+	public void stopRoute(final CamelContext camelContext, final String routeId) throws Exception {
+		if (!stopExecutor.isPresent()) {
+			stopNow(camelContext, routeId);
+			return;
+		}
+		if (!stopping.add(routeId)) {
+			return;
+		}
+		try {
+			stopExecutor.get().execute(() -> {
+				try {
+					stopNow(camelContext, routeId);
+				} catch (final Exception e) {
+					logger.error("Exception while stopping route={}", routeId, e);
+				} finally {
+					stopping.remove(routeId);
+				}
+			});
+		} catch (final RejectedExecutionException e) {
+			stopping.remove(routeId);
+			throw e;
+		}
+	}
+
+	private void stopNow(final CamelContext camelContext, final String routeId) throws Exception {
+		final long timeout = stopTimeout > 0 ? stopTimeout : camelContext.getShutdownStrategy().getTimeout();
+		final TimeUnit unit = stopTimeout > 0 ? stopTimeoutUnit : camelContext.getShutdownStrategy().getTimeUnit();
+		if (suspend) {
+			camelContext.suspendRoute(routeId, timeout, unit);
+		} else {
+			camelContext.stopRoute(routeId, timeout, unit);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package jhberges.camel.consul.leader;
+
+import java.util.Optional;
+
+/**
+ * Instrumentation hooks for the election. All methods default to no-ops, so implementations only override what they
+ * publish. Calls are made from the polling thread (or the transport's completion thread in asynchronous mode) and
+ * must not block.
+ */
+public interface ElectionMetrics {
+	ElectionMetrics NONE = new ElectionMetrics() {
+	};
+
+	enum Operation {
+		RENEW, CHECK, ACQUIRE, TRANSACTION
+	}
+
+	/**
+	 * @param name service name, or session name for requests covering all services of a session
+	 * @param succeeded whether Consul answered as expected, regardless of whether leadership was obtained
+	 */
+	default void requestCompleted(final String name, final Operation operation, final long durationInNanos,
+			final boolean succeeded) {
+	}
+
+	/**
+	 * @param result as returned from <code>pollConsul</code>; empty if Consul could not be asked
+	 */
+	default void pollCompleted(final String serviceName, final Optional<Boolean> result) {
+	}
+
+	default void leadershipAcquired(final String serviceName) {
+	}
+
+	default void leadershipLost(final String serviceName) {
+	}
+
+	/**
+	 * Not reported when using Consul transactions, as a rolled back lock does not tell whether the key had a holder.
+	 *
+	 * @param durationInMillis from when this node first found the leader key without a holder until it acquired it
+	 */
+	default void failoverCompleted(final String serviceName, final long durationInMillis) {
+	}
+
+	default void sessionRecreated(final String sessionName) {
+	}
+
+	/**
+	 * @param sessionKey ID of the session just created (or reused) for <code>sessionName</code>
+	 */
+	default void sessionCreated(final String sessionName, final String sessionKey) {
+	}
+
+	default void routeStateChanged(final String serviceName, final String routeId, final boolean running) {
+	}
+
+	/**
+	 * Called once, when the elector of <code>sessionName</code> starts using <code>pool</code>. Its utilisation (see
+	 * {@link PooledConsulHttpClient#getTotalStats()}) changes with every request, so publish it as gauges read on
+	 * demand.
+	 */
+	default void connectionPoolUsed(final String sessionName, final PooledConsulHttpClient pool) {
+	}
+
+	/**
+	 * @return metrics reporting to this, and then to <code>other</code>
+	 */
+	default ElectionMetrics andThen(final ElectionMetrics other) {
+		final ElectionMetrics first = this;
+		if (first == NONE) {
+			return other;
+		} else if (other == NONE) {
+			return first;
+		}
+		return new ElectionMetrics() {
+			@Override
+			public void requestCompleted(final String name, final Operation operation, final long durationInNanos,
+					final boolean succeeded) {
+				first.requestCompleted(name, operation, durationInNanos, succeeded);
+				other.requestCompleted(name, operation, durationInNanos, succeeded);
+			}
+
+			@Override
+			public void pollCompleted(final String serviceName, final Optional<Boolean> result) {
+				first.pollCompleted(serviceName, result);
+				other.pollCompleted(serviceName, result);
+			}
+
+			@Override
+			public void leadershipAcquired(final String serviceName) {
+				first.leadershipAcquired(serviceName);
+				other.leadershipAcquired(serviceName);
+			}
+
+			@Override
+			public void leadershipLost(final String serviceName) {
+				first.leadershipLost(serviceName);
+				other.leadershipLost(serviceName);
+			}
+
+			@Override
+			public void failoverCompleted(final String serviceName, final long durationInMillis) {
+				first.failoverCompleted(serviceName, durationInMillis);
+				other.failoverCompleted(serviceName, durationInMillis);
+			}
+
+			@Override
+			public void sessionRecreated(final String sessionName) {
+				first.sessionRecreated(sessionName);
+				other.sessionRecreated(sessionName);
+			}
+
+			@Override
+			public void sessionCreated(final String sessionName, final String sessionKey) {
+				first.sessionCreated(sessionName, sessionKey);
+				other.sessionCreated(sessionName, sessionKey);
+			}
+
+			@Override
+			public void routeStateChanged(final String serviceName, final String routeId, final boolean running) {
+				first.routeStateChanged(serviceName, routeId, running);
+				other.routeStateChanged(serviceName, routeId, running);
+			}
+
+			@Override
+			public void connectionPoolUsed(final String sessionName, final PooledConsulHttpClient pool) {
+				first.connectionPoolUsed(sessionName, pool);
+				other.connectionPoolUsed(sessionName, pool);
+			}
+		};
+	}
+}
@@ -0,0 +1,31 @@
+package jhberges.camel.consul.leader;
+
+public interface ElectionStatisticsMXBean {
+	RequestStatistics getRenew();
+
+	RequestStatistics getCheck();
+
+	RequestStatistics getAcquire();
+
+	RequestStatistics getTransaction();
+
+	long getLeaderPolls();
+
+	long getFollowerPolls();
+
+	long getUnknownPolls();
+
+	long getLeadershipAcquired();
+
+	long getLeadershipLost();
+
+	long getLastFailoverMillis();
+
+	long getMaxFailoverMillis();
+
+	long getSessionRecreations();
+
+	boolean isLeader();
+
+	boolean isRouteRunning();
+}
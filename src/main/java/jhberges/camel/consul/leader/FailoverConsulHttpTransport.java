@@ -0,0 +1,202 @@
+package jhberges.camel.consul.leader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads requests over several Consul agents of the same cluster.
+ * <p>
+ * Requests are built by the facade against the primary URL, and are sent to the available agent with the lowest
+ * (exponentially weighted) response time instead. If an agent cannot be reached, or answers 502/503/504, the same
+ * request is retried on the next available agent right away, and the failing agent's circuit is opened: it is skipped
+ * for a while, for twice as long on every consecutive failure.
+ */
+public class FailoverConsulHttpTransport implements ConsulHttpTransport {
+	private static final Logger logger = LoggerFactory.getLogger(FailoverConsulHttpTransport.class);
+	public static final long DEFAULT_OPEN_CIRCUIT_IN_MILLIS = 5000;
+	public static final long DEFAULT_MAX_OPEN_CIRCUIT_IN_MILLIS = 60000;
+	private static final double LATENCY_WEIGHT = 0.3;
+	private static final int MAX_BACKOFF_EXPONENT = 16;
+
+	static final class Endpoint {
+		private final String url;
+		private double latencyInNanos = 0;
+		private int consecutiveFailures = 0;
+		private boolean open = false;
+		private long closedAt = 0;
+
+		private Endpoint(final String url) {
+			this.url = url;
+		}
+
+		private synchronized boolean isAvailable(final long now) {
+			return !open || now - closedAt >= 0;
+		}
+
+		private synchronized void succeeded(final long latencyInNanos, final boolean sample) {
+			consecutiveFailures = 0;
+			open = false;
+			if (sample) {
+				this.latencyInNanos = this.latencyInNanos == 0
+						? latencyInNanos
+						: LATENCY_WEIGHT * latencyInNanos + (1 - LATENCY_WEIGHT) * this.latencyInNanos;
+			}
+		}
+
+		private synchronized long failed(final long now, final long openCircuitInNanos, final long maxOpenCircuitInNanos) {
+			final long openFor = Math.min(maxOpenCircuitInNanos,
+					openCircuitInNanos << Math.min(consecutiveFailures++, MAX_BACKOFF_EXPONENT));
+			open = true;
+			closedAt = now + openFor;
+			return openFor;
+		}
+
+		synchronized double getLatencyInNanos() {
+			return latencyInNanos;
+		}
+
+		private synchronized long closesIn(final long now) {
+			return open ? closedAt - now : 0;
+		}
+
+		String getUrl() {
+			return url;
+		}
+	}
+
+	private final String primaryUrl;
+	private final List<Endpoint> endpoints;
+	private final ConsulHttpTransport delegate;
+	private final long openCircuitInNanos;
+	private final long maxOpenCircuitInNanos;
+	private final LongSupplier nanoClock;
+
+	/**
+	 * @param primaryUrl the URL the facade is configured with; also the first endpoint
+	 * @param otherUrls further agents to fail over to
+	 * @param delegate transport able to reach all of them
+	 */
+	public FailoverConsulHttpTransport(final String primaryUrl, final List<String> otherUrls, final ConsulHttpTransport delegate) {
+		this(primaryUrl, otherUrls, delegate, DEFAULT_OPEN_CIRCUIT_IN_MILLIS, DEFAULT_MAX_OPEN_CIRCUIT_IN_MILLIS, System::nanoTime);
+	}
+
+	FailoverConsulHttpTransport(final String primaryUrl, final List<String> otherUrls, final ConsulHttpTransport delegate,
+			final long openCircuitInMillis, final long maxOpenCircuitInMillis, final LongSupplier nanoClock) {
+		this.primaryUrl = primaryUrl;
+		final List<Endpoint> _endpoints = new ArrayList<>();
+		_endpoints.add(new Endpoint(primaryUrl));
+		otherUrls.stream()
+				.filter(url -> !primaryUrl.equals(url))
+				.distinct()
+				.forEach(url -> _endpoints.add(new Endpoint(url)));
+		this.endpoints = Collections.unmodifiableList(_endpoints);
+		this.delegate = delegate;
+		this.openCircuitInNanos = TimeUnit.MILLISECONDS.toNanos(openCircuitInMillis);
+		this.maxOpenCircuitInNanos = TimeUnit.MILLISECONDS.toNanos(maxOpenCircuitInMillis);
+		this.nanoClock = nanoClock;
+	}
+
+	List<Endpoint> getEndpoints() {
+		return endpoints;
+	}
+
+	@Override
+	public void close() throws IOException {
+		delegate.close();
+	}
+
+	@Override
+	public CompletableFuture<ConsulHttpResponse> execute(final ConsulHttpRequest request) {
+		if (!request.getUri().startsWith(primaryUrl)) {
+			return delegate.execute(request);
+		}
+		return attempt(request, new HashSet<>());
+	}
+
+	private CompletableFuture<ConsulHttpResponse> attempt(final ConsulHttpRequest request, final Set<Endpoint> tried) {
+		final Endpoint endpoint = select(tried);
+		tried.add(endpoint);
+		final long started = nanoClock.getAsLong();
+		CompletableFuture<ConsulHttpResponse> response;
+		try {
+			response = delegate.execute(request.withUri(endpoint.url + request.getUri().substring(primaryUrl.length())));
+		} catch (final RuntimeException e) {
+			response = new CompletableFuture<>();
+			response.completeExceptionally(e);
+		}
+		return response
+				.handle((result, throwable) -> {
+					final long now = nanoClock.getAsLong();
+					if (Objects.isNull(throwable) && !isUnavailable(result.getStatusCode())) {
+						// Blocking queries take as long as they wait, which says nothing about the agent
+						endpoint.succeeded(now - started, request.getSocketTimeoutInMillis() == 0);
+						return CompletableFuture.completedFuture(result);
+					}
+					final long openFor = endpoint.failed(now, openCircuitInNanos, maxOpenCircuitInNanos);
+					logger.warn("Consul agent {} failed ({}) -- skipping it for {}ms", endpoint.url,
+							Objects.isNull(throwable) ? result.getStatusLine() : unwrap(throwable).getMessage(),
+							TimeUnit.NANOSECONDS.toMillis(openFor));
+					if (hasAvailable(tried, now)) {
+						return attempt(request, tried);
+					}
+					if (Objects.nonNull(throwable)) {
+						final CompletableFuture<ConsulHttpResponse> failed = new CompletableFuture<>();
+						failed.completeExceptionally(unwrap(throwable));
+						return failed;
+					}
+					return CompletableFuture.completedFuture(result);
+				})
+				.thenCompose(Function.identity());
+	}
+
+	/**
+	 * @return the fastest available endpoint not yet tried, or if there is none (on a first attempt), the one whose
+	 *         circuit closes first
+	 */
+	private Endpoint select(final Set<Endpoint> tried) {
+		final long now = nanoClock.getAsLong();
+		Endpoint best = null;
+		for (final Endpoint endpoint : endpoints) {
+			if (!tried.contains(endpoint) && endpoint.isAvailable(now)
+					&& (Objects.isNull(best) || endpoint.getLatencyInNanos() < best.getLatencyInNanos())) {
+				best = endpoint;
+			}
+		}
+		if (Objects.nonNull(best)) {
+			return best;
+		}
+		for (final Endpoint endpoint : endpoints) {
+			if (Objects.isNull(best) || endpoint.closesIn(now) < best.closesIn(now)) {
+				best = endpoint;
+			}
+		}
+		return best;
+	}
+
+	private boolean hasAvailable(final Set<Endpoint> tried, final long now) {
+		return endpoints.stream().anyMatch(endpoint -> !tried.contains(endpoint) && endpoint.isAvailable(now));
+	}
+
+	private static boolean isUnavailable(final int statusCode) {
+		return statusCode == 502 || statusCode == 503 || statusCode == 504;
+	}
+
+	private static Throwable unwrap(final Throwable throwable) {
+		return throwable instanceof CompletionException && Objects.nonNull(throwable.getCause())
+				? throwable.getCause()
+				: throwable;
+	}
+}
@@ -0,0 +1,28 @@
+package jhberges.camel.consul.leader;
+
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Route;
+import org.apache.camel.support.RoutePolicySupport;
+
+/**
+ * Stamps each exchange entering the route with the current fencing token of a service, in the
+ * {@link #FENCING_TOKEN_HEADER} header. A downstream system that remembers the highest token it has seen can then
+ * reject writes from a leader that has since been replaced, without asking Consul.
+ */
+public class FencingTokenRoutePolicy extends RoutePolicySupport {
+	public static final String FENCING_TOKEN_HEADER = "ConsulLeaderFencingToken";
+
+	private final Supplier<Optional<Long>> fencingToken;
+
+	public FencingTokenRoutePolicy(final Supplier<Optional<Long>> fencingToken) {
+		this.fencingToken = fencingToken;
+	}
+
+	@Override
+	public void onExchangeBegin(final Route route, final Exchange exchange) {
+		fencingToken.get().ifPresent(token -> exchange.getIn().setHeader(FENCING_TOKEN_HEADER, token));
+	}
+}
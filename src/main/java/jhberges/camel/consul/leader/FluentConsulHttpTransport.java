@@ -0,0 +1,121 @@
+package jhberges.camel.consul.leader;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.fluent.Executor;
+import org.apache.http.client.fluent.Request;
+import org.apache.http.entity.ContentType;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ConsulHttpTransport} on top of the (blocking) fluent HttpClient API.
+ * <p>
+ * Requests are executed on the given I/O executor, keeping the caller free. Without one, they are executed on an I/O
+ * executor shared by all transports in this JVM. An executor running them on the calling thread
+ * (<code>Runnable::run</code>) makes the transport block, against the contract of {@link ConsulHttpTransport}, so it
+ * only suits callers waiting for the response anyway.
+ */
+public class FluentConsulHttpTransport implements ConsulHttpTransport {
+	private static final Logger logger = LoggerFactory.getLogger(FluentConsulHttpTransport.class);
+	// A blocking query holds its thread for up to half the session TTL, so threads are not limited
+	static final java.util.concurrent.Executor DEFAULT_IO_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+		final Thread thread = new Thread(runnable, "consul-leader-io");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Executor executor;
+	private final java.util.concurrent.Executor ioExecutor;
+	private final Optional<PooledConsulHttpClient> connectionPool;
+	private final boolean ownsConnectionPool;
+
+	public FluentConsulHttpTransport(final Executor executor) {
+		this(executor, DEFAULT_IO_EXECUTOR);
+	}
+
+	public FluentConsulHttpTransport(final Executor executor, final java.util.concurrent.Executor ioExecutor) {
+		this(executor, ioExecutor, Optional.empty(), false);
+	}
+
+	/**
+	 * @param executor executor on the given pool
+	 * @param ownsConnectionPool whether the pool is to be closed along with this transport
+	 */
+	public FluentConsulHttpTransport(final Executor executor, final java.util.concurrent.Executor ioExecutor,
+			final Optional<PooledConsulHttpClient> connectionPool, final boolean ownsConnectionPool) {
+		this.executor = executor;
+		this.ioExecutor = ioExecutor;
+		this.connectionPool = connectionPool;
+		this.ownsConnectionPool = ownsConnectionPool;
+	}
+
+	public Optional<PoolStats> getConnectionPoolStats() {
+		return connectionPool.map(PooledConsulHttpClient::getTotalStats);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (ownsConnectionPool && connectionPool.isPresent()) {
+			connectionPool.get().close();
+		}
+	}
+
+	@Override
+	public CompletableFuture<ConsulHttpResponse> execute(final ConsulHttpRequest request) {
+		final CompletableFuture<ConsulHttpResponse> future = new CompletableFuture<>();
+		try {
+			ioExecutor.execute(() -> {
+				try {
+					future.complete(send(request));
+				} catch (final IOException | RuntimeException e) {
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (final RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	private ConsulHttpResponse send(final ConsulHttpRequest request) throws IOException {
+		logger.debug("{}", request);
+		final Request httpRequest = ConsulHttpRequest.GET.equals(request.getMethod())
+				? Request.Get(request.getUri())
+				: Request.Put(request.getUri());
+		request.getBody().ifPresent(body -> httpRequest.bodyString(body, ContentType.APPLICATION_JSON));
+		if (request.getSocketTimeoutInMillis() > 0) {
+			httpRequest.socketTimeout(request.getSocketTimeoutInMillis());
+		}
+		// returnResponse() buffers and consumes the entity, so the connection always goes back to the pool
+		final HttpResponse response = executor.execute(httpRequest).returnResponse();
+		final HttpEntity entity = response.getEntity();
+		return new ConsulHttpResponse(
+				response.getStatusLine().getStatusCode(),
+				response.getStatusLine().toString(),
+				unpackConsulIndex(response),
+				Objects.nonNull(entity) ? EntityUtils.toByteArray(entity) : new byte[0]);
+	}
+
+	private static Optional<Long> unpackConsulIndex(final HttpResponse response) {
+		final Header header = response.getFirstHeader(ConsulFacadeBean.CONSUL_INDEX_HEADER);
+		if (Objects.nonNull(header)) {
+			try {
+				return Optional.of(Long.valueOf(header.getValue()));
+			} catch (final NumberFormatException e) {
+				logger.warn("Unparseable {}: {}", ConsulFacadeBean.CONSUL_INDEX_HEADER, header.getValue());
+			}
+		}
+		return Optional.empty();
+	}
+}
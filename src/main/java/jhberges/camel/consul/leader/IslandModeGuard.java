@@ -0,0 +1,106 @@
+package jhberges.camel.consul.leader;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides whether a node leads while Consul cannot tell it, i.e. whether it runs its route as an island.
+ * <p>
+ * Without thresholds every node becomes an island on the first failed poll, so a blip of the local agent starts the
+ * route on all nodes at once. With them, a node keeps its last known state -- the leader keeps running, followers stay
+ * stopped -- until enough consecutive polls, over a long enough time, have failed. Past that, a follower starts only
+ * if the {@link PeerCheck} (if any) finds the last known leader dead, and stays stopped if the check cannot tell; and
+ * with <code>keepLastKnownLeader</code>, the last known leader keeps running throughout, while followers only start on
+ * the word of the peer check.
+ */
+class IslandModeGuard {
+	private static final Logger logger = LoggerFactory.getLogger(IslandModeGuard.class);
+
+	private static final class Outage {
+		private final long since;
+		private final int polls;
+
+		private Outage(final long since, final int polls) {
+			this.since = since;
+			this.polls = polls;
+		}
+	}
+
+	private final boolean allowIslandMode;
+	private final int unknownPolls;
+	private final long unknownForInNanos;
+	private final boolean keepLastKnownLeader;
+	private final Optional<PeerCheck> peerCheck;
+	private final Map<String, Boolean> lastKnown = new ConcurrentHashMap<>();
+	private final Map<String, Outage> outages = new ConcurrentHashMap<>();
+
+	/**
+	 * A guard becoming an island on the first failed poll if <code>allowIslandMode</code>, and never otherwise.
+	 */
+	IslandModeGuard(final boolean allowIslandMode) {
+		this(allowIslandMode, 1, 0, false, Optional.empty());
+	}
+
+	/**
+	 * @param unknownPolls consecutive failed polls before becoming an island
+	 * @param unknownForInMillis time since the first of these before becoming an island
+	 * @param keepLastKnownLeader keep leading if this node was the leader when Consul was last reached, even without
+	 *        island mode; and otherwise only become an island if the peer check finds the leader dead
+	 */
+	IslandModeGuard(final boolean allowIslandMode, final int unknownPolls, final long unknownForInMillis,
+			final boolean keepLastKnownLeader, final Optional<PeerCheck> peerCheck) {
+		this.allowIslandMode = allowIslandMode;
+		this.unknownPolls = unknownPolls;
+		this.unknownForInNanos = TimeUnit.MILLISECONDS.toNanos(unknownForInMillis);
+		this.keepLastKnownLeader = keepLastKnownLeader;
+		this.peerCheck = Objects.requireNonNull(peerCheck);
+	}
+
+	/**
+	 * @param isLeader result of polling Consul, empty if it could not be asked
+	 * @param leaderAddress address of the last known leader, for the peer check
+	 * @param now {@link System#nanoTime()}
+	 * @return whether to lead <code>serviceName</code>
+	 */
+	boolean leads(final String serviceName, final Optional<Boolean> isLeader, final Supplier<Optional<String>> leaderAddress,
+			final long now) {
+		if (isLeader.isPresent()) {
+			lastKnown.put(serviceName, isLeader.get());
+			outages.remove(serviceName);
+			return isLeader.get();
+		}
+		final Outage outage = outages.compute(serviceName,
+				(key, previous) -> Objects.isNull(previous) ? new Outage(now, 1) : new Outage(previous.since, previous.polls + 1));
+		final boolean ledLast = Boolean.TRUE.equals(lastKnown.get(serviceName));
+		if (keepLastKnownLeader && ledLast) {
+			return true;
+		} else if (!allowIslandMode) {
+			return false;
+		} else if (outage.polls < unknownPolls || now - outage.since < unknownForInNanos) {
+			logger.debug("Leadership of serviceName={} unknown for {} polls -- keeping last known leader={}",
+					serviceName, outage.polls, ledLast);
+			return ledLast;
+		} else if (ledLast) {
+			return true;
+		} else if (peerCheck.isPresent()) {
+			final Optional<Boolean> leaderAlive = peerCheck.get().isLeaderAlive(serviceName, leaderAddress.get());
+			if (!leaderAlive.isPresent()) {
+				logger.debug("Leadership of serviceName={} unknown for {} polls, and leader cannot be checked -- keeping last known leader={}",
+						serviceName, outage.polls, ledLast);
+				return ledLast;
+			} else if (!leaderAlive.get()) {
+				logger.warn("Leadership of serviceName={} unknown for {} polls, and leader not answering -- running as an island",
+						serviceName, outage.polls);
+			}
+			return !leaderAlive.get();
+		}
+		return !keepLastKnownLeader;
+	}
+}
@@ -0,0 +1,289 @@
+package jhberges.camel.consul.leader;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes one {@link ElectionStatisticsMXBean} per service (and per session, for the renewals of a session shared by
+ * several services) as <code>jhberges.camel.consul.leader:type=Election,name=&lt;name&gt;</code>, and one
+ * {@link ConnectionPoolStatisticsMXBean} per connection pool as
+ * <code>jhberges.camel.consul.leader:type=ConnectionPool,name=&lt;session name&gt;</code>.
+ */
+public class JmxElectionMetrics implements ElectionMetrics, Closeable {
+	public static final String DOMAIN = "jhberges.camel.consul.leader";
+	private static final Logger logger = LoggerFactory.getLogger(JmxElectionMetrics.class);
+
+	private final MBeanServer mBeanServer;
+	private final Map<String, ElectionStatistics> statistics = new ConcurrentHashMap<>();
+	private final Map<String, ObjectName> connectionPools = new ConcurrentHashMap<>();
+
+	public JmxElectionMetrics() {
+		this(ManagementFactory.getPlatformMBeanServer());
+	}
+
+	public JmxElectionMetrics(final MBeanServer mBeanServer) {
+		this.mBeanServer = mBeanServer;
+	}
+
+	static ObjectName objectName(final String name) throws JMException {
+		return new ObjectName(DOMAIN + ":type=Election,name=" + ObjectName.quote(name));
+	}
+
+	static ObjectName connectionPoolObjectName(final String name) throws JMException {
+		return new ObjectName(DOMAIN + ":type=ConnectionPool,name=" + ObjectName.quote(name));
+	}
+
+	ElectionStatistics statistics(final String name) {
+		return statistics.computeIfAbsent(name, key -> {
+			final ElectionStatistics mBean = new ElectionStatistics();
+			try {
+				mBeanServer.registerMBean(mBean, objectName(key));
+			} catch (final InstanceAlreadyExistsException e) {
+				logger.warn("Election statistics for name={} already registered -- not publishing these", key);
+			} catch (final JMException e) {
+				logger.warn("Unable to register election statistics for name={}: {}", key, e.getMessage());
+			}
+			return mBean;
+		});
+	}
+
+	@Override
+	public void requestCompleted(final String name, final Operation operation, final long durationInNanos, final boolean succeeded) {
+		statistics(name).requests.get(operation).record(durationInNanos, succeeded);
+	}
+
+	@Override
+	public void pollCompleted(final String serviceName, final Optional<Boolean> result) {
+		final ElectionStatistics mBean = statistics(serviceName);
+		if (!result.isPresent()) {
+			mBean.unknownPolls.increment();
+		} else if (result.get()) {
+			mBean.leaderPolls.increment();
+		} else {
+			mBean.followerPolls.increment();
+		}
+	}
+
+	@Override
+	public void leadershipAcquired(final String serviceName) {
+		final ElectionStatistics mBean = statistics(serviceName);
+		mBean.leadershipAcquired.increment();
+		mBean.leader = true;
+	}
+
+	@Override
+	public void leadershipLost(final String serviceName) {
+		final ElectionStatistics mBean = statistics(serviceName);
+		mBean.leadershipLost.increment();
+		mBean.leader = false;
+	}
+
+	@Override
+	public void failoverCompleted(final String serviceName, final long durationInMillis) {
+		final ElectionStatistics mBean = statistics(serviceName);
+		mBean.lastFailoverMillis = durationInMillis;
+		mBean.maxFailoverMillis.accumulateAndGet(durationInMillis, Math::max);
+	}
+
+	@Override
+	public void sessionRecreated(final String sessionName) {
+		statistics(sessionName).sessionRecreations.increment();
+	}
+
+	@Override
+	public void routeStateChanged(final String serviceName, final String routeId, final boolean running) {
+		statistics(serviceName).routeRunning = running;
+	}
+
+	@Override
+	public void connectionPoolUsed(final String sessionName, final PooledConsulHttpClient pool) {
+		connectionPools.computeIfAbsent(sessionName, key -> {
+			try {
+				final ObjectName name = connectionPoolObjectName(key);
+				mBeanServer.registerMBean(new ConnectionPoolStatistics(pool), name);
+				return name;
+			} catch (final InstanceAlreadyExistsException e) {
+				logger.warn("Connection pool statistics for name={} already registered -- not publishing these", key);
+			} catch (final JMException e) {
+				logger.warn("Unable to register connection pool statistics for name={}: {}", key, e.getMessage());
+			}
+			return null;
+		});
+	}
+
+	@Override
+	public void close() {
+		statistics.keySet().forEach(name -> {
+			try {
+				mBeanServer.unregisterMBean(objectName(name));
+			} catch (final JMException e) {
+				logger.debug("Unable to unregister election statistics for name={}: {}", name, e.getMessage());
+			}
+		});
+		statistics.clear();
+		connectionPools.values().forEach(name -> {
+			try {
+				mBeanServer.unregisterMBean(name);
+			} catch (final JMException e) {
+				logger.debug("Unable to unregister connection pool statistics {}: {}", name, e.getMessage());
+			}
+		});
+		connectionPools.clear();
+	}
+
+	static final class ConnectionPoolStatistics implements ConnectionPoolStatisticsMXBean {
+		private final PooledConsulHttpClient pool;
+
+		ConnectionPoolStatistics(final PooledConsulHttpClient pool) {
+			this.pool = pool;
+		}
+
+		@Override
+		public int getLeased() {
+			return pool.getTotalStats().getLeased();
+		}
+
+		@Override
+		public int getAvailable() {
+			return pool.getTotalStats().getAvailable();
+		}
+
+		@Override
+		public int getPending() {
+			return pool.getTotalStats().getPending();
+		}
+
+		@Override
+		public int getMax() {
+			return pool.getTotalStats().getMax();
+		}
+	}
+
+	static final class RequestRecorder {
+		private final LongAdder count = new LongAdder();
+		private final LongAdder failures = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		void record(final long durationInNanos, final boolean succeeded) {
+			count.increment();
+			if (!succeeded) {
+				failures.increment();
+			}
+			totalNanos.add(durationInNanos);
+			maxNanos.accumulateAndGet(durationInNanos, Math::max);
+		}
+
+		RequestStatistics snapshot() {
+			final long _count = count.sum();
+			return new RequestStatistics(_count, failures.sum(),
+					_count == 0 ? 0 : totalNanos.sum() / (double) _count / TimeUnit.MILLISECONDS.toNanos(1),
+					maxNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1));
+		}
+	}
+
+	static final class ElectionStatistics implements ElectionStatisticsMXBean {
+		private final Map<Operation, RequestRecorder> requests = new EnumMap<>(Operation.class);
+		private final LongAdder leaderPolls = new LongAdder();
+		private final LongAdder followerPolls = new LongAdder();
+		private final LongAdder unknownPolls = new LongAdder();
+		private final LongAdder leadershipAcquired = new LongAdder();
+		private final LongAdder leadershipLost = new LongAdder();
+		private final AtomicLong maxFailoverMillis = new AtomicLong();
+		private final LongAdder sessionRecreations = new LongAdder();
+		private volatile long lastFailoverMillis;
+		private volatile boolean leader;
+		private volatile boolean routeRunning;
+
+		ElectionStatistics() {
+			for (final Operation operation : Operation.values()) {
+				requests.put(operation, new RequestRecorder());
+			}
+		}
+
+		@Override
+		public RequestStatistics getRenew() {
+			return requests.get(Operation.RENEW).snapshot();
+		}
+
+		@Override
+		public RequestStatistics getCheck() {
+			return requests.get(Operation.CHECK).snapshot();
+		}
+
+		@Override
+		public RequestStatistics getAcquire() {
+			return requests.get(Operation.ACQUIRE).snapshot();
+		}
+
+		@Override
+		public RequestStatistics getTransaction() {
+			return requests.get(Operation.TRANSACTION).snapshot();
+		}
+
+		@Override
+		public long getLeaderPolls() {
+			return leaderPolls.sum();
+		}
+
+		@Override
+		public long getFollowerPolls() {
+			return followerPolls.sum();
+		}
+
+		@Override
+		public long getUnknownPolls() {
+			return unknownPolls.sum();
+		}
+
+		@Override
+		public long getLeadershipAcquired() {
+			return leadershipAcquired.sum();
+		}
+
+		@Override
+		public long getLeadershipLost() {
+			return leadershipLost.sum();
+		}
+
+		@Override
+		public long getLastFailoverMillis() {
+			return lastFailoverMillis;
+		}
+
+		@Override
+		public long getMaxFailoverMillis() {
+			return maxFailoverMillis.get();
+		}
+
+		@Override
+		public long getSessionRecreations() {
+			return sessionRecreations.sum();
+		}
+
+		@Override
+		public boolean isLeader() {
+			return leader;
+		}
+
+		@Override
+		public boolean isRouteRunning() {
+			return routeRunning;
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package jhberges.camel.consul.leader;
+
+/**
+ * Notified when the leadership state of a service changes, and only then. Callbacks are made on the elector's listener
+ * executor, never on the polling thread, in the order the changes were observed (provided the executor is
+ * single-threaded, as is the default).
+ */
+public interface LeadershipListener {
+	default void onElected(final String serviceName) {
+	}
+
+	/**
+	 * This node is not (or no longer) the leader, as confirmed by Consul.
+	 */
+	default void onRevoked(final String serviceName) {
+	}
+
+	/**
+	 * Leadership could not be determined, or the elector stopped. Whether the route keeps running in this state
+	 * depends on island mode.
+	 */
+	default void onUnknown(final String serviceName) {
+	}
+}
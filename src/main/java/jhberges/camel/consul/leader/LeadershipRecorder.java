@@ -0,0 +1,441 @@
+package jhberges.camel.consul.leader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the time series of one elector -- poll outcomes, request round-trip times, leadership and route transitions,
+ * each stamped with the wall clock and the session ID -- into a fixed-size ring of binary records outside the heap.
+ * Recording allocates nothing once the names of services and sessions are known, and the oldest records are overwritten
+ * when the ring is full. {@link LeadershipRecordingAnalyzer} reads the recordings of several nodes afterwards.
+ * <p>
+ * {@link #mappedFile(Path, int)} records into a memory-mapped file, which keeps the recording of a node that crashed
+ * and is resumed when the node restarts; {@link #inMemory(int)} records into memory to be {@link #dump(Path)}ed on
+ * demand. Either way the format is the same, and a recording is self-contained: the names are stored with it.
+ * <p>
+ * Plug it in with {@link ConsulLeaderElectorBuilder#recordingTo(LeadershipRecorder)}. It follows the one session of one
+ * facade, so each elector needs a recorder of its own.
+ */
+public class LeadershipRecorder implements ElectionMetrics, Closeable {
+	public enum Type {
+		/** Outcome of a poll: leader, follower or unknown */
+		POLL,
+		/** Request to Consul, with its round-trip time */
+		REQUEST,
+		ACQUIRED,
+		LOST,
+		/** Leadership acquired, with the time since the leader key was found vacant */
+		FAILOVER,
+		SESSION_CREATED,
+		SESSION_RECREATED,
+		/** Route started or stopped */
+		ROUTE
+	}
+
+	public static final byte UNKNOWN = -1;
+	public static final byte NO = 0;
+	public static final byte YES = 1;
+
+	private static final Logger logger = LoggerFactory.getLogger(LeadershipRecorder.class);
+	private static final int MAGIC = 0x434c5231; // "CLR1"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 64;
+	private static final int NAME_SLOTS = 256;
+	private static final int NAME_SLOT_SIZE = 64;
+	private static final int NAMES_OFFSET = HEADER_SIZE;
+	private static final int RECORDS_OFFSET = NAMES_OFFSET + NAME_SLOTS * NAME_SLOT_SIZE;
+	private static final int RECORD_SIZE = 48;
+	private static final short NO_NAME = -1;
+
+	// Header
+	private static final int MAGIC_AT = 0;
+	private static final int VERSION_AT = 4;
+	private static final int CAPACITY_AT = 8;
+	private static final int NAME_COUNT_AT = 12;
+	private static final int WRITE_INDEX_AT = 16;
+
+	// Record
+	private static final int TIME_AT = 0;
+	private static final int SESSION_MSB_AT = 8;
+	private static final int SESSION_LSB_AT = 16;
+	private static final int DURATION_AT = 24;
+	private static final int SEQUENCE_AT = 32;
+	private static final int NAME_AT = 36;
+	private static final int TYPE_AT = 38;
+	private static final int DETAIL_AT = 39;
+	private static final int OUTCOME_AT = 40;
+
+	/**
+	 * Records into a ring of <code>capacity</code> records in memory.
+	 */
+	public static LeadershipRecorder inMemory(final int capacity) {
+		return new LeadershipRecorder(ByteBuffer.allocateDirect(size(capacity)), capacity, Optional.empty());
+	}
+
+	/**
+	 * Records into a ring of <code>capacity</code> records mapped to <code>path</code>, resuming the recording found
+	 * there if it has the same capacity.
+	 */
+	public static LeadershipRecorder mappedFile(final Path path, final int capacity) throws IOException {
+		try (final FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			final boolean resumable = channel.size() == size(capacity);
+			final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size(capacity));
+			if (resumable && buffer.getInt(MAGIC_AT) == MAGIC && buffer.getInt(VERSION_AT) == VERSION
+					&& buffer.getInt(CAPACITY_AT) == capacity) {
+				logger.info("Resuming leadership recording in {} at record {}", path, buffer.getLong(WRITE_INDEX_AT));
+				return new LeadershipRecorder(buffer, capacity, Optional.of(buffer));
+			}
+			for (int i = 0; i < HEADER_SIZE + NAME_SLOTS * NAME_SLOT_SIZE; i++) {
+				buffer.put(i, (byte) 0);
+			}
+			return new LeadershipRecorder(buffer, capacity, Optional.of(buffer));
+		}
+	}
+
+	private static int size(final int capacity) {
+		if (capacity <= 0 || capacity > (Integer.MAX_VALUE - RECORDS_OFFSET) / RECORD_SIZE) {
+			throw new IllegalArgumentException("Unsupported capacity=" + capacity);
+		}
+		return RECORDS_OFFSET + capacity * RECORD_SIZE;
+	}
+
+	private final ByteBuffer buffer;
+	private final Optional<MappedByteBuffer> mapped;
+	private final int capacity;
+	private final AtomicLong writeIndex;
+	private final Map<String, Short> names = new ConcurrentHashMap<>();
+	private volatile long sessionMsb;
+	private volatile long sessionLsb;
+
+	private LeadershipRecorder(final ByteBuffer buffer, final int capacity, final Optional<MappedByteBuffer> mapped) {
+		this.buffer = buffer;
+		this.capacity = capacity;
+		this.mapped = mapped;
+		final int nameCount = buffer.getInt(NAME_COUNT_AT);
+		for (short i = 0; i < nameCount; i++) {
+			names.put(readName(buffer, i), i);
+		}
+		this.writeIndex = new AtomicLong(buffer.getLong(WRITE_INDEX_AT));
+		buffer.putInt(MAGIC_AT, MAGIC);
+		buffer.putInt(VERSION_AT, VERSION);
+		buffer.putInt(CAPACITY_AT, capacity);
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return number of records written since the recording started, including those since overwritten
+	 */
+	public long getRecordCount() {
+		return writeIndex.get();
+	}
+
+	@Override
+	public void requestCompleted(final String name, final Operation operation, final long durationInNanos, final boolean succeeded) {
+		record(Type.REQUEST, name, (byte) operation.ordinal(), succeeded ? YES : NO, durationInNanos);
+	}
+
+	@Override
+	public void pollCompleted(final String serviceName, final Optional<Boolean> result) {
+		record(Type.POLL, serviceName, (byte) 0, result.map(leader -> leader ? YES : NO).orElse(UNKNOWN), 0);
+	}
+
+	@Override
+	public void leadershipAcquired(final String serviceName) {
+		record(Type.ACQUIRED, serviceName, (byte) 0, YES, 0);
+	}
+
+	@Override
+	public void leadershipLost(final String serviceName) {
+		record(Type.LOST, serviceName, (byte) 0, NO, 0);
+	}
+
+	@Override
+	public void failoverCompleted(final String serviceName, final long durationInMillis) {
+		record(Type.FAILOVER, serviceName, (byte) 0, YES, durationInMillis * 1_000_000);
+	}
+
+	@Override
+	public void sessionCreated(final String sessionName, final String sessionKey) {
+		try {
+			final UUID session = UUID.fromString(sessionKey);
+			sessionMsb = session.getMostSignificantBits();
+			sessionLsb = session.getLeastSignificantBits();
+		} catch (final IllegalArgumentException e) {
+			sessionMsb = 0;
+			sessionLsb = 0;
+		}
+		record(Type.SESSION_CREATED, sessionName, (byte) 0, YES, 0);
+	}
+
+	@Override
+	public void sessionRecreated(final String sessionName) {
+		record(Type.SESSION_RECREATED, sessionName, (byte) 0, YES, 0);
+	}
+
+	@Override
+	public void routeStateChanged(final String serviceName, final String routeId, final boolean running) {
+		record(Type.ROUTE, serviceName, (byte) 0, running ? YES : NO, nameIndex(routeId));
+	}
+
+	private void record(final Type type, final String name, final byte detail, final byte outcome, final long duration) {
+		final short nameIndex = nameIndex(name);
+		final long index = writeIndex.getAndIncrement();
+		final int at = RECORDS_OFFSET + (int) (index % capacity) * RECORD_SIZE;
+		// Invalidate the slot while it is rewritten, so that a torn record is skipped rather than misread
+		buffer.putInt(at + SEQUENCE_AT, 0);
+		buffer.putLong(at + TIME_AT, System.currentTimeMillis());
+		buffer.putLong(at + SESSION_MSB_AT, sessionMsb);
+		buffer.putLong(at + SESSION_LSB_AT, sessionLsb);
+		buffer.putLong(at + DURATION_AT, duration);
+		buffer.putShort(at + NAME_AT, nameIndex);
+		buffer.put(at + TYPE_AT, (byte) type.ordinal());
+		buffer.put(at + DETAIL_AT, detail);
+		buffer.put(at + OUTCOME_AT, outcome);
+		buffer.putInt(at + SEQUENCE_AT, sequence(index));
+		synchronized (buffer) {
+			if (buffer.getLong(WRITE_INDEX_AT) <= index) {
+				buffer.putLong(WRITE_INDEX_AT, index + 1);
+			}
+		}
+	}
+
+	private static int sequence(final long index) {
+		// Never 0, which marks a slot being written
+		return (int) (index % Integer.MAX_VALUE) + 1;
+	}
+
+	private short nameIndex(final String name) {
+		if (Objects.isNull(name)) {
+			return NO_NAME;
+		}
+		final Short index = names.get(name);
+		if (Objects.nonNull(index)) {
+			return index;
+		}
+		synchronized (names) {
+			return names.computeIfAbsent(name, key -> {
+				final int count = buffer.getInt(NAME_COUNT_AT);
+				if (count >= NAME_SLOTS) {
+					return NO_NAME;
+				}
+				final byte[] bytes = truncate(key.getBytes(StandardCharsets.UTF_8));
+				final int at = NAMES_OFFSET + count * NAME_SLOT_SIZE;
+				buffer.put(at, (byte) bytes.length);
+				for (int i = 0; i < bytes.length; i++) {
+					buffer.put(at + 1 + i, bytes[i]);
+				}
+				buffer.putInt(NAME_COUNT_AT, count + 1);
+				return (short) count;
+			});
+		}
+	}
+
+	private static byte[] truncate(final byte[] bytes) {
+		if (bytes.length < NAME_SLOT_SIZE) {
+			return bytes;
+		}
+		final byte[] truncated = new byte[NAME_SLOT_SIZE - 1];
+		System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+		return truncated;
+	}
+
+	private static String readName(final ByteBuffer buffer, final int index) {
+		final int at = NAMES_OFFSET + index * NAME_SLOT_SIZE;
+		final byte[] bytes = new byte[buffer.get(at) & 0xff];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(at + 1 + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes a copy of the recording to <code>path</code>, to be read by {@link #read(Path)}.
+	 */
+	public void dump(final Path path) throws IOException {
+		final ByteBuffer copy = buffer.duplicate();
+		copy.clear();
+		try (final FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (copy.hasRemaining()) {
+				channel.write(copy);
+			}
+		}
+	}
+
+	/**
+	 * @return the records still in the ring, oldest first
+	 */
+	public List<Record> records() {
+		return records(buffer);
+	}
+
+	/**
+	 * @return the records of a recording {@link #dump(Path)}ed or {@link #mappedFile(Path, int)} to <code>path</code>,
+	 *         oldest first
+	 */
+	public static List<Record> read(final Path path) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+		if (buffer.limit() < RECORDS_OFFSET || buffer.getInt(MAGIC_AT) != MAGIC) {
+			throw new IOException("Not a leadership recording: " + path);
+		} else if (buffer.getInt(VERSION_AT) != VERSION) {
+			throw new IOException("Unsupported version=" + buffer.getInt(VERSION_AT) + " of leadership recording: " + path);
+		} else if (buffer.limit() != size(buffer.getInt(CAPACITY_AT))) {
+			throw new IOException("Truncated leadership recording: " + path);
+		}
+		return records(buffer);
+	}
+
+	private static List<Record> records(final ByteBuffer buffer) {
+		final int capacity = buffer.getInt(CAPACITY_AT);
+		final int nameCount = Math.min(buffer.getInt(NAME_COUNT_AT), NAME_SLOTS);
+		final String[] names = new String[nameCount];
+		for (int i = 0; i < nameCount; i++) {
+			names[i] = readName(buffer, i);
+		}
+		final long end = buffer.getLong(WRITE_INDEX_AT);
+		final List<Record> records = new ArrayList<>((int) Math.min(end, capacity));
+		for (long index = Math.max(0, end - capacity); index < end; index++) {
+			final int at = RECORDS_OFFSET + (int) (index % capacity) * RECORD_SIZE;
+			final int typeOrdinal = buffer.get(at + TYPE_AT);
+			final int detail = buffer.get(at + DETAIL_AT);
+			if (buffer.getInt(at + SEQUENCE_AT) != sequence(index)
+					|| typeOrdinal < 0 || typeOrdinal >= Type.values().length
+					|| detail < 0 || detail >= Operation.values().length) {
+				continue;
+			}
+			final Type type = Type.values()[typeOrdinal];
+			final long duration = buffer.getLong(at + DURATION_AT);
+			records.add(new Record(
+					buffer.getLong(at + TIME_AT),
+					new UUID(buffer.getLong(at + SESSION_MSB_AT), buffer.getLong(at + SESSION_LSB_AT)),
+					name(names, buffer.getShort(at + NAME_AT)),
+					type,
+					type == Type.REQUEST ? Optional.of(Operation.values()[detail]) : Optional.empty(),
+					buffer.get(at + OUTCOME_AT),
+					type == Type.ROUTE ? 0 : duration,
+					type == Type.ROUTE ? Optional.of(name(names, (int) duration)) : Optional.empty()));
+		}
+		return Collections.unmodifiableList(records);
+	}
+
+	private static String name(final String[] names, final int index) {
+		return index >= 0 && index < names.length ? names[index] : "?";
+	}
+
+	/**
+	 * Flushes a mapped recording to its file. The mapping itself is released when the recorder is garbage collected.
+	 */
+	@Override
+	public void close() {
+		mapped.ifPresent(MappedByteBuffer::force);
+	}
+
+	public static final class Record {
+		private static final UUID NO_SESSION = new UUID(0, 0);
+
+		private final long timeInMillis;
+		private final UUID session;
+		private final String name;
+		private final Type type;
+		private final Optional<Operation> operation;
+		private final byte outcome;
+		private final long durationInNanos;
+		private final Optional<String> routeId;
+
+		Record(final long timeInMillis, final UUID session, final String name, final Type type,
+				final Optional<Operation> operation, final byte outcome, final long durationInNanos,
+				final Optional<String> routeId) {
+			this.timeInMillis = timeInMillis;
+			this.session = session;
+			this.name = name;
+			this.type = type;
+			this.operation = operation;
+			this.outcome = outcome;
+			this.durationInNanos = durationInNanos;
+			this.routeId = routeId;
+		}
+
+		/**
+		 * @return wall clock time of the record
+		 */
+		public long getTimeInMillis() {
+			return timeInMillis;
+		}
+
+		/**
+		 * @return the session at the time of the record, if one had been created
+		 */
+		public Optional<String> getSession() {
+			return NO_SESSION.equals(session) ? Optional.empty() : Optional.of(session.toString());
+		}
+
+		/**
+		 * @return the service (or, for requests and sessions, the name they were made for)
+		 */
+		public String getName() {
+			return name;
+		}
+
+		public Type getType() {
+			return type;
+		}
+
+		/**
+		 * @return the operation of a {@link Type#REQUEST}
+		 */
+		public Optional<Operation> getOperation() {
+			return operation;
+		}
+
+		/**
+		 * @return {@link #YES}, {@link #NO} or {@link #UNKNOWN}: leader, succeeded or running, depending on the type
+		 */
+		public byte getOutcome() {
+			return outcome;
+		}
+
+		/**
+		 * @return round-trip time of a {@link Type#REQUEST}, or failover time of a {@link Type#FAILOVER}
+		 */
+		public long getDurationInNanos() {
+			return durationInNanos;
+		}
+
+		/**
+		 * @return the route of a {@link Type#ROUTE}
+		 */
+		public Optional<String> getRouteId() {
+			return routeId;
+		}
+
+		@Override
+		public String toString() {
+			return "Record [timeInMillis=" + timeInMillis + ", session=" + session + ", name=" + name + ", type=" + type
+					+ ", operation=" + operation + ", outcome=" + outcome + ", durationInNanos=" + durationInNanos
+					+ ", routeId=" + routeId + "]";
+		}
+	}
+}
@@ -0,0 +1,229 @@
+package jhberges.camel.consul.leader;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalLong;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import jhberges.camel.consul.leader.ElectionMetrics.Operation;
+import jhberges.camel.consul.leader.LeadershipRecorder.Record;
+import jhberges.camel.consul.leader.LeadershipRecorder.Type;
+
+/**
+ * Merges the {@link LeadershipRecorder} recordings of several nodes and reports, per service, when each node led, the
+ * failover gaps without any leader, and the windows in which more than one node believed it led; and, per operation, a
+ * histogram of request round-trip times.
+ * <p>
+ * A node is taken to lead from the first poll (or acquisition) finding it leader until it loses leadership or a poll
+ * finds it a follower, or the end of its recording. Polls which could not reach Consul do not end leadership: in island
+ * mode, or when keeping the last known leader, the node goes on running its route -- and partitions are exactly when
+ * two nodes lead at once. The recordings are merged by wall clock, so windows shorter than the clock skew between the
+ * nodes are not significant.
+ *
+ * <pre>
+ * java -cp camel-consul-leader.jar jhberges.camel.consul.leader.LeadershipRecordingAnalyzer node-a.rec node-b.rec
+ * </pre>
+ */
+public class LeadershipRecordingAnalyzer {
+	/**
+	 * Upper bounds, in microseconds, of the latency histogram buckets: 1, 2, 4, ... The last bucket is unbounded.
+	 */
+	static final int BUCKETS = 32;
+
+	public static final class Interval {
+		private final String node;
+		private final long startInMillis;
+		private final long endInMillis;
+
+		Interval(final String node, final long startInMillis, final long endInMillis) {
+			this.node = node;
+			this.startInMillis = startInMillis;
+			this.endInMillis = endInMillis;
+		}
+
+		/**
+		 * @return the node leading, or -- for gaps and dual-leader windows -- the nodes before and after, or both leading
+		 */
+		public String getNode() {
+			return node;
+		}
+
+		public long getStartInMillis() {
+			return startInMillis;
+		}
+
+		public long getEndInMillis() {
+			return endInMillis;
+		}
+
+		public long getDurationInMillis() {
+			return endInMillis - startInMillis;
+		}
+
+		@Override
+		public String toString() {
+			return node + " " + startInMillis + ".." + endInMillis + " (" + getDurationInMillis() + " ms)";
+		}
+	}
+
+	private final Map<String, List<Record>> recordings;
+
+	/**
+	 * @param recordings the records of each node, by node name
+	 */
+	public LeadershipRecordingAnalyzer(final Map<String, List<Record>> recordings) {
+		this.recordings = Objects.requireNonNull(recordings);
+	}
+
+	/**
+	 * @return the services polled in any of the recordings
+	 */
+	public SortedSet<String> getServices() {
+		final SortedSet<String> services = new TreeSet<>();
+		recordings.values().forEach(records -> records.stream()
+				.filter(record -> record.getType() == Type.POLL)
+				.forEach(record -> services.add(record.getName())));
+		return services;
+	}
+
+	/**
+	 * @return the intervals in which each node led <code>serviceName</code>, by start
+	 */
+	public List<Interval> leadingIntervals(final String serviceName) {
+		final List<Interval> intervals = new ArrayList<>();
+		recordings.forEach((node, records) -> {
+			long start = -1;
+			long last = -1;
+			for (final Record record : records) {
+				last = Math.max(last, record.getTimeInMillis());
+				if (!serviceName.equals(record.getName())) {
+					continue;
+				}
+				final boolean leading = record.getType() == Type.ACQUIRED
+						|| record.getType() == Type.POLL && record.getOutcome() == LeadershipRecorder.YES;
+				final boolean notLeading = record.getType() == Type.LOST
+						|| record.getType() == Type.POLL && record.getOutcome() == LeadershipRecorder.NO;
+				if (leading && start < 0) {
+					start = record.getTimeInMillis();
+				} else if (notLeading && start >= 0) {
+					intervals.add(new Interval(node, start, record.getTimeInMillis()));
+					start = -1;
+				}
+			}
+			if (start >= 0) {
+				intervals.add(new Interval(node, start, last));
+			}
+		});
+		intervals.sort(Comparator.comparingLong(Interval::getStartInMillis));
+		return intervals;
+	}
+
+	/**
+	 * @return the intervals between two leaders of <code>serviceName</code> in which no node led
+	 */
+	public List<Interval> failoverGaps(final String serviceName) {
+		final List<Interval> gaps = new ArrayList<>();
+		Interval covering = null;
+		for (final Interval interval : leadingIntervals(serviceName)) {
+			if (Objects.isNull(covering)) {
+				covering = interval;
+			} else if (interval.getStartInMillis() > covering.getEndInMillis()) {
+				gaps.add(new Interval(covering.getNode() + " -> " + interval.getNode(),
+						covering.getEndInMillis(), interval.getStartInMillis()));
+				covering = interval;
+			} else if (interval.getEndInMillis() > covering.getEndInMillis()) {
+				covering = interval;
+			}
+		}
+		return gaps;
+	}
+
+	/**
+	 * @return the intervals in which two nodes both believed they led <code>serviceName</code>
+	 */
+	public List<Interval> dualLeaderWindows(final String serviceName) {
+		final List<Interval> windows = new ArrayList<>();
+		final List<Interval> intervals = leadingIntervals(serviceName);
+		for (int i = 0; i < intervals.size(); i++) {
+			final Interval first = intervals.get(i);
+			for (int j = i + 1; j < intervals.size() && intervals.get(j).getStartInMillis() < first.getEndInMillis(); j++) {
+				final Interval second = intervals.get(j);
+				if (!first.getNode().equals(second.getNode())) {
+					windows.add(new Interval(first.getNode() + " + " + second.getNode(),
+							second.getStartInMillis(), Math.min(first.getEndInMillis(), second.getEndInMillis())));
+				}
+			}
+		}
+		return windows;
+	}
+
+	/**
+	 * @return per operation, the number of requests of all nodes with a round-trip time up to 2^i microseconds in
+	 *         bucket i
+	 */
+	public Map<Operation, long[]> latencyHistograms() {
+		final Map<Operation, long[]> histograms = new EnumMap<>(Operation.class);
+		recordings.values().forEach(records -> records.stream()
+				.filter(record -> record.getType() == Type.REQUEST)
+				.forEach(record -> record.getOperation().ifPresent(operation -> histograms
+						.computeIfAbsent(operation, key -> new long[BUCKETS])[bucket(record.getDurationInNanos())]++)));
+		return histograms;
+	}
+
+	static int bucket(final long durationInNanos) {
+		final long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(durationInNanos) - 1);
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+	}
+
+	public void report(final PrintStream out) {
+		for (final String serviceName : getServices()) {
+			out.println("Service " + serviceName);
+			report(out, "Leading", leadingIntervals(serviceName));
+			report(out, "Failover gaps", failoverGaps(serviceName));
+			report(out, "Dual leaders", dualLeaderWindows(serviceName));
+		}
+		latencyHistograms().forEach((operation, histogram) -> {
+			out.println("Latency of " + operation);
+			for (int i = 0; i < BUCKETS; i++) {
+				if (histogram[i] > 0) {
+					out.println(String.format("  %s %10d", i == BUCKETS - 1 ? "       more" : String.format("<= %6d us", 1L << i),
+							histogram[i]));
+				}
+			}
+		});
+	}
+
+	private static void report(final PrintStream out, final String heading, final List<Interval> intervals) {
+		final OptionalLong longest = intervals.stream().mapToLong(Interval::getDurationInMillis).max();
+		out.println("  " + heading + ": " + intervals.size()
+				+ (longest.isPresent() ? ", longest " + longest.getAsLong() + " ms" : ""));
+		intervals.forEach(interval -> out.println("    " + interval));
+	}
+
+	/**
+	 * Reports on the recordings in the given files, one per node.
+	 */
+	public static void main(final String... files) throws IOException {
+		if (files.length == 0) {
+			System.err.println("Usage: " + LeadershipRecordingAnalyzer.class.getName() + " <recording>...");
+			System.exit(1);
+		}
+		final Map<String, List<Record>> recordings = new LinkedHashMap<>();
+		for (final String file : files) {
+			final Path path = Paths.get(file);
+			recordings.put(path.getFileName().toString(), LeadershipRecorder.read(path));
+		}
+		new LeadershipRecordingAnalyzer(recordings).report(System.out);
+	}
+}
@@ -0,0 +1,16 @@
+package jhberges.camel.consul.leader;
+
+import java.util.Optional;
+
+public enum LeadershipState {
+	/**
+	 * Not yet polled, Consul could not be asked, or the elector has stopped.
+	 */
+	UNKNOWN,
+	LEADER,
+	FOLLOWER;
+
+	static LeadershipState of(final Optional<Boolean> pollResult) {
+		return pollResult.map(isLeader -> isLeader ? LEADER : FOLLOWER).orElse(UNKNOWN);
+	}
+}
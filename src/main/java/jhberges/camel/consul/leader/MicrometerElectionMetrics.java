@@ -0,0 +1,100 @@
+package jhberges.camel.consul.leader;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Publishes the election to a Micrometer {@link MeterRegistry}. Micrometer is an optional dependency, and must be on
+ * the classpath to use this class.
+ * <ul>
+ * <li><code>consul.leader.requests</code> (timer): tags <code>name</code>, <code>operation</code>,
+ * <code>outcome</code></li>
+ * <li><code>consul.leader.polls</code> (counter): tags <code>service</code>, <code>result</code> (leader, follower,
+ * unknown)</li>
+ * <li><code>consul.leader.transitions</code> (counter): tags <code>service</code>, <code>transition</code> (acquired,
+ * lost)</li>
+ * <li><code>consul.leader.failover</code> (timer): tag <code>service</code></li>
+ * <li><code>consul.leader.session.recreations</code> (counter): tag <code>session</code></li>
+ * <li><code>consul.leader.leader</code> and <code>consul.leader.route.running</code> (gauges, 0 or 1): tag
+ * <code>service</code></li>
+ * <li><code>consul.leader.pool.connections</code> (gauge): tags <code>session</code>, <code>state</code> (leased,
+ * available, pending, max)</li>
+ * </ul>
+ */
+public class MicrometerElectionMetrics implements ElectionMetrics {
+	private final MeterRegistry registry;
+	private final Map<String, AtomicInteger> leaders = new ConcurrentHashMap<>();
+	private final Map<String, AtomicInteger> runningRoutes = new ConcurrentHashMap<>();
+
+	public MicrometerElectionMetrics(final MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	private AtomicInteger gauge(final Map<String, AtomicInteger> gauges, final String gaugeName, final String serviceName) {
+		return gauges.computeIfAbsent(serviceName,
+				name -> registry.gauge(gaugeName, Tags.of("service", name), new AtomicInteger()));
+	}
+
+	@Override
+	public void requestCompleted(final String name, final Operation operation, final long durationInNanos, final boolean succeeded) {
+		registry.timer("consul.leader.requests",
+				"name", name,
+				"operation", operation.name().toLowerCase(Locale.ROOT),
+				"outcome", succeeded ? "success" : "failure")
+				.record(durationInNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void pollCompleted(final String serviceName, final Optional<Boolean> result) {
+		registry.counter("consul.leader.polls",
+				"service", serviceName,
+				"result", result.map(isLeader -> isLeader ? "leader" : "follower").orElse("unknown"))
+				.increment();
+	}
+
+	@Override
+	public void leadershipAcquired(final String serviceName) {
+		registry.counter("consul.leader.transitions", "service", serviceName, "transition", "acquired").increment();
+		gauge(leaders, "consul.leader.leader", serviceName).set(1);
+	}
+
+	@Override
+	public void leadershipLost(final String serviceName) {
+		registry.counter("consul.leader.transitions", "service", serviceName, "transition", "lost").increment();
+		gauge(leaders, "consul.leader.leader", serviceName).set(0);
+	}
+
+	@Override
+	public void failoverCompleted(final String serviceName, final long durationInMillis) {
+		registry.timer("consul.leader.failover", "service", serviceName).record(durationInMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void sessionRecreated(final String sessionName) {
+		registry.counter("consul.leader.session.recreations", "session", sessionName).increment();
+	}
+
+	@Override
+	public void routeStateChanged(final String serviceName, final String routeId, final boolean running) {
+		gauge(runningRoutes, "consul.leader.route.running", serviceName).set(running ? 1 : 0);
+	}
+
+	@Override
+	public void connectionPoolUsed(final String sessionName, final PooledConsulHttpClient pool) {
+		registry.gauge("consul.leader.pool.connections", Tags.of("session", sessionName, "state", "leased"), pool,
+				_pool -> _pool.getTotalStats().getLeased());
+		registry.gauge("consul.leader.pool.connections", Tags.of("session", sessionName, "state", "available"), pool,
+				_pool -> _pool.getTotalStats().getAvailable());
+		registry.gauge("consul.leader.pool.connections", Tags.of("session", sessionName, "state", "pending"), pool,
+				_pool -> _pool.getTotalStats().getPending());
+		registry.gauge("consul.leader.pool.connections", Tags.of("session", sessionName, "state", "max"), pool,
+				_pool -> _pool.getTotalStats().getMax());
+	}
+}
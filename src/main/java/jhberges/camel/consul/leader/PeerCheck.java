@@ -0,0 +1,57 @@
+package jhberges.camel.consul.leader;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.Optional;
+
+/**
+ * Asks the last known leader of a service directly, rather than through Consul, whether it is still alive. Consulted
+ * in island mode, before a node which could not ask Consul starts its route: if the leader is alive, it does not.
+ * <p>
+ * Called on the polling thread, so implementations should time out quickly.
+ */
+@FunctionalInterface
+public interface PeerCheck {
+	/**
+	 * @param leaderAddress address published by the last known leader, if any (see
+	 *        {@link ConsulLeaderElectorBuilder#advertisingAddress(String)})
+	 * @return whether the leader of <code>serviceName</code> is still alive, empty if the check cannot tell (e.g. the
+	 *         leader published no address)
+	 */
+	Optional<Boolean> isLeaderAlive(String serviceName, Optional<String> leaderAddress);
+
+	/**
+	 * @return a check connecting to the host and port of the leader's address (e.g. <code>jetty:http://host:8080/in</code>),
+	 *         which finds the leader alive if it accepts the connection within <code>timeoutInMillis</code>, and cannot
+	 *         tell without an address with a host and port
+	 */
+	static PeerCheck connecting(final int timeoutInMillis) {
+		return (serviceName, leaderAddress) -> leaderAddress.flatMap(PeerCheck::socketAddress)
+				.map(address -> {
+					try (final Socket socket = new Socket()) {
+						socket.connect(address, timeoutInMillis);
+						return true;
+					} catch (final IOException e) {
+						return false;
+					}
+				});
+	}
+
+	static Optional<InetSocketAddress> socketAddress(final String address) {
+		final int authority = address.indexOf("://");
+		if (authority < 0) {
+			return Optional.empty();
+		}
+		try {
+			// Camel endpoint URIs may prefix the URL with the component, as in jetty:http://...
+			final URI uri = URI.create(address.substring(address.lastIndexOf(':', authority - 1) + 1));
+			return uri.getHost() != null && uri.getPort() > 0
+					? Optional.of(new InetSocketAddress(uri.getHost(), uri.getPort()))
+					: Optional.empty();
+		} catch (final IllegalArgumentException e) {
+			return Optional.empty();
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package jhberges.camel.consul.leader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.fluent.Executor;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A dedicated, keep-alive connection pool towards Consul, with explicit timeouts. May be shared by several electors.
+ */
+public class PooledConsulHttpClient implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(PooledConsulHttpClient.class);
+
+	public static final int DEFAULT_MAX_TOTAL = 20;
+	public static final int DEFAULT_MAX_PER_ROUTE = 10;
+	public static final int DEFAULT_CONNECT_TIMEOUT_IN_MILLIS = 2000;
+	public static final int DEFAULT_SOCKET_TIMEOUT_IN_MILLIS = 10000;
+	public static final int DEFAULT_KEEP_ALIVE_IN_MILLIS = 30000;
+
+	private final PoolingHttpClientConnectionManager connectionManager;
+	private final CloseableHttpClient httpClient;
+
+	public PooledConsulHttpClient() {
+		this(DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_ROUTE,
+				DEFAULT_CONNECT_TIMEOUT_IN_MILLIS, DEFAULT_SOCKET_TIMEOUT_IN_MILLIS, DEFAULT_KEEP_ALIVE_IN_MILLIS);
+	}
+
+	public PooledConsulHttpClient(final int maxTotal, final int maxPerRoute,
+			final int connectTimeoutInMillis, final int socketTimeoutInMillis, final int keepAliveInMillis) {
+		connectionManager = new PoolingHttpClientConnectionManager(keepAliveInMillis, TimeUnit.MILLISECONDS);
+		connectionManager.setMaxTotal(maxTotal);
+		connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+		// Agents restarting behind a kept-alive connection should cost a retry, not a failed poll
+		connectionManager.setValidateAfterInactivity(Math.min(keepAliveInMillis, 2000));
+		httpClient = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(RequestConfig.custom()
+						.setConnectTimeout(connectTimeoutInMillis)
+						.setConnectionRequestTimeout(connectTimeoutInMillis)
+						.setSocketTimeout(socketTimeoutInMillis)
+						.build())
+				.setKeepAliveStrategy((response, context) -> {
+					final long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+					return keepAlive > 0 ? Math.min(keepAlive, keepAliveInMillis) : keepAliveInMillis;
+				})
+				.evictExpiredConnections()
+				.evictIdleConnections((long) keepAliveInMillis, TimeUnit.MILLISECONDS)
+				.build();
+		logger.debug("Consul connection pool: maxTotal={} maxPerRoute={} connectTimeout={}ms socketTimeout={}ms keepAlive={}ms",
+				maxTotal, maxPerRoute, connectTimeoutInMillis, socketTimeoutInMillis, keepAliveInMillis);
+	}
+
+	/**
+	 * @return a new fluent executor on this pool (executors carry their own credentials)
+	 */
+	public Executor newExecutor() {
+		return Executor.newInstance(httpClient);
+	}
+
+	/**
+	 * @return current utilisation of the pool: leased, pending, available and max connections
+	 */
+	public PoolStats getTotalStats() {
+		return connectionManager.getTotalStats();
+	}
+
+	@Override
+	public void close() throws IOException {
+		httpClient.close();
+	}
+}
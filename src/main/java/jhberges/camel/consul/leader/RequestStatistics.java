@@ -0,0 +1,43 @@
+package jhberges.camel.consul.leader;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Snapshot of the round trips of one kind of Consul request.
+ */
+public final class RequestStatistics {
+	private final long count;
+	private final long failures;
+	private final double meanMillis;
+	private final double maxMillis;
+
+	@ConstructorProperties({ "count", "failures", "meanMillis", "maxMillis" })
+	public RequestStatistics(final long count, final long failures, final double meanMillis, final double maxMillis) {
+		this.count = count;
+		this.failures = failures;
+		this.meanMillis = meanMillis;
+		this.maxMillis = maxMillis;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getFailures() {
+		return failures;
+	}
+
+	public double getMeanMillis() {
+		return meanMillis;
+	}
+
+	public double getMaxMillis() {
+		return maxMillis;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("RequestStatistics[count=%d, failures=%d, meanMillis=%.3f, maxMillis=%.3f]",
+				count, failures, meanMillis, maxMillis);
+	}
+}
@@ -0,0 +1,13 @@
+package jhberges.camel.consul.leader;
+
+import org.apache.camel.CamelContext;
+
+/**
+ * How the elector starts and stops the routes it controls. Only called on transitions: when leading and the route is
+ * not started (or starting), and when not leading and the route is.
+ */
+public interface RouteControlStrategy {
+	void startRoute(CamelContext camelContext, String routeId) throws Exception;
+
+	void stopRoute(CamelContext camelContext, String routeId) throws Exception;
+}
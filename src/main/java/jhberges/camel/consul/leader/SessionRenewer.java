@@ -0,0 +1,95 @@
+package jhberges.camel.consul.leader;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Renews the sessions of any number of facades on one timer, rather than each facade renewing its session on every
+ * poll. Each session is renewed once per third of its TTL, on the first tick it is due, so sessions of the same TTL
+ * are renewed together; polls in between trust the latest renewal instead of renewing again.
+ * <p>
+ * Consul renews one session per request, so this cuts renewals from one per elector and poll to three per session
+ * and TTL -- however often the electors poll.
+ * <p>
+ * The timer only finds the sessions due; each renewal (and re-creation of a lost session) is made on an executor of its
+ * own, so a slow Consul agent delays the renewals of its sessions only.
+ */
+public final class SessionRenewer {
+	private static final Logger logger = LoggerFactory.getLogger(SessionRenewer.class);
+	private static final long TICK_IN_MILLIS = 1000;
+	private static final SessionRenewer shared = new SessionRenewer(Executors.newSingleThreadScheduledExecutor(runnable -> {
+		final Thread thread = new Thread(runnable, "consul-leader-session-renewer");
+		thread.setDaemon(true);
+		return thread;
+	}), Executors.newCachedThreadPool(runnable -> {
+		final Thread thread = new Thread(runnable, "consul-leader-session-renewal");
+		thread.setDaemon(true);
+		return thread;
+	}));
+
+	/**
+	 * @return the renewer shared by all facades in this JVM
+	 */
+	public static SessionRenewer shared() {
+		return shared;
+	}
+
+	private final Set<ConsulFacadeBean> facades = ConcurrentHashMap.newKeySet();
+	private final Executor renewals;
+
+	/**
+	 * A renewer which only renews when {@link #renewDue(long)} is called, on the calling thread.
+	 */
+	SessionRenewer() {
+		this(Runnable::run);
+	}
+
+	/**
+	 * A renewer which only renews when {@link #renewDue(long)} is called, on <code>renewals</code>.
+	 */
+	SessionRenewer(final Executor renewals) {
+		this.renewals = renewals;
+	}
+
+	private SessionRenewer(final ScheduledExecutorService timer, final Executor renewals) {
+		this(renewals);
+		timer.scheduleWithFixedDelay(() -> renewDue(System.nanoTime()), TICK_IN_MILLIS, TICK_IN_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	void register(final ConsulFacadeBean facade) {
+		facades.add(facade);
+	}
+
+	void unregister(final ConsulFacadeBean facade) {
+		facades.remove(facade);
+	}
+
+	/**
+	 * Renews the session of each facade whose latest renewal is a third of its TTL old as of <code>now</code>.
+	 */
+	void renewDue(final long now) {
+		for (final ConsulFacadeBean facade : facades) {
+			try {
+				if (facade.isSessionRenewalDue(now)) {
+					renewals.execute(() -> {
+						try {
+							facade.renewSessionIfDue(now);
+						} catch (final RuntimeException e) {
+							logger.warn("Failed to renew session: {}", e.getMessage());
+						}
+					});
+				}
+			} catch (final RejectedExecutionException e) {
+				logger.warn("Failed to renew session: {}", e.getMessage());
+			}
+		}
+	}
+}
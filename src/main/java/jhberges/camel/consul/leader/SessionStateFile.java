@@ -0,0 +1,158 @@
+package jhberges.camel.consul.leader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers the session, and the fencing token (lock index) of each service led by it, in a small local file. A node
+ * restarted within the session TTL then renews and reuses its session, and with it the leader keys it held, rather
+ * than creating a new session and waiting for another election round.
+ * <p>
+ * The file is only written when the session or a token changes, and replaced atomically so that a crash mid-write
+ * leaves the previous state. Failing to read or write it is logged, and otherwise ignored.
+ * <p>
+ * Two nodes sharing a file would restore the same session and both lead, so the file is locked (through a
+ * <code>.lock</code> file next to it, as the file itself is replaced on every write) until {@link #close()}.
+ */
+class SessionStateFile implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(SessionStateFile.class);
+	private static final String SESSION = "session";
+	private static final String FENCING_TOKEN_PREFIX = "fencingToken.";
+
+	private final Path path;
+	private final FileChannel lockChannel;
+	private final FileLock lock;
+	private Optional<String> savedSessionKey = Optional.empty();
+	private Map<String, Long> savedFencingTokens = new HashMap<>();
+
+	/**
+	 * @throws IllegalStateException if the file is in use by another facade, in this JVM or another
+	 */
+	SessionStateFile(final Path path) {
+		this.path = Objects.requireNonNull(path);
+		final Path lockPath = path.resolveSibling(path.getFileName() + ".lock");
+		try {
+			Files.createDirectories(lockPath.toAbsolutePath().getParent());
+			lockChannel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		} catch (final IOException e) {
+			throw new IllegalStateException("Unable to lock session state file " + path, e);
+		}
+		FileLock _lock;
+		try {
+			_lock = lockChannel.tryLock();
+		} catch (final IOException | OverlappingFileLockException e) {
+			_lock = null;
+		}
+		if (Objects.isNull(_lock)) {
+			try {
+				lockChannel.close();
+			} catch (final IOException e) {
+				logger.debug("Exception while closing {}: {}", lockPath, e.getMessage());
+			}
+			throw new IllegalStateException("Session state file " + path + " is in use by another facade");
+		}
+		lock = _lock;
+	}
+
+	/**
+	 * Releases the lock on the file, for the next facade to use it.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (lock.isValid()) {
+			lock.release();
+		}
+		lockChannel.close();
+	}
+
+	Path getPath() {
+		return path;
+	}
+
+	synchronized Optional<String> getSessionKey() {
+		return load().map(properties -> properties.getProperty(SESSION));
+	}
+
+	synchronized Map<String, Long> getFencingTokens() {
+		final Map<String, Long> tokens = new HashMap<>();
+		load().ifPresent(properties -> properties.stringPropertyNames().stream()
+				.filter(name -> name.startsWith(FENCING_TOKEN_PREFIX))
+				.forEach(name -> {
+					try {
+						tokens.put(name.substring(FENCING_TOKEN_PREFIX.length()), Long.valueOf(properties.getProperty(name)));
+					} catch (final NumberFormatException e) {
+						logger.warn("Ignoring {} in {}: {}", name, path, e.getMessage());
+					}
+				}));
+		return tokens;
+	}
+
+	synchronized void save(final Optional<String> sessionKey, final Map<String, Long> fencingTokens) {
+		if (savedSessionKey.equals(sessionKey) && savedFencingTokens.equals(fencingTokens)) {
+			return;
+		}
+		final Properties properties = new Properties();
+		sessionKey.ifPresent(_sessionKey -> properties.setProperty(SESSION, _sessionKey));
+		fencingTokens.forEach((service, token) -> properties.setProperty(FENCING_TOKEN_PREFIX + service, String.valueOf(token)));
+		try {
+			final Path parent = path.toAbsolutePath().getParent();
+			Files.createDirectories(parent);
+			final Path temporary = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+			try (final OutputStream out = Files.newOutputStream(temporary)) {
+				properties.store(out, "camel-consul-leader session state");
+			}
+			try {
+				Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (final AtomicMoveNotSupportedException e) {
+				Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+			savedSessionKey = sessionKey;
+			savedFencingTokens = new HashMap<>(fencingTokens);
+			logger.debug("Saved session={} fencingTokens={} to {}", sessionKey, fencingTokens, path);
+		} catch (final IOException e) {
+			logger.warn("Unable to save session state to {}: {}", path, e.getMessage());
+		}
+	}
+
+	synchronized void delete() {
+		try {
+			Files.deleteIfExists(path);
+			savedSessionKey = Optional.empty();
+			savedFencingTokens = new HashMap<>();
+		} catch (final IOException e) {
+			logger.warn("Unable to delete session state {}: {}", path, e.getMessage());
+		}
+	}
+
+	private Optional<Properties> load() {
+		final Properties properties = new Properties();
+		try (final InputStream in = Files.newInputStream(path)) {
+			properties.load(in);
+			return Optional.of(properties);
+		} catch (final NoSuchFileException e) {
+			return Optional.empty();
+		} catch (final IOException | IllegalArgumentException e) {
+			logger.warn("Unable to read session state from {}: {}", path, e.getMessage());
+			return Optional.empty();
+		}
+	}
+}
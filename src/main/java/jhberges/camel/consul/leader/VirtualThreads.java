@@ -0,0 +1,58 @@
+package jhberges.camel.consul.leader;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Objects;
+
+/**
+ * Creates virtual threads (JDK 21+) through reflection, as the library itself targets Java 8.
+ */
+final class VirtualThreads {
+	private static final Method ofVirtual;
+	private static final Method name;
+	private static final Method unstarted;
+
+	static {
+		Method _ofVirtual = null;
+		Method _name = null;
+		Method _unstarted = null;
+		try {
+			final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			_ofVirtual = Thread.class.getMethod("ofVirtual");
+			_name = builder.getMethod("name", String.class);
+			_unstarted = builder.getMethod("unstarted", Runnable.class);
+			// On JDK 19 and 20 the methods exist, but throw unless preview features are enabled
+			_unstarted.invoke(_name.invoke(_ofVirtual.invoke(null), "probe"), (Runnable) () -> {
+			});
+		} catch (final ReflectiveOperationException | RuntimeException e) {
+			_ofVirtual = null;
+		}
+		ofVirtual = _ofVirtual;
+		name = _name;
+		unstarted = _unstarted;
+	}
+
+	private VirtualThreads() {
+	}
+
+	static boolean isAvailable() {
+		return Objects.nonNull(ofVirtual);
+	}
+
+	/**
+	 * @return a new, unstarted virtual thread running <code>task</code>
+	 * @throws UnsupportedOperationException if the JVM has no virtual threads
+	 */
+	static Thread newThread(final String threadName, final Runnable task) {
+		if (!isAvailable()) {
+			throw new UnsupportedOperationException("Virtual threads require Java 21 or later (or preview features enabled)");
+		}
+		try {
+			return (Thread) unstarted.invoke(name.invoke(ofVirtual.invoke(null), threadName), task);
+		} catch (final InvocationTargetException e) {
+			throw new IllegalStateException(e.getCause());
+		} catch (final IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package jhberges.camel.consul.leader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AdaptivePollScheduleTest {
+	private static final int TTL = 60;
+	private static final int POLL_INTERVAL = 5;
+
+	private static void assertBetween(final long min, final long max, final long actual) {
+		assertTrue(String.format("%d not within [%d, %d]", actual, min, max), min <= actual && actual <= max);
+	}
+
+	@Test
+	public void intervalsDeriveFromTtlAndPollInterval() {
+		final AdaptivePollSchedule schedule = new AdaptivePollSchedule(TTL, POLL_INTERVAL);
+		assertEquals(20000, schedule.getRenewIntervalInMillis());
+		assertEquals(5000, schedule.getFollowerIntervalInMillis());
+		assertEquals(30000, schedule.getMaxBackoffInMillis());
+		// A follower must renew its session in time as well
+		assertEquals(3333, new AdaptivePollSchedule(10, 30).getFollowerIntervalInMillis());
+	}
+
+	@Test
+	public void leaderRenewsLessOftenThanFollowerPolls() {
+		final AdaptivePollSchedule schedule = new AdaptivePollSchedule(TTL, POLL_INTERVAL);
+		for (int i = 0; i < 100; i++) {
+			assertBetween(18000, 22000, schedule.nextDelayInMillis(LeadershipState.LEADER, false));
+			assertBetween(4500, 5500, schedule.nextDelayInMillis(LeadershipState.FOLLOWER, false));
+			assertBetween(900, 1100, schedule.nextDelayInMillis(LeadershipState.FOLLOWER, true));
+		}
+	}
+
+	@Test
+	public void backsOffWithJitterWhileUnknown() {
+		final AdaptivePollSchedule schedule = new AdaptivePollSchedule(TTL, POLL_INTERVAL);
+		assertBetween(2500, 5000, schedule.nextDelayInMillis(LeadershipState.UNKNOWN, false));
+		assertBetween(5000, 10000, schedule.nextDelayInMillis(LeadershipState.UNKNOWN, false));
+		assertBetween(10000, 20000, schedule.nextDelayInMillis(LeadershipState.UNKNOWN, false));
+		for (int i = 0; i < 100; i++) {
+			assertBetween(15000, 30000, schedule.nextDelayInMillis(LeadershipState.UNKNOWN, false));
+		}
+		// Recovery resets the backoff
+		schedule.nextDelayInMillis(LeadershipState.FOLLOWER, false);
+		assertBetween(2500, 5000, schedule.nextDelayInMillis(LeadershipState.UNKNOWN, false));
+	}
+
+	@Test
+	public void initialDelayIsSpread() {
+		final AdaptivePollSchedule schedule = new AdaptivePollSchedule(TTL, POLL_INTERVAL);
+		long min = Long.MAX_VALUE;
+		long max = 0;
+		for (int i = 0; i < 1000; i++) {
+			final long delay = schedule.initialDelayInMillis(1, TimeUnit.SECONDS);
+			assertBetween(1000, 5999, delay);
+			min = Math.min(min, delay);
+			max = Math.max(max, delay);
+		}
+		assertTrue(max - min > 2500);
+	}
+}
@@ -3,11 +3,19 @@ package jhberges.camel.consul.leader;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.ProtocolVersion;
@@ -16,6 +24,7 @@ import org.apache.http.client.fluent.Executor;
 import org.apache.http.client.fluent.Request;
 import org.apache.http.client.fluent.Response;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHeader;
 import org.apache.http.message.BasicStatusLine;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -61,4 +70,283 @@ public class ConsulFacadeBeanTest {
 		assertFalse(result.get());
 	}
 
+	@Test
+	public void awaitLeaderChangeReportsIndexMovement() throws ClientProtocolException, IOException {
+		final Response response = mock(Response.class);
+		final HttpResponse httpResponse = mock(HttpResponse.class);
+		when(httpResponse.getEntity()).thenReturn(new StringEntity("[]"));
+		when(httpResponse.getStatusLine()).thenReturn(new BasicStatusLine(new ProtocolVersion("http", 1, 1), 200, "yay"));
+		when(httpResponse.getFirstHeader(ConsulFacadeBean.CONSUL_INDEX_HEADER))
+				.thenReturn(new BasicHeader(ConsulFacadeBean.CONSUL_INDEX_HEADER, "42"));
+
+		when(response.returnResponse()).thenReturn(httpResponse);
+
+		when(executor.execute(any(Request.class))).thenReturn(response);
+
+		final ConsulFacadeBean bean = new ConsulFacadeBean("URL", Optional.empty(), Optional.empty(), executor);
+		assertEquals(Optional.of(true), bean.awaitLeaderChange("SERVICE", 1));
+		assertEquals(Optional.of(false), bean.awaitLeaderChange("SERVICE", 1));
+	}
+
+	@Test
+	public void awaitLeaderChangeWithoutIndexIsAFailure() throws ClientProtocolException, IOException {
+		final Response response = mock(Response.class);
+		final HttpResponse httpResponse = mock(HttpResponse.class);
+		when(httpResponse.getEntity()).thenReturn(new StringEntity("[]"));
+		when(httpResponse.getStatusLine()).thenReturn(new BasicStatusLine(new ProtocolVersion("http", 1, 1), 500, "nay"));
+
+		when(response.returnResponse()).thenReturn(httpResponse);
+
+		when(executor.execute(any(Request.class))).thenReturn(response);
+
+		final ConsulFacadeBean bean = new ConsulFacadeBean("URL", Optional.empty(), Optional.empty(), executor);
+		assertFalse(bean.awaitLeaderChange("SERVICE", 1).isPresent());
+	}
+
+	@Test
+	public void pollConsulForSeveralServicesSharesOneSessionAndOneRead() throws ClientProtocolException, IOException {
+		final Response response = mock(Response.class);
+		final HttpResponse sessionResponse = okResponse("{\"ID\":\"SESSION\"}");
+		final HttpResponse renewResponse = okResponse("{}");
+		final HttpResponse keysResponse = okResponse("["
+				+ "{\"Key\":\"service/a/leader\",\"Session\":\"SESSION\"},"
+				+ "{\"Key\":\"service/b/leader\",\"Session\":\"OTHER\"},"
+				+ "{\"Key\":\"service/c/leader\"},"
+				+ "{\"Key\":\"service/d/config\",\"Session\":\"OTHER\"}]");
+
+		final HttpResponse acquireResponse = okResponse("true");
+
+		when(response.returnResponse()).thenReturn(sessionResponse, renewResponse, keysResponse, acquireResponse);
+
+		when(executor.execute(any(Request.class))).thenReturn(response);
+
+		final ConsulFacadeBean bean = new ConsulFacadeBean("URL", Optional.empty(), Optional.empty(), executor, 10, 0, 1, 0, 1);
+		assertEquals(Optional.of("SESSION"), bean.initSessionKey("SESSIONNAME"));
+		final Map<String, Optional<Boolean>> result = bean.pollConsul("SESSIONNAME", Arrays.asList("a", "b", "c", "d"));
+		assertEquals(Optional.of(true), result.get("a"));
+		assertEquals(Optional.of(false), result.get("b"));
+		assertEquals(Optional.of(true), result.get("c"));
+		assertEquals(Optional.of(true), result.get("d"));
+		// Create, renew, the one read of all keys, and an acquire and read-back of the fencing token each for c and d
+		verify(executor, times(7)).execute(any(Request.class));
+	}
+
+	@Test
+	public void pollConsulAsyncPipelinesRenewCheckAndAcquire() {
+		final CompletableFuture<ConsulHttpResponse> pendingAcquire = new CompletableFuture<>();
+		final ConsulHttpTransport transport = request -> {
+			if (request.getUri().contains("/session/create")) {
+				return CompletableFuture.completedFuture(consulResponse(200, "{\"ID\":\"SESSION\"}"));
+			} else if (request.getUri().contains("/session/renew/")) {
+				return CompletableFuture.completedFuture(consulResponse(200, "[]"));
+			} else if (request.getUri().contains("?acquire=SESSION")) {
+				return pendingAcquire;
+			}
+			return CompletableFuture.completedFuture(consulResponse(200, "[{\"Session\":\"OTHER\"}]"));
+		};
+
+		final ConsulFacadeBean bean = new ConsulFacadeBean("URL", transport, 10, 0, 1, 0, 1);
+		assertEquals(Optional.of("SESSION"), bean.initSessionKey("SERVICE"));
+		final CompletableFuture<Optional<Boolean>> result = bean.pollConsulAsync("SERVICE");
+		assertFalse(result.isDone());
+		pendingAcquire.complete(consulResponse(200, "true"));
+		assertEquals(Optional.of(true), result.join());
+	}
+
+	@Test
+	public void createSessionAsyncRetriesWithoutBlockingTheCaller() {
+		final AtomicInteger attempts = new AtomicInteger();
+		final ConsulHttpTransport transport = request -> {
+			if (attempts.incrementAndGet() < 2) {
+				final CompletableFuture<ConsulHttpResponse> failure = new CompletableFuture<>();
+				failure.completeExceptionally(new IOException("Connection refused"));
+				return failure;
+			}
+			return CompletableFuture.completedFuture(consulResponse(200, "{\"ID\":\"SESSION\"}"));
+		};
+
+		final ConsulFacadeBean bean = new ConsulFacadeBean("URL", transport);
+		final CompletableFuture<Optional<String>> session = bean.createSessionAsync("SERVICE", 10, 0, 2, 1, 1);
+		assertFalse(session.isDone());
+		assertEquals(Optional.of("SESSION"), session.join());
+		assertEquals(2, attempts.get());
+	}
+
+	@Test
+	public void initSessionKeyAsyncSharesOneCreationMadeOutsideTheLock() {
+		final CompletableFuture<ConsulHttpResponse> pendingCreate = new CompletableFuture<>();
+		final AtomicInteger creations = new AtomicInteger();
+		final ConsulFacadeBean[] bean = new ConsulFacadeBean[1];
+		final ConsulHttpTransport transport = request -> {
+			assertFalse(Thread.holdsLock(bean[0]));
+			creations.incrementAndGet();
+			return pendingCreate;
+		};
+
+		bean[0] = new ConsulFacadeBean("URL", transport, 10, 0, 1, 0, 1);
+		final CompletableFuture<Optional<String>> first = bean[0].initSessionKeyAsync("SERVICE");
+		final CompletableFuture<Optional<String>> second = bean[0].initSessionKeyAsync("SERVICE");
+		assertSame(first, second);
+		assertFalse(first.isDone());
+		pendingCreate.complete(consulResponse(200, "{\"ID\":\"SESSION\"}"));
+		assertEquals(Optional.of("SESSION"), first.join());
+		assertEquals(Optional.of("SESSION"), bean[0].initSessionKey("SERVICE"));
+		assertEquals(1, creations.get());
+	}
+
+	@Test
+	public void pollConsulWithTransactionsLocksThenOnlyVerifies() {
+		final List<String> transactions = new ArrayList<>();
+		final ConsulHttpTransport transport = request -> {
+			if (request.getUri().endsWith("/v1/txn")) {
+				transactions.add(request.getBody().get());
+				return CompletableFuture.completedFuture(consulResponse(200,
+						"{\"Results\":[{\"KV\":{\"Session\":\"SESSION\"}},{\"KV\":{\"Key\":\"service/SERVICE/leader\",\"Session\":\"SESSION\"}}]}"));
+			} else if (request.getUri().contains("/session/create")) {
+				return CompletableFuture.completedFuture(consulResponse(200, "{\"ID\":\"SESSION\"}"));
+			}
+			return CompletableFuture.completedFuture(consulResponse(200, "true"));
+		};
+
+		final ConsulFacadeBean bean = new ConsulFacadeBean("URL", transport, 10, 0, 1, 0, 1);
+		bean.setUseTransactions(true);
+		bean.initSessionKey("SERVICE");
+		assertEquals(Optional.of(true), bean.pollConsul("SERVICE"));
+		assertEquals(Optional.of(true), bean.pollConsul("SERVICE"));
+		assertEquals(2, transactions.size());
+		assertTrue(transactions.get(0).contains("\"lock\""));
+		assertTrue(transactions.get(1).contains("\"check-session\""));
+	}
+
+	@Test
+	public void pollConsulWithTransactionsRolledBackIsNotLeader() {
+		final ConsulHttpTransport transport = request -> {
+			if (request.getUri().endsWith("/v1/txn")) {
+				return CompletableFuture.completedFuture(consulResponse(409,
+						"{\"Results\":null,\"Errors\":[{\"OpIndex\":0,\"What\":\"lock is already held\"}]}"));
+			} else if (request.getUri().contains("/session/create")) {
+				return CompletableFuture.completedFuture(consulResponse(200, "{\"ID\":\"SESSION\"}"));
+			}
+			return CompletableFuture.completedFuture(consulResponse(200, "true"));
+		};
+
+		final ConsulFacadeBean bean = new ConsulFacadeBean("URL", transport, 10, 0, 1, 0, 1);
+		bean.setUseTransactions(true);
+		bean.initSessionKey("SERVICE");
+		assertEquals(Optional.of(false), bean.pollConsul("SERVICE"));
+	}
+
+	@Test
+	public void pollConsulWithTransactionsFallsBackWhenUnsupported() {
+		final AtomicInteger transactions = new AtomicInteger();
+		final ConsulHttpTransport transport = request -> {
+			if (request.getUri().endsWith("/v1/txn")) {
+				transactions.incrementAndGet();
+				return CompletableFuture.completedFuture(consulResponse(404, "404 page not found"));
+			} else if (request.getUri().contains("/session/create")) {
+				return CompletableFuture.completedFuture(consulResponse(200, "{\"ID\":\"SESSION\"}"));
+			} else if (request.getMethod().equals(ConsulHttpRequest.GET)) {
+				return CompletableFuture.completedFuture(consulResponse(200, "[{\"Session\":\"SESSION\"}]"));
+			}
+			return CompletableFuture.completedFuture(consulResponse(200, "true"));
+		};
+
+		final ConsulFacadeBean bean = new ConsulFacadeBean("URL", transport, 10, 0, 1, 0, 1);
+		bean.setUseTransactions(true);
+		bean.initSessionKey("SERVICE");
+		assertEquals(Optional.of(true), bean.pollConsul("SERVICE"));
+		assertEquals(Optional.of(true), bean.pollConsul("SERVICE"));
+		assertEquals(1, transactions.get());
+	}
+
+	@Test
+	public void pollConsulWithTransactionsKeepsThemOnServerError() {
+		final AtomicInteger transactions = new AtomicInteger();
+		final ConsulHttpTransport transport = request -> {
+			if (request.getUri().endsWith("/v1/txn")) {
+				return CompletableFuture.completedFuture(transactions.incrementAndGet() == 1
+						? consulResponse(500, "No cluster leader")
+						: consulResponse(200, "{\"Results\":[{\"KV\":{\"Key\":\"service/SERVICE/leader\",\"Session\":\"SESSION\"}}]}"));
+			} else if (request.getUri().contains("/session/create")) {
+				return CompletableFuture.completedFuture(consulResponse(200, "{\"ID\":\"SESSION\"}"));
+			}
+			return CompletableFuture.completedFuture(consulResponse(200, "true"));
+		};
+
+		final ConsulFacadeBean bean = new ConsulFacadeBean("URL", transport, 10, 0, 1, 0, 1);
+		bean.setUseTransactions(true);
+		bean.initSessionKey("SERVICE");
+		assertEquals(Optional.empty(), bean.pollConsul("SERVICE"));
+		assertEquals(Optional.of(true), bean.pollConsul("SERVICE"));
+		assertEquals(2, transactions.get());
+	}
+
+	@Test
+	public void fencingTokenFollowsLockIndex() {
+		final AtomicInteger reads = new AtomicInteger();
+		final ConsulHttpTransport transport = request -> {
+			if (request.getUri().contains("/session/create")) {
+				return CompletableFuture.completedFuture(consulResponse(200, "{\"ID\":\"SESSION\"}"));
+			} else if (request.getMethod().equals(ConsulHttpRequest.GET)) {
+				return CompletableFuture.completedFuture(consulResponse(200, reads.getAndIncrement() == 0
+						? "[{\"LockIndex\":4,\"Session\":\"OTHER\"}]"
+						: "[{\"LockIndex\":7,\"Session\":\"SESSION\"}]"));
+			}
+			return CompletableFuture.completedFuture(consulResponse(200, "true"));
+		};
+
+		final ConsulFacadeBean bean = new ConsulFacadeBean("URL", transport, 10, 0, 1, 0, 1);
+		bean.initSessionKey("SERVICE");
+		assertFalse(bean.getFencingToken("SERVICE").isPresent());
+		assertEquals(Optional.of(true), bean.pollConsul("SERVICE"));
+		// Read back right after acquiring, rather than guessed from the index read before
+		assertEquals(2, reads.get());
+		assertEquals(Optional.of(7L), bean.getFencingToken("SERVICE"));
+		assertEquals(Optional.of(true), bean.pollConsul("SERVICE"));
+		assertEquals(Optional.of(7L), bean.getFencingToken("SERVICE"));
+	}
+
+	@Test
+	public void fencingTokenIsUnknownAndUnleasedUntilReadBack() {
+		final AtomicInteger reads = new AtomicInteger();
+		final ConsulHttpTransport transport = request -> {
+			if (request.getUri().contains("/session/create")) {
+				return CompletableFuture.completedFuture(consulResponse(200, "{\"ID\":\"SESSION\"}"));
+			} else if (request.getMethod().equals(ConsulHttpRequest.GET)) {
+				switch (reads.getAndIncrement()) {
+				case 0:
+					return CompletableFuture.completedFuture(consulResponse(200, "[{\"LockIndex\":4,\"Session\":\"OTHER\"}]"));
+				case 1:
+					return CompletableFuture.completedFuture(consulResponse(500, "No cluster leader"));
+				default:
+					return CompletableFuture.completedFuture(consulResponse(200, "[{\"LockIndex\":7,\"Session\":\"SESSION\"}]"));
+				}
+			}
+			return CompletableFuture.completedFuture(consulResponse(200, "true"));
+		};
+
+		final ConsulFacadeBean bean = new ConsulFacadeBean("URL", transport, 10, 0, 1, 0, 1);
+		bean.setLeaderLeaseInMillis(5000);
+		bean.initSessionKey("SERVICE");
+		assertEquals(Optional.of(true), bean.pollConsul("SERVICE"));
+		assertFalse(bean.getFencingToken("SERVICE").isPresent());
+		// Not leased, so the next poll reads the key -- and with it the token
+		assertEquals(Optional.of(true), bean.pollConsul("SERVICE"));
+		assertEquals(3, reads.get());
+		assertEquals(Optional.of(7L), bean.getFencingToken("SERVICE"));
+		assertEquals(Optional.of(true), bean.pollConsul("SERVICE"));
+		assertEquals(3, reads.get());
+	}
+
+	private static ConsulHttpResponse consulResponse(final int statusCode, final String body) {
+		return new ConsulHttpResponse(statusCode, "HTTP/1.1 " + statusCode, Optional.empty(), body.getBytes());
+	}
+
+	private static HttpResponse okResponse(final String body) throws IOException {
+		final HttpResponse httpResponse = mock(HttpResponse.class);
+		when(httpResponse.getEntity()).thenReturn(new StringEntity(body));
+		when(httpResponse.getStatusLine()).thenReturn(new BasicStatusLine(new ProtocolVersion("http", 1, 1), 200, "yay"));
+		return httpResponse;
+	}
+
 }
@@ -0,0 +1,216 @@
+package jhberges.camel.consul.leader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.CamelExecutionException;
+import org.apache.camel.ResolveEndpointFailedException;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConsulLeaderComponentTest {
+	private static final String SERVICE_NAME = "component-service";
+
+	private FakeConsul consul;
+	private final List<CamelContext> contexts = new ArrayList<>();
+
+	@Before
+	public void before() {
+		consul = new FakeConsul();
+	}
+
+	@After
+	public void after() throws Exception {
+		for (final CamelContext context : contexts) {
+			context.stop();
+		}
+	}
+
+	private CamelContext node(final String nodeName, final RouteBuilder routes) throws Exception {
+		final DefaultCamelContext context = new DefaultCamelContext();
+		context.setName(nodeName);
+		// Found through META-INF/services
+		final ConsulLeaderComponent component = context.getComponent("consul-leader", ConsulLeaderComponent.class);
+		component.setConsulUrl(FakeConsul.URL);
+		component.setHttpTransport(consul.node(nodeName));
+		component.setPollInterval(1);
+		component.setTtl(10);
+		context.addRoutes(routes);
+		context.start();
+		contexts.add(context);
+		return context;
+	}
+
+	private static ConsulLeaderComponent component(final CamelContext context) {
+		return context.getComponent("consul-leader", ConsulLeaderComponent.class);
+	}
+
+	private static void await(final BooleanSupplier condition) throws InterruptedException {
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (!condition.getAsBoolean()) {
+			if (System.nanoTime() > deadline) {
+				fail("Condition not met in time");
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	private static boolean consumes(final CamelContext context, final String uri) {
+		try {
+			context.createProducerTemplate().sendBody(uri, "ping");
+			return true;
+		} catch (final CamelExecutionException e) {
+			return false;
+		}
+	}
+
+	private static RouteBuilder delegating() {
+		return new RouteBuilder() {
+			@Override
+			public void configure() {
+				from("consul-leader:" + SERVICE_NAME + ":direct:in?watch=false").routeId("delegating").log("${body}");
+			}
+		};
+	}
+
+	private static RouteBuilder guarded() {
+		return new RouteBuilder() {
+			@Override
+			public void configure() {
+				from("direct:in").routeId("guarded").routePolicy(new ConsulLeaderRoutePolicy(SERVICE_NAME)).log("${body}");
+			}
+		};
+	}
+
+	@Test
+	public void delegateIsConsumedOnlyByTheLeader() throws Exception {
+		final CamelContext first = node("first", delegating());
+		await(() -> component(first).getLeadershipState(SERVICE_NAME) == LeadershipState.LEADER);
+		final CamelContext second = node("second", delegating());
+		await(() -> component(second).getLeadershipState(SERVICE_NAME) == LeadershipState.FOLLOWER);
+
+		assertTrue(consumes(first, "direct:in"));
+		assertFalse(consumes(second, "direct:in"));
+
+		// The leader releases the key on stopping, so the other takes over without waiting out the session TTL
+		first.stop();
+		await(() -> component(second).getLeadershipState(SERVICE_NAME) == LeadershipState.LEADER);
+		assertTrue(consumes(second, "direct:in"));
+	}
+
+	@Test
+	public void routePolicyHoldsTheConsumerBackUntilElected() throws Exception {
+		final CamelContext first = node("first", guarded());
+		await(() -> component(first).getLeadershipState(SERVICE_NAME) == LeadershipState.LEADER);
+		final CamelContext second = node("second", guarded());
+		await(() -> component(second).getLeadershipState(SERVICE_NAME) == LeadershipState.FOLLOWER);
+
+		assertTrue(consumes(first, "direct:in"));
+		assertFalse(consumes(second, "direct:in"));
+	}
+
+	@Test
+	public void serviceJoiningDuringAWatchIsPolledRightAway() throws Exception {
+		final CamelContext context = node("node", new RouteBuilder() {
+			@Override
+			public void configure() {
+				from("consul-leader:service-a:direct:a?watch=true").log("${body}");
+			}
+		});
+		await(() -> component(context).getLeadershipState("service-a") == LeadershipState.LEADER);
+
+		// The watch of service-a blocks until its key changes, which it does not
+		context.addRoutes(new RouteBuilder() {
+			@Override
+			public void configure() {
+				from("consul-leader:service-b:direct:b").log("${body}");
+			}
+		});
+		await(() -> component(context).getLeadershipState("service-b") == LeadershipState.LEADER);
+	}
+
+	@Test
+	public void routesShareOneSession() throws Exception {
+		final CamelContext context = node("node", new RouteBuilder() {
+			@Override
+			public void configure() {
+				from("consul-leader:service-a:direct:a?ttl=10").log("${body}");
+				from("consul-leader:service-b:direct:b?ttl=10").log("${body}");
+			}
+		});
+		await(() -> component(context).getLeadershipState("service-a") == LeadershipState.LEADER
+				&& component(context).getLeadershipState("service-b") == LeadershipState.LEADER);
+
+		assertEquals(consul.holder("service/service-a/leader"), consul.holder("service/service-b/leader"));
+		assertTrue(consumes(context, "direct:a"));
+		assertTrue(consumes(context, "direct:b"));
+	}
+
+	@Test
+	public void followerForwardsToLeader() throws Exception {
+		final List<String> received = new CopyOnWriteArrayList<>();
+		final CamelContext first = node("first", forwarding("first", received));
+		await(() -> component(first).getLeadershipState(SERVICE_NAME) == LeadershipState.LEADER);
+		final CamelContext second = node("second", forwarding("second", received));
+		await(() -> component(second).getLeadershipState(SERVICE_NAME) == LeadershipState.FOLLOWER);
+		await(() -> component(second).getLeaderAddress(SERVICE_NAME).isPresent());
+
+		second.createProducerTemplate().sendBody("consul-leader:" + SERVICE_NAME, "work");
+		assertEquals(Collections.singletonList("first:work"), received);
+
+		// A new leader, and with it a new address to forward to
+		first.stop();
+		await(() -> component(second).getLeaderAddress(SERVICE_NAME).filter("direct-vm:second"::equals).isPresent());
+		// The address is known from the poll before the route of the new leader has started consuming
+		await(() -> consumes(second, "consul-leader:" + SERVICE_NAME));
+		assertEquals(Arrays.asList("first:work", "second:ping"), received);
+	}
+
+	private RouteBuilder forwarding(final String nodeName, final List<String> received) {
+		return new RouteBuilder() {
+			@Override
+			public void configure() {
+				component(getContext()).setAdvertisedAddress("direct-vm:" + nodeName);
+				from("consul-leader:" + SERVICE_NAME + ":direct-vm:" + nodeName)
+						.process(exchange -> received.add(nodeName + ":" + exchange.getIn().getBody(String.class)));
+			}
+		};
+	}
+
+	@Test
+	public void retryOptionsAreTakenFromTheUri() throws Exception {
+		final DefaultCamelContext context = new DefaultCamelContext();
+		final ConsulLeaderEndpoint endpoint = (ConsulLeaderEndpoint) context.getEndpoint(
+				"consul-leader:service-a:direct:a?createSessionTries=2&retryPeriod=1&backOffMultiplier=2.5");
+		assertEquals("direct:a", endpoint.getDelegateUri());
+		assertEquals(2, component(context).getCreateSessionTries());
+		assertEquals(1, component(context).getRetryPeriod());
+		assertEquals(2.5, component(context).getBackOffMultiplier(), 0.0);
+	}
+
+	@Test
+	public void conflictingSessionOptionsAreRejected() throws Exception {
+		final DefaultCamelContext context = new DefaultCamelContext();
+		context.getEndpoint("consul-leader:service-a:direct:a?ttl=10");
+		try {
+			context.getEndpoint("consul-leader:service-b:direct:b?ttl=20");
+			fail("Expected the second TTL to be rejected");
+		} catch (final ResolveEndpointFailedException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+	}
+}
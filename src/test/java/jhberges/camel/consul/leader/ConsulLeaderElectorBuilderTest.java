@@ -1,11 +1,14 @@
 package jhberges.camel.consul.leader;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assume.assumeFalse;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.when;
 
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.camel.CamelContext;
 import org.apache.camel.Exchange;
@@ -43,4 +46,52 @@ public class ConsulLeaderElectorBuilderTest {
 						.build());
 		executor.shutdown();
 	}
+
+	@Test
+	public void virtualThreadsFallBackToAnExecutorOfItsOwn() throws Exception {
+		assumeFalse(VirtualThreads.isAvailable());
+		assertNotNull(
+				ConsulLeaderElectorBuilder
+						.forConsulHost("URL")
+						.inCamelContext(camelContext)
+						.usingVirtualThreads(true)
+						.usingRetryStrategy(1, 0, 0)
+						.build());
+	}
+
+	@Test
+	public void connectionPoolIsReportedToTheMetrics() throws Exception {
+		final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+		final AtomicReference<String> pooled = new AtomicReference<>();
+		try (final PooledConsulHttpClient pool = new PooledConsulHttpClient()) {
+			ConsulLeaderElectorBuilder
+					.forConsulHost("URL")
+					.inCamelContext(camelContext)
+					.usingExecutor(executor)
+					.usingServiceName("pooled-service")
+					.usingConnectionPool(pool)
+					.usingMetrics(new ElectionMetrics() {
+						@Override
+						public void connectionPoolUsed(final String sessionName, final PooledConsulHttpClient _pool) {
+							pooled.set(_pool == pool ? sessionName : null);
+						}
+					})
+					.usingRetryStrategy(1, 0, 0)
+					.build();
+		}
+		executor.shutdown();
+		assertEquals("pooled-service", pooled.get());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void sharedConnectionPoolTakesNoTimeouts() throws Exception {
+		try (final PooledConsulHttpClient pool = new PooledConsulHttpClient()) {
+			ConsulLeaderElectorBuilder
+					.forConsulHost("URL")
+					.inCamelContext(camelContext)
+					.usingConnectionPool(pool)
+					.usingTimeouts(1000, 1000)
+					.build();
+		}
+	}
 }
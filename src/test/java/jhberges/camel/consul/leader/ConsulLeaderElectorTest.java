@@ -1,24 +1,40 @@
 package jhberges.camel.consul.leader;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyDouble;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.camel.CamelContext;
 import org.apache.camel.ProducerTemplate;
 import org.apache.camel.ServiceStatus;
+import org.apache.camel.spi.ShutdownStrategy;
 import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
@@ -37,10 +53,12 @@ public class ConsulLeaderElectorTest {
 	private CamelContext camelContext;
 	@Mock
 	private ProducerTemplate producerTemplate;
+	@Mock
+	private ScheduledExecutorService executor;
 
 	@After
 	public void after() {
-		verifyNoMoreInteractions(consulFacade, camelContext, producerTemplate);
+		verifyNoMoreInteractions(consulFacade, camelContext, producerTemplate, executor);
 	}
 
 	@Test
@@ -60,6 +78,135 @@ public class ConsulLeaderElectorTest {
 		verify(consulFacade, times(1)).close();
 	}
 
+	@Test
+	public void onContextStopReleasesLeadershipBeforeDestroyingSession() throws Exception {
+		final TerminationMock termination = new TerminationMock();
+		ConsulLeaderElector.TERMINATION_CALLBACK = termination;
+
+		when(consulFacade.initSessionKey(anyString()))
+				.thenReturn(Optional.of("SESSION"));
+		when(consulFacade.pollConsul(eq(SERVICE_NAME)))
+				.thenReturn(Optional.of(true));
+		when(consulFacade.releaseLeadership(eq(SERVICE_NAME)))
+				.thenReturn(true);
+		when(camelContext.getRouteStatus(eq(ROUTE_ID)))
+				.thenReturn(ServiceStatus.Started);
+
+		final ConsulLeaderElector elector = new ConsulLeaderElector(consulFacade, SERVICE_NAME, ROUTE_ID, camelContext, producerTemplate,
+				true);
+		elector.run();
+		elector.onContextStop(camelContext);
+
+		assertEquals(0, termination.getCalled());
+		final InOrder inOrder = inOrder(consulFacade);
+		inOrder.verify(consulFacade, times(1)).initSessionKey(anyString());
+		inOrder.verify(consulFacade, times(1)).pollConsul(eq(SERVICE_NAME));
+		inOrder.verify(consulFacade, times(1)).releaseLeadership(eq(SERVICE_NAME));
+		inOrder.verify(consulFacade, times(1)).close();
+		verify(consulFacade, times(1)).isKeepingSession();
+		verify(camelContext, times(1)).getRouteStatus(eq(ROUTE_ID));
+	}
+
+	@Test
+	public void asynchronousBootstrapSkipsPollsUntilSessionIsCreated() throws Exception {
+		final CompletableFuture<Optional<String>> session = new CompletableFuture<>();
+		when(consulFacade.initSessionKeyAsync(anyString()))
+				.thenReturn(session);
+		when(consulFacade.pollConsul(eq(SERVICE_NAME)))
+				.thenReturn(Optional.of(false));
+		when(camelContext.getRouteStatus(eq(ROUTE_ID)))
+				.thenReturn(ServiceStatus.Stopped);
+
+		final Map<String, String> routes = new LinkedHashMap<>();
+		routes.put(SERVICE_NAME, ROUTE_ID);
+		final ConsulLeaderElector elector = new ConsulLeaderElector(consulFacade, SERVICE_NAME, routes, camelContext,
+				producerTemplate, true, true);
+		elector.run();
+		assertEquals(LeadershipState.UNKNOWN, elector.getLeadershipState(SERVICE_NAME));
+
+		session.complete(Optional.of("SESSION"));
+		// The session is asked for on a thread of its own, which may not have got to it yet
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (elector.getLeadershipState(SERVICE_NAME) == LeadershipState.UNKNOWN && System.nanoTime() < deadline) {
+			elector.run();
+			TimeUnit.MILLISECONDS.sleep(10);
+		}
+		assertEquals(LeadershipState.FOLLOWER, elector.getLeadershipState(SERVICE_NAME));
+		verify(consulFacade, times(1)).initSessionKeyAsync(eq(SERVICE_NAME));
+		verify(consulFacade, times(1)).pollConsul(eq(SERVICE_NAME));
+		verify(camelContext, times(1)).getRouteStatus(eq(ROUTE_ID));
+	}
+
+	@Test
+	public void onContextStopKeepsLeadershipOfKeptSession() throws Exception {
+		when(consulFacade.initSessionKey(anyString()))
+				.thenReturn(Optional.of("SESSION"));
+		when(consulFacade.pollConsul(eq(SERVICE_NAME)))
+				.thenReturn(Optional.of(true));
+		when(consulFacade.isKeepingSession())
+				.thenReturn(true);
+		when(camelContext.getRouteStatus(eq(ROUTE_ID)))
+				.thenReturn(ServiceStatus.Started);
+
+		final ConsulLeaderElector elector = new ConsulLeaderElector(consulFacade, SERVICE_NAME, ROUTE_ID, camelContext, producerTemplate,
+				true);
+		elector.run();
+		elector.onContextStop(camelContext);
+
+		verify(consulFacade, times(1)).initSessionKey(anyString());
+		verify(consulFacade, times(1)).pollConsul(eq(SERVICE_NAME));
+		verify(consulFacade, times(1)).isKeepingSession();
+		verify(consulFacade, never()).releaseLeadership(anyString());
+		verify(consulFacade, times(1)).close();
+		verify(camelContext, times(1)).getRouteStatus(eq(ROUTE_ID));
+	}
+
+	@Test
+	public void handoverDrainsRouteBeforeReleasingLeadership() throws Exception {
+		final TerminationMock termination = new TerminationMock();
+		ConsulLeaderElector.TERMINATION_CALLBACK = termination;
+		final RouteControlStrategy routeControl = mock(RouteControlStrategy.class);
+		final ShutdownStrategy shutdownStrategy = mock(ShutdownStrategy.class);
+
+		when(consulFacade.initSessionKey(anyString()))
+				.thenReturn(Optional.of("SESSION"));
+		when(consulFacade.pollConsul(eq(SERVICE_NAME)))
+				.thenReturn(Optional.of(true));
+		when(camelContext.getShutdownStrategy())
+				.thenReturn(shutdownStrategy);
+		when(shutdownStrategy.getTimeUnit())
+				.thenReturn(TimeUnit.SECONDS);
+		when(shutdownStrategy.getTimeout())
+				.thenReturn(10L);
+		when(consulFacade.releaseLeadership(eq(SERVICE_NAME)))
+				.thenReturn(true);
+		// Elected, started, and then drained in the background
+		when(camelContext.getRouteStatus(eq(ROUTE_ID)))
+				.thenReturn(ServiceStatus.Stopped, ServiceStatus.Started, ServiceStatus.Started, ServiceStatus.Stopped);
+
+		final ConsulLeaderElector elector = new ConsulLeaderElector(consulFacade, SERVICE_NAME, ROUTE_ID, camelContext, producerTemplate,
+				true);
+		elector.setRouteControl(routeControl);
+		elector.run();
+		assertTrue(elector.isLeader());
+		elector.handover(1000);
+
+		assertEquals(0, termination.getCalled());
+		assertFalse(elector.isLeader());
+		assertEquals(LeadershipState.FOLLOWER, elector.getLeadershipState(SERVICE_NAME));
+		final InOrder inOrder = inOrder(consulFacade, routeControl, camelContext);
+		inOrder.verify(consulFacade, times(1)).holdOff(SERVICE_NAME, 1000);
+		inOrder.verify(routeControl, times(1)).stopRoute(camelContext, ROUTE_ID);
+		inOrder.verify(camelContext, times(2)).getRouteStatus(eq(ROUTE_ID));
+		inOrder.verify(consulFacade, times(1)).releaseLeadership(eq(SERVICE_NAME));
+		verify(consulFacade, times(1)).initSessionKey(anyString());
+		verify(consulFacade, times(1)).pollConsul(eq(SERVICE_NAME));
+		verify(camelContext, times(4)).getRouteStatus(eq(ROUTE_ID));
+		verify(camelContext, times(1)).getShutdownStrategy();
+		verify(routeControl, times(1)).startRoute(camelContext, ROUTE_ID);
+		verifyNoMoreInteractions(routeControl);
+	}
+
 	@Test
 	public void runWhenAlreadyLeader() throws Exception {
 		final TerminationMock termination = new TerminationMock();
@@ -108,6 +255,36 @@ public class ConsulLeaderElectorTest {
 				eq(ConsulLeaderElector.CONTROLBUS_ROUTE), anyString());
 	}
 
+	@Test
+	public void followerWaitsOutAgentBlipBeforeRunningAsIsland() throws Exception {
+		final TerminationMock termination = new TerminationMock();
+		ConsulLeaderElector.TERMINATION_CALLBACK = termination;
+
+		when(consulFacade.initSessionKey(anyString()))
+				.thenReturn(Optional.of("SESSION"));
+		when(consulFacade.pollConsul(eq(SERVICE_NAME)))
+				.thenReturn(Optional.of(false)).thenReturn(Optional.empty());
+		when(camelContext.getRouteStatus(eq(ROUTE_ID)))
+				.thenReturn(ServiceStatus.Stopped);
+
+		final ConsulLeaderElector elector = new ConsulLeaderElector(consulFacade, SERVICE_NAME, ROUTE_ID, camelContext, producerTemplate,
+				true);
+		elector.setIslandModeGuard(new IslandModeGuard(true, 3, 0, false, Optional.empty()));
+		elector.run();
+		elector.run();
+		elector.run();
+		verify(producerTemplate, times(0)).sendBody(
+				eq(ConsulLeaderElector.CONTROLBUS_ROUTE), anyString());
+		elector.run();
+
+		assertEquals(0, termination.getCalled());
+		verify(consulFacade, times(1)).initSessionKey(anyString());
+		verify(consulFacade, times(4)).pollConsul(eq(SERVICE_NAME));
+		verify(camelContext, times(4)).getRouteStatus(eq(ROUTE_ID));
+		verify(producerTemplate, times(1)).sendBody(
+				eq(ConsulLeaderElector.CONTROLBUS_ROUTE), anyString());
+	}
+
 	@Test
 	public void runWhenLoosingLeadership() throws Exception {
 		final TerminationMock termination = new TerminationMock();
@@ -205,4 +382,317 @@ public class ConsulLeaderElectorTest {
 		assertEquals(1, termination.getCalled());
 		verify(consulFacade, times(1)).initSessionKey(anyString());
 	}
+
+	@Test
+	public void watchResubmitsImmediatelyWhenLeaderKeyChanged() throws Exception {
+		final TerminationMock termination = new TerminationMock();
+		ConsulLeaderElector.TERMINATION_CALLBACK = termination;
+
+		when(consulFacade.initSessionKey(anyString()))
+				.thenReturn(Optional.of("SESSION"));
+		when(consulFacade.pollConsul(eq(SERVICE_NAME)))
+				.thenReturn(Optional.of(false));
+		when(consulFacade.awaitLeaderChange(eq(SERVICE_NAME), eq(TTL)))
+				.thenReturn(Optional.of(true));
+		when(camelContext.getRouteStatus(eq(ROUTE_ID)))
+				.thenReturn(ServiceStatus.Stopped);
+
+		final ConsulLeaderElector elector = new ConsulLeaderElector(consulFacade, SERVICE_NAME, ROUTE_ID, camelContext, producerTemplate,
+				true);
+		elector.watch(executor, TTL, RETRYPERIOD);
+
+		verify(consulFacade, times(1)).initSessionKey(anyString());
+		verify(consulFacade, times(1)).pollConsul(eq(SERVICE_NAME));
+		verify(consulFacade, times(1)).awaitLeaderChange(eq(SERVICE_NAME), eq(TTL));
+		verify(camelContext, times(1)).getRouteStatus(eq(ROUTE_ID));
+		verify(executor, times(1)).execute(any(Runnable.class));
+	}
+
+	@Test
+	public void watchBacksOffWhenBlockingQueryFails() throws Exception {
+		final TerminationMock termination = new TerminationMock();
+		ConsulLeaderElector.TERMINATION_CALLBACK = termination;
+
+		when(consulFacade.initSessionKey(anyString()))
+				.thenReturn(Optional.of("SESSION"));
+		when(consulFacade.pollConsul(eq(SERVICE_NAME)))
+				.thenReturn(Optional.of(false));
+		when(consulFacade.awaitLeaderChange(eq(SERVICE_NAME), eq(TTL)))
+				.thenReturn(Optional.empty());
+		when(camelContext.getRouteStatus(eq(ROUTE_ID)))
+				.thenReturn(ServiceStatus.Stopped);
+
+		final ConsulLeaderElector elector = new ConsulLeaderElector(consulFacade, SERVICE_NAME, ROUTE_ID, camelContext, producerTemplate,
+				true);
+		elector.watch(executor, TTL, RETRYPERIOD);
+
+		verify(consulFacade, times(1)).initSessionKey(anyString());
+		verify(consulFacade, times(1)).pollConsul(eq(SERVICE_NAME));
+		verify(consulFacade, times(1)).awaitLeaderChange(eq(SERVICE_NAME), eq(TTL));
+		verify(camelContext, times(1)).getRouteStatus(eq(ROUTE_ID));
+		verify(executor, times(1)).schedule(any(Runnable.class), eq((long) RETRYPERIOD), eq(TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void runForSeveralServicesPollsOnce() throws Exception {
+		final TerminationMock termination = new TerminationMock();
+		ConsulLeaderElector.TERMINATION_CALLBACK = termination;
+
+		final Map<String, String> routes = new LinkedHashMap<>();
+		routes.put("A", "ROUTE_A");
+		routes.put("B", "ROUTE_B");
+		final Map<String, Optional<Boolean>> results = new LinkedHashMap<>();
+		results.put("A", Optional.of(true));
+		results.put("B", Optional.of(false));
+
+		when(consulFacade.initSessionKey(anyString()))
+				.thenReturn(Optional.of("SESSION"));
+		when(consulFacade.pollConsul(eq(SERVICE_NAME), eq(routes.keySet())))
+				.thenReturn(results);
+		when(camelContext.getRouteStatus(eq("ROUTE_A")))
+				.thenReturn(ServiceStatus.Stopped);
+		when(camelContext.getRouteStatus(eq("ROUTE_B")))
+				.thenReturn(ServiceStatus.Stopped);
+
+		final ConsulLeaderElector elector = new ConsulLeaderElector(consulFacade, SERVICE_NAME, routes, camelContext, producerTemplate,
+				true);
+		elector.run();
+
+		assertEquals(0, termination.getCalled());
+		verify(consulFacade, times(1)).initSessionKey(eq(SERVICE_NAME));
+		verify(consulFacade, times(1)).pollConsul(eq(SERVICE_NAME), eq(routes.keySet()));
+		verify(camelContext, times(1)).getRouteStatus(eq("ROUTE_A"));
+		verify(camelContext, times(1)).getRouteStatus(eq("ROUTE_B"));
+		verify(producerTemplate, times(1)).sendBody(
+				eq(ConsulLeaderElector.CONTROLBUS_ROUTE), eq("${camelContext.startRoute(\"ROUTE_A\")}"));
+	}
+
+	@Test
+	public void runAsynchronouslySkipsWhilePollInFlight() throws Exception {
+		final TerminationMock termination = new TerminationMock();
+		ConsulLeaderElector.TERMINATION_CALLBACK = termination;
+
+		final CompletableFuture<Optional<Boolean>> pendingPoll = new CompletableFuture<>();
+		when(consulFacade.initSessionKey(anyString()))
+				.thenReturn(Optional.of("SESSION"));
+		when(consulFacade.pollConsulAsync(eq(SERVICE_NAME)))
+				.thenReturn(pendingPoll);
+		when(camelContext.getRouteStatus(eq(ROUTE_ID)))
+				.thenReturn(ServiceStatus.Stopped);
+
+		final ConsulLeaderElector elector = new ConsulLeaderElector(consulFacade, SERVICE_NAME, ROUTE_ID, camelContext, producerTemplate,
+				true);
+		elector.setAsynchronous(true);
+		elector.run();
+		elector.run();
+		pendingPoll.complete(Optional.of(true));
+
+		assertEquals(0, termination.getCalled());
+		verify(consulFacade, times(1)).initSessionKey(anyString());
+		verify(consulFacade, times(1)).pollConsulAsync(eq(SERVICE_NAME));
+		verify(camelContext, times(1)).getRouteStatus(eq(ROUTE_ID));
+		verify(producerTemplate, times(1)).sendBody(
+				eq(ConsulLeaderElector.CONTROLBUS_ROUTE), anyString());
+	}
+
+	@Test
+	public void runReportsPollsAndTransitions() throws Exception {
+		final TerminationMock termination = new TerminationMock();
+		ConsulLeaderElector.TERMINATION_CALLBACK = termination;
+		final ElectionMetrics metrics = mock(ElectionMetrics.class);
+
+		when(consulFacade.initSessionKey(anyString()))
+				.thenReturn(Optional.of("SESSION"));
+		when(consulFacade.pollConsul(eq(SERVICE_NAME)))
+				.thenReturn(Optional.of(true))
+				.thenReturn(Optional.of(true))
+				.thenReturn(Optional.of(false));
+		when(camelContext.getRouteStatus(eq(ROUTE_ID)))
+				.thenReturn(ServiceStatus.Stopped, ServiceStatus.Started, ServiceStatus.Started);
+
+		final ConsulLeaderElector elector = new ConsulLeaderElector(consulFacade, SERVICE_NAME, ROUTE_ID, camelContext, producerTemplate,
+				false);
+		elector.setMetrics(metrics);
+		elector.run();
+		elector.run();
+		elector.run();
+
+		assertEquals(0, termination.getCalled());
+		verify(consulFacade, times(1)).initSessionKey(anyString());
+		verify(consulFacade, times(3)).pollConsul(eq(SERVICE_NAME));
+		verify(camelContext, times(3)).getRouteStatus(eq(ROUTE_ID));
+		verify(producerTemplate, times(2)).sendBody(eq(ConsulLeaderElector.CONTROLBUS_ROUTE), anyString());
+		verify(metrics, times(2)).pollCompleted(SERVICE_NAME, Optional.of(true));
+		verify(metrics, times(1)).pollCompleted(SERVICE_NAME, Optional.of(false));
+		verify(metrics, times(1)).leadershipAcquired(SERVICE_NAME);
+		verify(metrics, times(1)).leadershipLost(SERVICE_NAME);
+		verify(metrics, times(1)).routeStateChanged(SERVICE_NAME, ROUTE_ID, true);
+		verify(metrics, times(1)).routeStateChanged(SERVICE_NAME, ROUTE_ID, false);
+		verifyNoMoreInteractions(metrics);
+	}
+
+	@Test
+	public void runUsesRouteControlStrategy() throws Exception {
+		final TerminationMock termination = new TerminationMock();
+		ConsulLeaderElector.TERMINATION_CALLBACK = termination;
+		final RouteControlStrategy routeControl = mock(RouteControlStrategy.class);
+
+		when(consulFacade.initSessionKey(anyString()))
+				.thenReturn(Optional.of("SESSION"));
+		when(consulFacade.pollConsul(eq(SERVICE_NAME)))
+				.thenReturn(Optional.of(true)).thenReturn(Optional.of(false));
+		when(camelContext.getRouteStatus(eq(ROUTE_ID)))
+				.thenReturn(ServiceStatus.Stopped, ServiceStatus.Started);
+
+		final ConsulLeaderElector elector = new ConsulLeaderElector(consulFacade, SERVICE_NAME, ROUTE_ID, camelContext, producerTemplate,
+				true);
+		elector.setRouteControl(routeControl);
+		elector.run();
+		elector.run();
+
+		assertEquals(0, termination.getCalled());
+		verify(consulFacade, times(1)).initSessionKey(anyString());
+		verify(consulFacade, times(2)).pollConsul(eq(SERVICE_NAME));
+		verify(camelContext, times(2)).getRouteStatus(eq(ROUTE_ID));
+		verify(routeControl, times(1)).startRoute(camelContext, ROUTE_ID);
+		verify(routeControl, times(1)).stopRoute(camelContext, ROUTE_ID);
+		verifyNoMoreInteractions(routeControl);
+	}
+
+	@Test
+	public void listenersAreNotifiedOfChangesOnly() throws Exception {
+		final TerminationMock termination = new TerminationMock();
+		ConsulLeaderElector.TERMINATION_CALLBACK = termination;
+		final LeadershipListener listener = mock(LeadershipListener.class);
+		final List<Runnable> dispatched = new ArrayList<>();
+
+		when(consulFacade.initSessionKey(anyString()))
+				.thenReturn(Optional.of("SESSION"));
+		when(consulFacade.pollConsul(eq(SERVICE_NAME)))
+				.thenReturn(Optional.of(true))
+				.thenReturn(Optional.of(true))
+				.thenReturn(Optional.empty())
+				.thenReturn(Optional.of(false));
+		when(camelContext.getRouteStatus(eq(ROUTE_ID)))
+				.thenReturn(ServiceStatus.Started);
+
+		final ConsulLeaderElector elector = new ConsulLeaderElector(consulFacade, SERVICE_NAME, ROUTE_ID, camelContext, producerTemplate,
+				true);
+		elector.setListenerExecutor(dispatched::add);
+		elector.addLeadershipListener(listener);
+		assertEquals(LeadershipState.UNKNOWN, elector.getLeadershipState(SERVICE_NAME));
+		elector.run();
+		assertTrue(elector.isLeader());
+		elector.run();
+		elector.run();
+		assertFalse(elector.isLeader());
+		assertEquals(LeadershipState.UNKNOWN, elector.getLeadershipState(SERVICE_NAME));
+		elector.run();
+		assertEquals(LeadershipState.FOLLOWER, elector.getLeadershipState(SERVICE_NAME));
+
+		// Nothing is called on the polling thread
+		verifyNoMoreInteractions(listener);
+		assertEquals(3, dispatched.size());
+		dispatched.forEach(Runnable::run);
+
+		final InOrder inOrder = inOrder(listener);
+		inOrder.verify(listener).onElected(SERVICE_NAME);
+		inOrder.verify(listener).onUnknown(SERVICE_NAME);
+		inOrder.verify(listener).onRevoked(SERVICE_NAME);
+		verifyNoMoreInteractions(listener);
+		assertEquals(0, termination.getCalled());
+		verify(consulFacade, times(1)).initSessionKey(anyString());
+		verify(consulFacade, times(4)).pollConsul(eq(SERVICE_NAME));
+		verify(camelContext, times(4)).getRouteStatus(eq(ROUTE_ID));
+		verify(producerTemplate, times(1)).sendBody(eq(ConsulLeaderElector.CONTROLBUS_ROUTE), anyString());
+	}
+
+	@Test
+	public void pollReschedulesByState() throws Exception {
+		final TerminationMock termination = new TerminationMock();
+		ConsulLeaderElector.TERMINATION_CALLBACK = termination;
+		final AdaptivePollSchedule schedule = new AdaptivePollSchedule(60, 5);
+
+		when(consulFacade.initSessionKey(anyString()))
+				.thenReturn(Optional.of("SESSION"));
+		when(consulFacade.pollConsul(eq(SERVICE_NAME)))
+				.thenReturn(Optional.of(true)).thenReturn(Optional.of(false));
+		when(consulFacade.isLeaderKeyVacant(eq(SERVICE_NAME)))
+				.thenReturn(true);
+		when(camelContext.getRouteStatus(eq(ROUTE_ID)))
+				.thenReturn(ServiceStatus.Started);
+
+		final ConsulLeaderElector elector = new ConsulLeaderElector(consulFacade, SERVICE_NAME, ROUTE_ID, camelContext, producerTemplate,
+				true);
+		elector.poll(executor, schedule);
+		elector.poll(executor, schedule);
+
+		final ArgumentCaptor<Long> delays = ArgumentCaptor.forClass(Long.class);
+		verify(executor, times(2)).schedule(any(Runnable.class), delays.capture(), eq(TimeUnit.MILLISECONDS));
+		assertTrue(delays.getAllValues().get(0) >= 18000);
+		assertTrue(delays.getAllValues().get(1) <= 1100);
+		assertEquals(0, termination.getCalled());
+		verify(consulFacade, times(1)).initSessionKey(anyString());
+		verify(consulFacade, times(2)).pollConsul(eq(SERVICE_NAME));
+		verify(consulFacade, times(1)).isLeaderKeyVacant(eq(SERVICE_NAME));
+		verify(camelContext, times(2)).getRouteStatus(eq(ROUTE_ID));
+		verify(producerTemplate, times(1)).sendBody(eq(ConsulLeaderElector.CONTROLBUS_ROUTE), anyString());
+	}
+
+	@Test
+	public void watchStepReturnsTheDelayUntilTheNextWatch() throws Exception {
+		final TerminationMock termination = new TerminationMock();
+		ConsulLeaderElector.TERMINATION_CALLBACK = termination;
+
+		when(consulFacade.initSessionKey(anyString()))
+				.thenReturn(Optional.of("SESSION"));
+		when(consulFacade.pollConsul(eq(SERVICE_NAME)))
+				.thenReturn(Optional.of(false));
+		when(consulFacade.awaitLeaderChange(eq(SERVICE_NAME), eq(TTL)))
+				.thenReturn(Optional.of(true)).thenReturn(Optional.empty());
+		when(camelContext.getRouteStatus(eq(ROUTE_ID)))
+				.thenReturn(ServiceStatus.Stopped);
+
+		final ConsulLeaderElector elector = new ConsulLeaderElector(consulFacade, SERVICE_NAME, ROUTE_ID, camelContext, producerTemplate,
+				true);
+		assertEquals(0, elector.watchStep(TTL, RETRYPERIOD));
+		assertEquals(TimeUnit.SECONDS.toMillis(RETRYPERIOD), elector.watchStep(TTL, RETRYPERIOD));
+
+		verify(consulFacade, times(1)).initSessionKey(anyString());
+		verify(consulFacade, times(2)).pollConsul(eq(SERVICE_NAME));
+		verify(consulFacade, times(2)).awaitLeaderChange(eq(SERVICE_NAME), eq(TTL));
+		verify(camelContext, times(2)).getRouteStatus(eq(ROUTE_ID));
+	}
+
+	@Test
+	public void loopElectsUntilContextStops() throws Exception {
+		final TerminationMock termination = new TerminationMock();
+		ConsulLeaderElector.TERMINATION_CALLBACK = termination;
+
+		when(consulFacade.initSessionKey(anyString()))
+				.thenReturn(Optional.of("SESSION"));
+		when(consulFacade.pollConsul(eq(SERVICE_NAME)))
+				.thenReturn(Optional.of(false));
+		when(camelContext.getRouteStatus(eq(ROUTE_ID)))
+				.thenReturn(ServiceStatus.Stopped);
+
+		final ConsulLeaderElector elector = new ConsulLeaderElector(consulFacade, SERVICE_NAME, ROUTE_ID, camelContext, producerTemplate,
+				true);
+		final AtomicInteger steps = new AtomicInteger();
+		final Thread thread = new Thread(elector.loop(0, () -> {
+			if (steps.incrementAndGet() == 3) {
+				elector.onContextStop(camelContext);
+			}
+			return elector.electStep(1);
+		}));
+		elector.startLoop(thread);
+		thread.join(TimeUnit.SECONDS.toMillis(5));
+
+		assertFalse(thread.isAlive());
+		assertEquals(3, steps.get());
+		verify(consulFacade, times(1)).initSessionKey(anyString());
+		verify(consulFacade, times(3)).pollConsul(eq(SERVICE_NAME));
+		verify(consulFacade, times(1)).close();
+		verify(camelContext, times(3)).getRouteStatus(eq(ROUTE_ID));
+	}
 }
@@ -0,0 +1,85 @@
+package jhberges.camel.consul.leader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ConsulResponseParserTest {
+	private static final String KEY_RESPONSE = "[{\"LockIndex\":3,\"Key\":\"service/x/leader\",\"Flags\":0,"
+			+ "\"Value\":\"aG9zdDo4MDgw\",\"Session\":\"SESSION\",\"CreateIndex\":10,\"ModifyIndex\":42}]";
+
+	@Test
+	public void keyState() throws IOException {
+		final ConsulResponseParser.KeyState state = ConsulResponseParser.keyState(KEY_RESPONSE.getBytes()).get();
+		assertEquals(Optional.of("SESSION"), state.getSession());
+		assertEquals(3, state.getLockIndex());
+		assertEquals(42, state.getModifyIndex());
+		assertEquals(Optional.of("aG9zdDo4MDgw"), state.getValue());
+	}
+
+	@Test
+	public void keyStateOfUnlockedKey() throws IOException {
+		final ConsulResponseParser.KeyState state = ConsulResponseParser.keyState(
+				"[{\"LockIndex\":0,\"Key\":\"service/x/leader\",\"Value\":null}]".getBytes()).get();
+		assertFalse(state.getSession().isPresent());
+		assertFalse(state.getValue().isPresent());
+	}
+
+	@Test
+	public void leaderKeyStates() throws IOException {
+		final Map<String, ConsulResponseParser.KeyState> states = ConsulResponseParser.leaderKeyStates(("["
+				+ "{\"LockIndex\":3,\"Key\":\"service/a/leader\",\"Session\":\"A\",\"Value\":\"eA==\",\"ModifyIndex\":17},"
+				+ "{\"LockIndex\":2,\"Key\":\"service/b/leader\",\"Value\":null},"
+				+ "{\"Key\":\"service/c/config\",\"Session\":\"C\"}]").getBytes());
+		assertEquals(2, states.size());
+		assertEquals(Optional.of("A"), states.get("a").getSession());
+		assertEquals(3, states.get("a").getLockIndex());
+		assertEquals(17, states.get("a").getModifyIndex());
+		assertEquals(Optional.of("eA=="), states.get("a").getValue());
+		assertFalse(states.get("b").getSession().isPresent());
+		assertEquals(2, states.get("b").getLockIndex());
+	}
+
+	@Test
+	public void countSessionsNamed() throws IOException {
+		final byte[] sessions = ("["
+				+ "{\"ID\":\"1\",\"Name\":\"orders\",\"Checks\":[\"serfHealth\"],\"TTL\":\"10s\"},"
+				+ "{\"ID\":\"2\",\"Name\":\"billing\"},"
+				+ "{\"ID\":\"3\",\"Name\":\"orders\"}]").getBytes();
+		assertEquals(2, ConsulResponseParser.countSessionsNamed(sessions, "orders"));
+		assertEquals(0, ConsulResponseParser.countSessionsNamed("[]".getBytes(), "orders"));
+	}
+
+	@Test
+	public void sessionId() throws IOException {
+		assertEquals(Optional.of("SESSION"), ConsulResponseParser.sessionId("{\"ID\":\"SESSION\"}".getBytes()));
+		assertFalse(ConsulResponseParser.sessionId("{\"Nope\":{\"ID\":\"X\"}}".getBytes()).isPresent());
+	}
+
+	@Test
+	public void lastTransactionKeyState() throws IOException {
+		final ConsulResponseParser.KeyState state = ConsulResponseParser.lastTransactionKeyState(("{\"Results\":["
+				+ "{\"KV\":{\"Key\":\"service/x/leader\",\"Session\":\"S\",\"LockIndex\":1,\"ModifyIndex\":5}},"
+				+ "{\"KV\":{\"Key\":\"service/x/leader\",\"Session\":\"S\",\"LockIndex\":2,\"ModifyIndex\":6}}],"
+				+ "\"Errors\":null}").getBytes()).get();
+		assertEquals(2, state.getLockIndex());
+		assertFalse(ConsulResponseParser.lastTransactionKeyState("{\"Results\":null,\"Errors\":[]}".getBytes()).isPresent());
+	}
+
+	@Test
+	public void requestBodiesAreValidJson() throws IOException {
+		final ObjectMapper objectMapper = new ObjectMapper();
+		assertEquals("quo\"ted", objectMapper.readTree(ConsulResponseParser.sessionBody("quo\"ted", 10, 0)).get("Name").asText());
+		assertEquals("check-session", objectMapper.readTree(
+				ConsulResponseParser.transactionBody("service/x/leader", "S", true)).get(0).get("KV").get("Verb").asText());
+		assertEquals("eA==", objectMapper.readTree(ConsulResponseParser.transactionBody("service/x/leader", "S", false,
+				Optional.of("eA=="))).get(0).get("KV").get("Value").asText());
+	}
+}
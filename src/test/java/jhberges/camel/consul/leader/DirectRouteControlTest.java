@@ -0,0 +1,87 @@
+package jhberges.camel.consul.leader;
+
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.ServiceStatus;
+import org.apache.camel.spi.ShutdownStrategy;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DirectRouteControlTest {
+	private static final String ROUTE_ID = "ROUTE_ID";
+	@Mock
+	private CamelContext camelContext;
+	@Mock
+	private ShutdownStrategy shutdownStrategy;
+
+	@After
+	public void after() {
+		verifyNoMoreInteractions(camelContext);
+	}
+
+	@Test
+	public void startAndStopWithCamelShutdownTimeout() throws Exception {
+		when(camelContext.getShutdownStrategy()).thenReturn(shutdownStrategy);
+		when(shutdownStrategy.getTimeout()).thenReturn(300L);
+		when(shutdownStrategy.getTimeUnit()).thenReturn(TimeUnit.SECONDS);
+		when(camelContext.getRouteStatus(eq(ROUTE_ID))).thenReturn(ServiceStatus.Stopped);
+
+		final DirectRouteControl routeControl = new DirectRouteControl();
+		routeControl.startRoute(camelContext, ROUTE_ID);
+		routeControl.stopRoute(camelContext, ROUTE_ID);
+
+		verify(camelContext, times(1)).getRouteStatus(eq(ROUTE_ID));
+		verify(camelContext, times(1)).startRoute(eq(ROUTE_ID));
+		verify(camelContext, times(2)).getShutdownStrategy();
+		verify(camelContext, times(1)).stopRoute(eq(ROUTE_ID), eq(300L), eq(TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void suspendAndResume() throws Exception {
+		when(camelContext.getRouteStatus(eq(ROUTE_ID))).thenReturn(ServiceStatus.Suspended);
+
+		final DirectRouteControl routeControl = new DirectRouteControl()
+				.suspendingInsteadOfStopping(true)
+				.withStopTimeout(5, TimeUnit.SECONDS);
+		routeControl.stopRoute(camelContext, ROUTE_ID);
+		routeControl.startRoute(camelContext, ROUTE_ID);
+
+		verify(camelContext, times(1)).suspendRoute(eq(ROUTE_ID), eq(5L), eq(TimeUnit.SECONDS));
+		verify(camelContext, times(1)).getRouteStatus(eq(ROUTE_ID));
+		verify(camelContext, times(1)).resumeRoute(eq(ROUTE_ID));
+	}
+
+	@Test
+	public void asynchronousStopDefersStartUntilStopped() throws Exception {
+		final List<Runnable> pending = new ArrayList<>();
+		when(camelContext.getRouteStatus(eq(ROUTE_ID))).thenReturn(ServiceStatus.Stopped);
+
+		final DirectRouteControl routeControl = new DirectRouteControl()
+				.withStopTimeout(5, TimeUnit.SECONDS)
+				.stoppingAsynchronously(pending::add);
+		routeControl.stopRoute(camelContext, ROUTE_ID);
+		routeControl.stopRoute(camelContext, ROUTE_ID);
+		routeControl.startRoute(camelContext, ROUTE_ID);
+		verifyNoMoreInteractions(camelContext);
+
+		pending.forEach(Runnable::run);
+		routeControl.startRoute(camelContext, ROUTE_ID);
+
+		verify(camelContext, times(1)).stopRoute(eq(ROUTE_ID), eq(5L), eq(TimeUnit.SECONDS));
+		verify(camelContext, times(1)).getRouteStatus(eq(ROUTE_ID));
+		verify(camelContext, times(1)).startRoute(eq(ROUTE_ID));
+	}
+}
@@ -0,0 +1,427 @@
+package jhberges.camel.consul.leader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ElectionSimulationTest {
+	private static final Logger logger = LoggerFactory.getLogger(ElectionSimulationTest.class);
+	private static final String SERVICE_NAME = "simulated-service";
+	private static final String LEADER_KEY = "service/" + SERVICE_NAME + "/leader";
+	private static final int NODES = 1000;
+	private static final int TTL_IN_SECONDS = 10;
+	private static final int LOCK_DELAY_IN_SECONDS = 1;
+	private static final int POLL_INTERVAL_IN_SECONDS = 5;
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private FakeConsul consul;
+
+	@Before
+	public void before() {
+		consul = new FakeConsul();
+	}
+
+	private ConsulFacadeBean facade(final String nodeName) {
+		final ConsulFacadeBean facade = new ConsulFacadeBean(FakeConsul.URL, consul.node(nodeName),
+				TTL_IN_SECONDS, LOCK_DELAY_IN_SECONDS, 1, 1, 1.0);
+		facade.initSessionKey(SERVICE_NAME);
+		return facade;
+	}
+
+	private List<ConsulFacadeBean> cluster(final int size, final boolean useTransactions) {
+		final List<ConsulFacadeBean> facades = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			final ConsulFacadeBean facade = facade("node-" + i);
+			facade.setUseTransactions(useTransactions);
+			facades.add(facade);
+		}
+		return facades;
+	}
+
+	/**
+	 * @return index of each node that believes it is leader after one poll round
+	 */
+	private List<Integer> pollAll(final List<ConsulFacadeBean> facades) {
+		final List<Integer> leaders = new ArrayList<>();
+		for (int i = 0; i < facades.size(); i++) {
+			if (facades.get(i).pollConsul(SERVICE_NAME).orElse(false)) {
+				leaders.add(i);
+			}
+		}
+		return leaders;
+	}
+
+	@Test
+	public void exactlyOneOfManyNodesIsLeader() {
+		final List<ConsulFacadeBean> facades = cluster(NODES, false);
+		assertEquals(1, pollAll(facades).size());
+		consul.advance(POLL_INTERVAL_IN_SECONDS, TimeUnit.SECONDS);
+		assertEquals(1, pollAll(facades).size());
+	}
+
+	@Test
+	public void exactlyOneOfManyNodesIsLeaderUsingTransactions() {
+		final List<ConsulFacadeBean> facades = cluster(NODES, true);
+		assertEquals(1, pollAll(facades).size());
+		consul.advance(POLL_INTERVAL_IN_SECONDS, TimeUnit.SECONDS);
+		assertEquals(1, pollAll(facades).size());
+	}
+
+	@Test
+	public void followerTakesOverAfterLeaderIsPartitioned() {
+		final List<ConsulFacadeBean> facades = cluster(NODES, false);
+		final int leader = pollAll(facades).get(0);
+		consul.node("node-" + leader).reachable(false);
+		final long partitionedAt = consul.now();
+
+		List<Integer> leaders;
+		do {
+			consul.advance(POLL_INTERVAL_IN_SECONDS, TimeUnit.SECONDS);
+			leaders = pollAll(facades);
+		} while (leaders.isEmpty() && consul.now() - partitionedAt < TimeUnit.MINUTES.toMillis(1));
+
+		final long failoverInMillis = consul.now() - partitionedAt;
+		logger.info("Failover among {} nodes took {}ms (virtual), {} requests in total", NODES, failoverInMillis,
+				consul.getRequestCount());
+		assertEquals(1, leaders.size());
+		assertTrue(leaders.get(0) != leader);
+		// The lock is only free once the TTL has run out and the lock-delay has passed, and is then taken on the next poll
+		assertTrue(failoverInMillis >= TimeUnit.SECONDS.toMillis(TTL_IN_SECONDS + LOCK_DELAY_IN_SECONDS));
+		assertTrue(failoverInMillis <= TimeUnit.SECONDS.toMillis(TTL_IN_SECONDS + LOCK_DELAY_IN_SECONDS + POLL_INTERVAL_IN_SECONDS));
+
+		// The old leader comes back with an invalidated session, and must not believe it still leads
+		consul.node("node-" + leader).reachable(true);
+		assertEquals(Optional.of(false), facades.get(leader).pollConsul(SERVICE_NAME));
+		assertEquals(leaders, pollAll(facades));
+	}
+
+	@Test
+	public void fencingTokenOfNewLeaderIsHigher() {
+		final List<ConsulFacadeBean> facades = cluster(3, true);
+		final int leader = pollAll(facades).get(0);
+		final long token = facades.get(leader).getFencingToken(SERVICE_NAME).get();
+		consul.node("node-" + leader).reachable(false);
+
+		List<Integer> leaders;
+		do {
+			consul.advance(POLL_INTERVAL_IN_SECONDS, TimeUnit.SECONDS);
+			leaders = pollAll(facades);
+		} while (leaders.isEmpty());
+
+		assertTrue(facades.get(leaders.get(0)).getFencingToken(SERVICE_NAME).get() > token);
+		// The old leader cannot tell it has been replaced, and keeps its (now stale) token
+		assertEquals(Optional.of(token), facades.get(leader).getFencingToken(SERVICE_NAME));
+	}
+
+	@Test
+	public void releasedLeadershipIsTakenOverWithoutLockDelay() {
+		final ConsulFacadeBean leader = facade("leader");
+		final ConsulFacadeBean follower = facade("follower");
+		assertEquals(Optional.of(true), leader.pollConsul(SERVICE_NAME));
+		assertEquals(Optional.of(false), follower.pollConsul(SERVICE_NAME));
+
+		final CompletableFuture<Optional<Boolean>> change = follower.awaitLeaderChangeAsync(SERVICE_NAME, 30);
+		leader.holdOff(SERVICE_NAME, TimeUnit.MINUTES.toMillis(1));
+		assertTrue(leader.releaseLeadership(SERVICE_NAME));
+		assertEquals(Optional.of(true), change.getNow(Optional.empty()));
+		// Held off, the leader does not take the vacant key back
+		assertEquals(Optional.of(false), leader.pollConsul(SERVICE_NAME));
+		assertFalse(consul.holder(LEADER_KEY).isPresent());
+		// Neither has the clock moved, so there was no lock-delay to wait out
+		assertEquals(Optional.of(true), follower.pollConsul(SERVICE_NAME));
+	}
+
+	@Test
+	public void restartedLeaderResumesWithItsSavedSession() throws Exception {
+		final Path stateFile = temporaryFolder.getRoot().toPath().resolve("leader.session");
+		final ConsulFacadeBean leader = new ConsulFacadeBean(FakeConsul.URL, consul.node("leader"),
+				TTL_IN_SECONDS, LOCK_DELAY_IN_SECONDS, 1, 1, 1.0);
+		leader.setSessionStateFile(stateFile);
+		final Optional<String> session = leader.initSessionKey(SERVICE_NAME);
+		final ConsulFacadeBean follower = facade("follower");
+		assertEquals(Optional.of(true), leader.pollConsul(SERVICE_NAME));
+		final Optional<Long> token = leader.getFencingToken(SERVICE_NAME);
+		leader.setKeepingSessionOnClose(true);
+		leader.close();
+		assertEquals(session, consul.holder(LEADER_KEY));
+
+		// Back within the TTL: the session is renewed and reused, and still leads
+		consul.advance(TTL_IN_SECONDS / 2, TimeUnit.SECONDS);
+		final ConsulFacadeBean restarted = new ConsulFacadeBean(FakeConsul.URL, consul.node("leader"),
+				TTL_IN_SECONDS, LOCK_DELAY_IN_SECONDS, 1, 1, 1.0);
+		restarted.setSessionStateFile(stateFile);
+		assertEquals(session, restarted.initSessionKey(SERVICE_NAME));
+		assertEquals(token, restarted.getFencingToken(SERVICE_NAME));
+		assertEquals(Optional.of(false), follower.pollConsul(SERVICE_NAME));
+		assertEquals(Optional.of(true), restarted.pollConsul(SERVICE_NAME));
+		restarted.setKeepingSessionOnClose(true);
+		restarted.close();
+
+		// Back too late: the saved session has expired, and a new one is created
+		consul.advance(TTL_IN_SECONDS + LOCK_DELAY_IN_SECONDS, TimeUnit.SECONDS);
+		final ConsulFacadeBean late = new ConsulFacadeBean(FakeConsul.URL, consul.node("leader"),
+				TTL_IN_SECONDS, LOCK_DELAY_IN_SECONDS, 1, 1, 1.0);
+		late.setSessionStateFile(stateFile);
+		final Optional<String> newSession = late.initSessionKey(SERVICE_NAME);
+		assertTrue(newSession.isPresent());
+		assertFalse(session.equals(newSession));
+		assertTrue(new String(Files.readAllBytes(stateFile), "UTF-8").contains(newSession.get()));
+		late.close();
+		assertFalse(consul.isSessionValid(newSession.get()));
+	}
+
+	@Test
+	public void stoppedLeaderWithoutRestartGivesUpItsSavedSession() throws Exception {
+		final Path stateFile = temporaryFolder.getRoot().toPath().resolve("leader.session");
+		final ConsulFacadeBean leader = new ConsulFacadeBean(FakeConsul.URL, consul.node("leader"),
+				TTL_IN_SECONDS, LOCK_DELAY_IN_SECONDS, 1, 1, 1.0);
+		leader.setSessionStateFile(stateFile);
+		final Optional<String> session = leader.initSessionKey(SERVICE_NAME);
+		assertEquals(Optional.of(true), leader.pollConsul(SERVICE_NAME));
+
+		// Another facade given the same file would restore the same session, and lead as well
+		final ConsulFacadeBean twin = facade("twin");
+		try {
+			twin.setSessionStateFile(stateFile);
+			fail("State file in use by the leader");
+		} catch (final IllegalStateException e) {
+			assertFalse(twin.isKeepingSession());
+		}
+
+		leader.close();
+		assertFalse(consul.isSessionValid(session.get()));
+		assertFalse(consul.holder(LEADER_KEY).isPresent());
+		// Released along with the session, so the file may be used again, and holds no session to restore
+		twin.setSessionStateFile(stateFile);
+		assertNotEquals(session, twin.initSessionKey(SERVICE_NAME));
+	}
+
+	@Test
+	public void leaderAddressIsPublishedWithTheLock() {
+		for (final boolean useTransactions : new boolean[] { false, true }) {
+			consul = new FakeConsul();
+			final ConsulFacadeBean leader = facade("leader");
+			final ConsulFacadeBean follower = facade("follower");
+			leader.setUseTransactions(useTransactions);
+			follower.setUseTransactions(useTransactions);
+			leader.setAdvertisedAddress("direct-vm:leader");
+			follower.setAdvertisedAddress("direct-vm:follower");
+			assertEquals(Optional.of(true), leader.pollConsul(SERVICE_NAME));
+			assertEquals(Optional.of("direct-vm:leader"), leader.getLeaderAddress(SERVICE_NAME));
+			assertFalse(follower.getLeaderAddress(SERVICE_NAME).isPresent());
+			assertEquals(Optional.of(false), follower.pollConsul(SERVICE_NAME));
+			assertEquals(Optional.of("direct-vm:leader"), follower.getLeaderAddress(SERVICE_NAME));
+
+			// Handed over, the old leader finds the new one's address
+			leader.holdOff(SERVICE_NAME, TimeUnit.MINUTES.toMillis(1));
+			assertTrue(leader.releaseLeadership(SERVICE_NAME));
+			assertFalse(leader.getLeaderAddress(SERVICE_NAME).isPresent());
+			assertEquals(Optional.of(true), follower.pollConsul(SERVICE_NAME));
+			assertEquals(Optional.of(false), leader.pollConsul(SERVICE_NAME));
+			assertEquals(Optional.of("direct-vm:follower"), leader.getLeaderAddress(SERVICE_NAME));
+
+			// As does an observer, without a session
+			final ConsulFacadeBean observer = new ConsulFacadeBean(FakeConsul.URL, consul.node("observer"));
+			assertEquals(Optional.of("direct-vm:follower"), observer.readLeaderAddress(SERVICE_NAME));
+		}
+	}
+
+	@Test
+	public void heldOffLeaderReleasesOnNextPoll() {
+		final ConsulFacadeBean leader = facade("leader");
+		final ConsulFacadeBean follower = facade("follower");
+		assertEquals(Optional.of(true), leader.pollConsul(SERVICE_NAME));
+
+		leader.holdOff(SERVICE_NAME, TimeUnit.MINUTES.toMillis(1));
+		assertEquals(Optional.of(false), leader.pollConsul(SERVICE_NAME));
+		assertFalse(consul.holder(LEADER_KEY).isPresent());
+		assertEquals(Optional.of(true), follower.pollConsul(SERVICE_NAME));
+
+		// Once the hold-off is over it is an ordinary follower again
+		leader.holdOff(SERVICE_NAME, 0);
+		assertEquals(Optional.of(false), leader.pollConsul(SERVICE_NAME));
+	}
+
+	@Test
+	public void leaderLeaseSkipsLeaderKeyReads() throws Exception {
+		final ConsulFacadeBean leader = facade("leader");
+		leader.setLeaderLeaseInMillis(TimeUnit.MINUTES.toMillis(1));
+		assertEquals(Optional.of(true), leader.pollConsul(SERVICE_NAME));
+
+		// Within the lease (capped at half the TTL) only the session is renewed
+		long requests = consul.getRequestCount();
+		consul.advance(POLL_INTERVAL_IN_SECONDS, TimeUnit.SECONDS);
+		assertEquals(Optional.of(true), leader.pollConsul(SERVICE_NAME));
+		assertEquals(requests + 1, consul.getRequestCount());
+
+		// A failed renewal ends the lease: the session is recreated, and the key read (and held back by lock-delay)
+		consul.node("leader").failNext(1, 500);
+		assertEquals(Optional.of(false), leader.pollConsul(SERVICE_NAME));
+		consul.advance(LOCK_DELAY_IN_SECONDS, TimeUnit.SECONDS);
+		assertEquals(Optional.of(true), leader.pollConsul(SERVICE_NAME));
+
+		// As does time
+		leader.setLeaderLeaseInMillis(1);
+		assertEquals(Optional.of(true), leader.pollConsul(SERVICE_NAME));
+		Thread.sleep(10);
+		requests = consul.getRequestCount();
+		assertEquals(Optional.of(true), leader.pollConsul(SERVICE_NAME));
+		assertEquals(requests + 2, consul.getRequestCount());
+	}
+
+	private static final int PARTITIONS = 8;
+
+	private static List<String> partitions() {
+		final List<String> partitions = new ArrayList<>();
+		for (int i = 0; i < PARTITIONS; i++) {
+			partitions.add(SERVICE_NAME + "/" + i);
+		}
+		return partitions;
+	}
+
+	/**
+	 * @return number of partitions each node believes it leads after one poll round
+	 */
+	private List<Integer> pollPartitions(final List<ConsulFacadeBean> facades) {
+		final List<Integer> owned = new ArrayList<>();
+		for (final ConsulFacadeBean facade : facades) {
+			owned.add((int) facade.pollConsul(SERVICE_NAME, partitions()).values().stream()
+					.filter(isLeader -> isLeader.orElse(false))
+					.count());
+		}
+		return owned;
+	}
+
+	private int heldPartitions() {
+		return (int) partitions().stream().filter(partition -> consul.holder("service/" + partition + "/leader").isPresent()).count();
+	}
+
+	@Test
+	public void partitionsAreSharedFairlyAndRebalanced() {
+		final List<ConsulFacadeBean> facades = cluster(3, false);
+		facades.forEach(facade -> facade.setFairShare(true));
+		assertEquals(Arrays.asList(3, 3, 2), pollPartitions(facades));
+		assertEquals(PARTITIONS, heldPartitions());
+
+		// A node leaves; once its session expires the others take over its partitions
+		consul.node("node-2").reachable(false);
+		final List<ConsulFacadeBean> remaining = new ArrayList<>(facades.subList(0, 2));
+		List<Integer> owned;
+		do {
+			consul.advance(POLL_INTERVAL_IN_SECONDS, TimeUnit.SECONDS);
+			owned = pollPartitions(remaining);
+		} while (owned.get(0) + owned.get(1) < PARTITIONS && consul.now() < TimeUnit.MINUTES.toMillis(1));
+		assertEquals(Arrays.asList(4, 4), owned);
+
+		// A node joins; the others give up what is beyond their share, and it picks that up
+		final ConsulFacadeBean joining = facade("node-3");
+		joining.setFairShare(true);
+		remaining.add(joining);
+		consul.advance(POLL_INTERVAL_IN_SECONDS, TimeUnit.SECONDS);
+		assertEquals(Arrays.asList(3, 3, 2), pollPartitions(remaining));
+		assertEquals(PARTITIONS, heldPartitions());
+		consul.advance(POLL_INTERVAL_IN_SECONDS, TimeUnit.SECONDS);
+		assertEquals(Arrays.asList(3, 3, 2), pollPartitions(remaining));
+	}
+
+	@Test
+	public void blockingQueryReturnsWhenLeaderSessionExpires() {
+		final ConsulFacadeBean leader = facade("leader");
+		final ConsulFacadeBean follower = facade("follower");
+		assertEquals(Optional.of(true), leader.pollConsul(SERVICE_NAME));
+		assertEquals(Optional.of(false), follower.pollConsul(SERVICE_NAME));
+		final String leaderSession = consul.holder(LEADER_KEY).get();
+
+		final CompletableFuture<Optional<Boolean>> change = follower.awaitLeaderChangeAsync(SERVICE_NAME, 30);
+		consul.advance(TTL_IN_SECONDS - 1, TimeUnit.SECONDS);
+		assertFalse(change.isDone());
+		consul.advance(1, TimeUnit.SECONDS);
+		assertEquals(Optional.of(true), change.getNow(Optional.empty()));
+		assertFalse(consul.isSessionValid(leaderSession));
+		assertFalse(consul.holder(LEADER_KEY).isPresent());
+
+		// Still within lock-delay
+		assertEquals(Optional.of(false), follower.pollConsul(SERVICE_NAME));
+		consul.advance(LOCK_DELAY_IN_SECONDS, TimeUnit.SECONDS);
+		assertEquals(Optional.of(true), follower.pollConsul(SERVICE_NAME));
+	}
+
+	@Test
+	public void blockingQueryTimesOutWithoutChange() {
+		final ConsulFacadeBean leader = facade("leader");
+		final ConsulFacadeBean follower = facade("follower");
+		assertEquals(Optional.of(true), leader.pollConsul(SERVICE_NAME));
+		assertEquals(Optional.of(false), follower.pollConsul(SERVICE_NAME));
+
+		final CompletableFuture<Optional<Boolean>> change = follower.awaitLeaderChangeAsync(SERVICE_NAME, 5);
+		consul.advance(4, TimeUnit.SECONDS);
+		assertFalse(change.isDone());
+		consul.advance(1, TimeUnit.SECONDS);
+		assertEquals(Optional.of(false), change.getNow(Optional.empty()));
+	}
+
+	@Test
+	public void injectedFailuresAndLatency() {
+		final ConsulFacadeBean facade = facade("flaky");
+		consul.node("flaky").failNext(1, 500);
+		// A failed renew makes the facade start over with a new session
+		assertEquals(Optional.of(true), facade.pollConsul(SERVICE_NAME));
+
+		consul.node("flaky").withLatency(50);
+		final long started = System.nanoTime();
+		assertEquals(Optional.of(true), facade.pollConsul(SERVICE_NAME));
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) >= 100);
+	}
+
+	@Test
+	public void metricsFollowFailover() throws Exception {
+		final MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+		try (final JmxElectionMetrics metrics = new JmxElectionMetrics(mBeanServer)) {
+			final ConsulFacadeBean leader = facade("leader");
+			final ConsulFacadeBean follower = facade("follower");
+			follower.setMetrics(metrics);
+			assertEquals(Optional.of(true), leader.pollConsul(SERVICE_NAME));
+			assertEquals(Optional.of(false), follower.pollConsul(SERVICE_NAME));
+
+			// Neither renews in time; the follower recreates its session and finds the key vacant, but within lock-delay
+			consul.advance(TTL_IN_SECONDS, TimeUnit.SECONDS);
+			assertEquals(Optional.of(false), follower.pollConsul(SERVICE_NAME));
+			consul.advance(LOCK_DELAY_IN_SECONDS, TimeUnit.SECONDS);
+			assertEquals(Optional.of(true), follower.pollConsul(SERVICE_NAME));
+
+			final ElectionStatisticsMXBean statistics = metrics.statistics(SERVICE_NAME);
+			assertEquals(1, statistics.getSessionRecreations());
+			assertEquals(3, statistics.getRenew().getCount());
+			assertEquals(1, statistics.getRenew().getFailures());
+			// Including the read-back of the fencing token once acquired
+			assertEquals(4, statistics.getCheck().getCount());
+			assertEquals(3, statistics.getAcquire().getCount());
+			assertEquals(0, statistics.getAcquire().getFailures());
+			assertTrue(statistics.getMaxFailoverMillis() >= 0);
+			assertEquals(statistics.getMaxFailoverMillis(), statistics.getLastFailoverMillis());
+		}
+	}
+}
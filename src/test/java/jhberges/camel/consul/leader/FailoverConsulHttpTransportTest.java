@@ -0,0 +1,161 @@
+package jhberges.camel.consul.leader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.ConnectException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class FailoverConsulHttpTransportTest {
+	private static final String SERVICE_NAME = "failover-service";
+	private static final String AGENT_A = "http://agent-a:8500";
+	private static final String AGENT_B = "http://agent-b:8500";
+	private static final String AGENT_C = "http://agent-c:8500";
+	private static final long OPEN_CIRCUIT_IN_MILLIS = 1000;
+
+	private FakeConsul consul;
+	private final AtomicLong nanos = new AtomicLong();
+	private final List<String> hosts = Collections.synchronizedList(new ArrayList<>());
+	private final Map<String, Long> latencyInMillis = new HashMap<>();
+	private FailoverConsulHttpTransport transport;
+
+	@Before
+	public void before() {
+		consul = new FakeConsul();
+		// Each agent is a node of the same fake cluster
+		transport = new FailoverConsulHttpTransport(AGENT_A, Arrays.asList(AGENT_B, AGENT_C), request -> {
+			final String host = URI.create(request.getUri()).getHost();
+			hosts.add(host);
+			nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(latencyInMillis.getOrDefault(host, 1L)));
+			return consul.node(host).execute(request);
+		}, OPEN_CIRCUIT_IN_MILLIS, 4 * OPEN_CIRCUIT_IN_MILLIS, nanos::get);
+	}
+
+	private ConsulFacadeBean facade() {
+		final ConsulFacadeBean facade = new ConsulFacadeBean(AGENT_A, transport, 10, 0, 1, 1, 1.0);
+		facade.initSessionKey(SERVICE_NAME);
+		return facade;
+	}
+
+	private ConsulHttpResponse get() {
+		return transport.execute(ConsulHttpRequest.get(AGENT_A + "/v1/kv/service/" + SERVICE_NAME + "/leader")).join();
+	}
+
+	@Test
+	public void failsOverWithinTheSameRequest() {
+		final ConsulFacadeBean facade = facade();
+		assertEquals(Optional.of(true), facade.pollConsul(SERVICE_NAME));
+		final Optional<String> session = consul.holder("service/" + SERVICE_NAME + "/leader");
+
+		consul.node("agent-a").reachable(false);
+		hosts.clear();
+		assertEquals(Optional.of(true), facade.pollConsul(SERVICE_NAME));
+		assertEquals(session, consul.holder("service/" + SERVICE_NAME + "/leader"));
+		assertEquals("agent-a", hosts.get(0));
+		assertEquals(1, Collections.frequency(hosts, "agent-a"));
+	}
+
+	@Test
+	public void openCircuitSkipsTheFailingAgentUntilItCloses() {
+		consul.node("agent-a").reachable(false);
+		assertEquals(404, get().getStatusCode());
+		assertEquals(Arrays.asList("agent-a", "agent-b"), hosts);
+
+		hosts.clear();
+		get();
+		get();
+		assertFalse(hosts.contains("agent-a"));
+
+		consul.node("agent-a").reachable(true);
+		nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_CIRCUIT_IN_MILLIS));
+		hosts.clear();
+		for (int i = 0; i < 3; i++) {
+			get();
+		}
+		assertTrue(hosts.contains("agent-a"));
+	}
+
+	@Test
+	public void repeatedFailuresKeepTheCircuitOpenLonger() {
+		consul.node("agent-a").reachable(false);
+		get();
+		nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_CIRCUIT_IN_MILLIS));
+		get();
+		hosts.clear();
+		// Opened for twice as long after the second failure
+		nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_CIRCUIT_IN_MILLIS));
+		get();
+		assertFalse(hosts.contains("agent-a"));
+	}
+
+	@Test
+	public void prefersTheFastestAgent() {
+		latencyInMillis.put("agent-a", 50L);
+		latencyInMillis.put("agent-b", 20L);
+		latencyInMillis.put("agent-c", 5L);
+		for (int i = 0; i < 3; i++) {
+			get();
+		}
+		assertEquals(Arrays.asList("agent-a", "agent-b", "agent-c"), hosts);
+		hosts.clear();
+		for (int i = 0; i < 5; i++) {
+			get();
+		}
+		assertEquals(Collections.nCopies(5, "agent-c"), hosts);
+	}
+
+	@Test
+	public void serverErrorsOtherThanUnavailableArePassedOn() {
+		consul.node("agent-a").failNext(1, 503);
+		assertEquals(404, get().getStatusCode());
+		assertEquals(Arrays.asList("agent-a", "agent-b"), hosts);
+
+		// A 500 is Consul refusing the request (e.g. an invalid session), which another agent would refuse as well
+		consul.node("agent-b").failNext(1, 500);
+		consul.node("agent-c").failNext(1, 500);
+		hosts.clear();
+		assertEquals(500, get().getStatusCode());
+		assertEquals(1, hosts.size());
+	}
+
+	@Test
+	public void failsWhenNoAgentCanBeReached() {
+		final ConsulFacadeBean facade = facade();
+		assertEquals(Optional.of(true), facade.pollConsul(SERVICE_NAME));
+		hosts.clear();
+		consul.node("agent-a").reachable(false);
+		consul.node("agent-b").reachable(false);
+		consul.node("agent-c").reachable(false);
+		try {
+			get();
+			fail("Expected the connection failure to be passed on");
+		} catch (final CompletionException e) {
+			assertTrue(e.getCause() instanceof ConnectException);
+		}
+		assertEquals(Arrays.asList("agent-a", "agent-b", "agent-c"), hosts);
+		assertFalse(facade.pollConsul(SERVICE_NAME).orElse(false));
+	}
+
+	@Test
+	public void leavesForeignUrlsAlone() {
+		final CompletableFuture<ConsulHttpResponse> response = transport.execute(ConsulHttpRequest.get(AGENT_C + "/v1/kv/other"));
+		assertEquals(404, response.join().getStatusCode());
+		assertEquals(Collections.singletonList("agent-c"), hosts);
+	}
+}
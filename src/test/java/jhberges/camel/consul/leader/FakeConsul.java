@@ -0,0 +1,499 @@
+package jhberges.camel.consul.leader;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * In-memory stand-in for the parts of the Consul HTTP API that {@link ConsulFacadeBean} uses: sessions with TTL and
+ * lock-delay, KV reads (single and recursive), <code>?acquire=</code>/<code>?release=</code>, blocking queries and
+ * <code>/v1/txn</code>.
+ * <p>
+ * Time only moves through {@link #advance(long, TimeUnit)}, which expires sessions and times out blocking queries.
+ * Each simulated node talks through its own {@link #node(String)} transport, on which latency and faults can be
+ * injected. Sessions are invalidated exactly at their TTL, where a real agent may allow up to twice that.
+ */
+class FakeConsul {
+	static final String URL = "http://fake-consul:8500";
+
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+	private static final ScheduledExecutorService latencyTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		final Thread thread = new Thread(runnable, "fake-consul-latency");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private static final class Session {
+		private final String id;
+		private final String name;
+		private final long ttlInMillis;
+		private final long lockDelayInMillis;
+		private long expiresAt;
+
+		private Session(final String id, final String name, final long ttlInMillis, final long lockDelayInMillis, final long now) {
+			this.id = id;
+			this.name = name;
+			this.ttlInMillis = ttlInMillis;
+			this.lockDelayInMillis = lockDelayInMillis;
+			this.expiresAt = now + ttlInMillis;
+		}
+	}
+
+	private static final class Entry {
+		private final String key;
+		private final long createIndex;
+		private long modifyIndex;
+		private long lockIndex;
+		private String session;
+		private String value;
+		private long lockDelayUntil;
+
+		private Entry(final String key, final long index) {
+			this.key = key;
+			this.createIndex = index;
+			this.modifyIndex = index;
+		}
+	}
+
+	private static final class BlockingQuery {
+		private final String key;
+		private final boolean recurse;
+		private final long index;
+		private final long deadline;
+		private final CompletableFuture<ConsulHttpResponse> response;
+
+		private BlockingQuery(final String key, final boolean recurse, final long index, final long deadline,
+				final CompletableFuture<ConsulHttpResponse> response) {
+			this.key = key;
+			this.recurse = recurse;
+			this.index = index;
+			this.deadline = deadline;
+			this.response = response;
+		}
+	}
+
+	/**
+	 * One simulated client node, with its own latency and faults.
+	 */
+	class Node implements ConsulHttpTransport {
+		private final String name;
+		private volatile boolean reachable = true;
+		private volatile long latencyInMillis = 0;
+		private final AtomicInteger failuresLeft = new AtomicInteger();
+		private volatile int failureStatus = 500;
+		private final AtomicLong requests = new AtomicLong();
+
+		private Node(final String name) {
+			this.name = name;
+		}
+
+		String getName() {
+			return name;
+		}
+
+		/**
+		 * Unreachable nodes get a {@link ConnectException}, as if the agent was down or partitioned away.
+		 */
+		Node reachable(final boolean reachable) {
+			this.reachable = reachable;
+			return this;
+		}
+
+		/**
+		 * Real (wall-clock) delay before each response is delivered.
+		 */
+		Node withLatency(final long latencyInMillis) {
+			this.latencyInMillis = latencyInMillis;
+			return this;
+		}
+
+		/**
+		 * The next <code>count</code> requests are answered with <code>statusCode</code> without touching any state.
+		 */
+		Node failNext(final int count, final int statusCode) {
+			failureStatus = statusCode;
+			failuresLeft.set(count);
+			return this;
+		}
+
+		long getRequestCount() {
+			return requests.get();
+		}
+
+		@Override
+		public CompletableFuture<ConsulHttpResponse> execute(final ConsulHttpRequest request) {
+			requests.incrementAndGet();
+			totalRequests.incrementAndGet();
+			final CompletableFuture<ConsulHttpResponse> response;
+			if (!reachable) {
+				response = new CompletableFuture<>();
+				response.completeExceptionally(new ConnectException("Connection refused"));
+			} else if (failuresLeft.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+				response = CompletableFuture.completedFuture(response(failureStatus, "Injected failure", Optional.empty()));
+			} else {
+				response = handle(request);
+			}
+			final long latency = latencyInMillis;
+			if (latency <= 0) {
+				return response;
+			}
+			final CompletableFuture<ConsulHttpResponse> delayed = new CompletableFuture<>();
+			response.whenComplete((result, throwable) -> latencyTimer.schedule(() -> {
+				if (throwable != null) {
+					delayed.completeExceptionally(throwable);
+				} else {
+					delayed.complete(result);
+				}
+			}, latency, TimeUnit.MILLISECONDS));
+			return delayed;
+		}
+	}
+
+	private final Map<String, Session> sessions = new HashMap<>();
+	private final TreeMap<String, Entry> entries = new TreeMap<>();
+	private final List<BlockingQuery> blockingQueries = new ArrayList<>();
+	private final Map<String, Node> nodes = new ConcurrentHashMap<>();
+	private final AtomicLong totalRequests = new AtomicLong();
+	private long now = 0;
+	private long index = 1;
+
+	Node node(final String name) {
+		return nodes.computeIfAbsent(name, Node::new);
+	}
+
+	synchronized long now() {
+		return now;
+	}
+
+	long getRequestCount() {
+		return totalRequests.get();
+	}
+
+	/**
+	 * Moves the clock, invalidating sessions whose TTL ran out and completing blocking queries whose wait elapsed.
+	 */
+	void advance(final long amount, final TimeUnit unit) {
+		final List<Runnable> completions = new ArrayList<>();
+		synchronized (this) {
+			now += unit.toMillis(amount);
+			final Iterator<Session> expired = sessions.values().iterator();
+			while (expired.hasNext()) {
+				final Session session = expired.next();
+				if (session.expiresAt <= now) {
+					expired.remove();
+					invalidate(session);
+				}
+			}
+			collectWakeUps(completions);
+		}
+		completions.forEach(Runnable::run);
+	}
+
+	/**
+	 * @return the session currently holding <code>key</code>
+	 */
+	synchronized Optional<String> holder(final String key) {
+		return Optional.ofNullable(entries.get(key)).map(entry -> entry.session);
+	}
+
+	synchronized boolean isSessionValid(final String sessionId) {
+		return sessions.containsKey(sessionId);
+	}
+
+	private CompletableFuture<ConsulHttpResponse> handle(final ConsulHttpRequest request) {
+		final URI uri = URI.create(request.getUri());
+		final String path = uri.getPath();
+		final Map<String, String> query = parseQuery(uri.getRawQuery());
+		final List<Runnable> completions = new ArrayList<>();
+		final CompletableFuture<ConsulHttpResponse> response;
+		synchronized (this) {
+			if (path.startsWith("/v1/session/")) {
+				response = CompletableFuture.completedFuture(session(request, path.substring("/v1/session/".length())));
+			} else if (path.equals("/v1/txn")) {
+				response = CompletableFuture.completedFuture(transaction(request));
+			} else if (path.startsWith("/v1/kv/")) {
+				response = keyValue(request, path.substring("/v1/kv/".length()), query);
+			} else {
+				response = CompletableFuture.completedFuture(response(404, "", Optional.of(index)));
+			}
+			collectWakeUps(completions);
+		}
+		completions.forEach(Runnable::run);
+		return response;
+	}
+
+	private ConsulHttpResponse session(final ConsulHttpRequest request, final String operation) {
+		if (operation.equals("create")) {
+			final Map<String, String> body = readBody(request);
+			final Session session = new Session(UUID.randomUUID().toString(), body.getOrDefault("Name", ""),
+					parseDuration(body.getOrDefault("TTL", "0s")), parseDuration(body.getOrDefault("LockDelay", "15s")), now);
+			sessions.put(session.id, session);
+			index++;
+			return response(200, "{\"ID\":\"" + session.id + "\"}", Optional.of(index));
+		} else if (operation.startsWith("renew/")) {
+			final Session session = sessions.get(operation.substring("renew/".length()));
+			if (session == null) {
+				return response(404, "Session id '" + operation.substring("renew/".length()) + "' not found", Optional.of(index));
+			}
+			session.expiresAt = now + session.ttlInMillis;
+			return response(200, "[{\"ID\":\"" + session.id + "\",\"TTL\":\"" + session.ttlInMillis / 1000 + "s\"}]",
+					Optional.of(index));
+		} else if (operation.equals("list")) {
+			final StringBuilder json = new StringBuilder("[");
+			sessions.values().forEach(session -> json.append(json.length() > 1 ? "," : "")
+					.append("{\"ID\":\"").append(session.id).append("\",\"Name\":\"").append(session.name).append("\"}"));
+			return response(200, json.append(']').toString(), Optional.of(index));
+		} else if (operation.startsWith("destroy/")) {
+			final Session session = sessions.remove(operation.substring("destroy/".length()));
+			if (session != null) {
+				invalidate(session);
+			}
+			return response(200, "true", Optional.of(index));
+		}
+		return response(404, "", Optional.of(index));
+	}
+
+	private CompletableFuture<ConsulHttpResponse> keyValue(final ConsulHttpRequest request, final String key,
+			final Map<String, String> query) {
+		if (ConsulHttpRequest.PUT.equals(request.getMethod())) {
+			if (query.containsKey("acquire")) {
+				final Optional<ConsulHttpResponse> invalid = invalidSession(query.get("acquire"));
+				return CompletableFuture.completedFuture(invalid.orElseGet(
+						() -> response(200, String.valueOf(acquire(key, query.get("acquire"), encode(request.getBody()))),
+								Optional.of(index))));
+			} else if (query.containsKey("release")) {
+				return CompletableFuture.completedFuture(
+						response(200, String.valueOf(release(key, query.get("release"))), Optional.of(index)));
+			}
+			final Entry entry = entries.computeIfAbsent(key, k -> new Entry(k, index + 1));
+			entry.value = encode(request.getBody());
+			entry.modifyIndex = ++index;
+			return CompletableFuture.completedFuture(response(200, "true", Optional.of(index)));
+		}
+		final boolean recurse = query.containsKey("recurse");
+		final long queryIndex = Long.parseLong(query.getOrDefault("index", "0"));
+		if (queryIndex > 0 && indexOf(key, recurse) <= queryIndex) {
+			final CompletableFuture<ConsulHttpResponse> response = new CompletableFuture<>();
+			final long wait = query.containsKey("wait") ? parseDuration(query.get("wait")) : TimeUnit.MINUTES.toMillis(5);
+			blockingQueries.add(new BlockingQuery(key, recurse, queryIndex, now + wait, response));
+			return response;
+		}
+		return CompletableFuture.completedFuture(read(key, recurse));
+	}
+
+	private ConsulHttpResponse transaction(final ConsulHttpRequest request) {
+		final List<Map<String, Map<String, String>>> operations;
+		try {
+			operations = objectMapper.readValue(request.getBody().orElse("[]"),
+					new TypeReference<List<Map<String, Map<String, String>>>>() {
+					});
+		} catch (final IOException e) {
+			return response(400, "Failed to parse body: " + e.getMessage(), Optional.empty());
+		}
+		// Validate everything first; a real transaction is all or nothing
+		final Set<String> locked = new HashSet<>();
+		for (int i = 0; i < operations.size(); i++) {
+			final Map<String, String> kv = operations.get(i).get("KV");
+			final Entry entry = entries.get(kv.get("Key"));
+			final String session = kv.get("Session");
+			final String verb = kv.get("Verb");
+			final boolean ok;
+			if ("lock".equals(verb)) {
+				ok = sessions.containsKey(session) && canAcquire(entry, session) && locked.add(kv.get("Key"));
+			} else if ("check-session".equals(verb)) {
+				ok = entry != null && session.equals(entry.session);
+			} else if ("get".equals(verb)) {
+				ok = entry != null || locked.contains(kv.get("Key"));
+			} else {
+				return response(400, "Unsupported verb " + verb, Optional.empty());
+			}
+			if (!ok) {
+				return response(409, "{\"Results\":null,\"Errors\":[{\"OpIndex\":" + i + ",\"What\":\"" + verb + " failed\"}]}",
+						Optional.empty());
+			}
+		}
+		final StringBuilder results = new StringBuilder("{\"Results\":[");
+		for (final Map<String, Map<String, String>> operation : operations) {
+			final Map<String, String> kv = operation.get("KV");
+			if ("lock".equals(kv.get("Verb"))) {
+				acquire(kv.get("Key"), kv.get("Session"), kv.get("Value"));
+			}
+			results.append(results.charAt(results.length() - 1) == '[' ? "" : ",")
+					.append("{\"KV\":").append(json(entries.get(kv.get("Key")))).append('}');
+		}
+		return response(200, results.append("],\"Errors\":null}").toString(), Optional.of(index));
+	}
+
+	private Optional<ConsulHttpResponse> invalidSession(final String sessionId) {
+		return sessions.containsKey(sessionId)
+				? Optional.empty()
+				: Optional.of(response(500, "invalid session \"" + sessionId + "\"", Optional.of(index)));
+	}
+
+	private boolean canAcquire(final Entry entry, final String sessionId) {
+		if (entry == null) {
+			return true;
+		}
+		if (entry.session != null) {
+			return entry.session.equals(sessionId);
+		}
+		return entry.lockDelayUntil <= now;
+	}
+
+	private boolean acquire(final String key, final String sessionId, final String value) {
+		final Entry existing = entries.get(key);
+		if (!canAcquire(existing, sessionId)) {
+			return false;
+		}
+		final Entry entry = existing != null ? existing : new Entry(key, index + 1);
+		entries.put(key, entry);
+		if (!sessionId.equals(entry.session)) {
+			entry.session = sessionId;
+			entry.lockIndex++;
+		}
+		entry.value = value;
+		entry.modifyIndex = ++index;
+		return true;
+	}
+
+	private boolean release(final String key, final String sessionId) {
+		final Entry entry = entries.get(key);
+		if (entry == null || !sessionId.equals(entry.session)) {
+			return false;
+		}
+		entry.session = null;
+		entry.modifyIndex = ++index;
+		return true;
+	}
+
+	private void invalidate(final Session session) {
+		for (final Entry entry : entries.values()) {
+			if (session.id.equals(entry.session)) {
+				entry.session = null;
+				entry.lockDelayUntil = now + session.lockDelayInMillis;
+				entry.modifyIndex = ++index;
+			}
+		}
+	}
+
+	private long indexOf(final String key, final boolean recurse) {
+		if (!recurse) {
+			return Optional.ofNullable(entries.get(key)).map(entry -> entry.modifyIndex).orElse(index);
+		}
+		long max = 0;
+		for (final Entry entry : entries.tailMap(key).values()) {
+			if (!entry.key.startsWith(key)) {
+				break;
+			}
+			max = Math.max(max, entry.modifyIndex);
+		}
+		return max > 0 ? max : index;
+	}
+
+	private ConsulHttpResponse read(final String key, final boolean recurse) {
+		final long keyIndex = indexOf(key, recurse);
+		if (!recurse) {
+			final Entry entry = entries.get(key);
+			return entry == null
+					? response(404, "", Optional.of(keyIndex))
+					: response(200, "[" + json(entry) + "]", Optional.of(keyIndex));
+		}
+		final StringBuilder json = new StringBuilder("[");
+		for (final Entry entry : entries.tailMap(key).values()) {
+			if (!entry.key.startsWith(key)) {
+				break;
+			}
+			json.append(json.length() > 1 ? "," : "").append(json(entry));
+		}
+		return json.length() > 1
+				? response(200, json.append(']').toString(), Optional.of(keyIndex))
+				: response(404, "", Optional.of(keyIndex));
+	}
+
+	/**
+	 * Must be called holding the monitor; the returned completions are to be run after releasing it.
+	 */
+	private void collectWakeUps(final List<Runnable> completions) {
+		final Iterator<BlockingQuery> queries = blockingQueries.iterator();
+		while (queries.hasNext()) {
+			final BlockingQuery query = queries.next();
+			if (indexOf(query.key, query.recurse) > query.index || query.deadline <= now) {
+				queries.remove();
+				final ConsulHttpResponse response = read(query.key, query.recurse);
+				completions.add(() -> query.response.complete(response));
+			}
+		}
+	}
+
+	private static String json(final Entry entry) {
+		return "{\"LockIndex\":" + entry.lockIndex + ",\"Key\":\"" + entry.key + "\",\"Flags\":0,\"Value\":"
+				+ (entry.value == null ? "null" : "\"" + entry.value + "\"") + ","
+				+ (entry.session == null ? "" : "\"Session\":\"" + entry.session + "\",")
+				+ "\"CreateIndex\":" + entry.createIndex + ",\"ModifyIndex\":" + entry.modifyIndex + "}";
+	}
+
+	private static String encode(final Optional<String> body) {
+		return body.map(_body -> Base64.getEncoder().encodeToString(_body.getBytes(StandardCharsets.UTF_8))).orElse(null);
+	}
+
+	private static ConsulHttpResponse response(final int status, final String body, final Optional<Long> consulIndex) {
+		return new ConsulHttpResponse(status, "HTTP/1.1 " + status, consulIndex, body.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static Map<String, String> readBody(final ConsulHttpRequest request) {
+		try {
+			return objectMapper.readValue(request.getBody().orElse("{}"), new TypeReference<Map<String, String>>() {
+			});
+		} catch (final IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	private static Map<String, String> parseQuery(final String query) {
+		final Map<String, String> parameters = new HashMap<>();
+		if (query != null) {
+			for (final String parameter : query.split("&")) {
+				final int separator = parameter.indexOf('=');
+				if (separator < 0) {
+					parameters.put(parameter, "");
+				} else {
+					parameters.put(parameter.substring(0, separator), parameter.substring(separator + 1));
+				}
+			}
+		}
+		return parameters;
+	}
+
+	private static long parseDuration(final String duration) {
+		if (duration.endsWith("ms")) {
+			return Long.parseLong(duration.substring(0, duration.length() - 2));
+		} else if (duration.endsWith("s")) {
+			return TimeUnit.SECONDS.toMillis(Long.parseLong(duration.substring(0, duration.length() - 1)));
+		} else if (duration.endsWith("m")) {
+			return TimeUnit.MINUTES.toMillis(Long.parseLong(duration.substring(0, duration.length() - 1)));
+		}
+		return Long.parseLong(duration);
+	}
+}
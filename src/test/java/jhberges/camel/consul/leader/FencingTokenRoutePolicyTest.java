@@ -0,0 +1,31 @@
+package jhberges.camel.consul.leader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.junit.Test;
+
+public class FencingTokenRoutePolicyTest {
+
+	@Test
+	public void stampsTheCurrentTokenOnEachExchange() {
+		final AtomicReference<Optional<Long>> token = new AtomicReference<>(Optional.empty());
+		final FencingTokenRoutePolicy policy = new FencingTokenRoutePolicy(token::get);
+		final DefaultCamelContext camelContext = new DefaultCamelContext();
+
+		final Exchange before = new DefaultExchange(camelContext);
+		policy.onExchangeBegin(null, before);
+		assertNull(before.getIn().getHeader(FencingTokenRoutePolicy.FENCING_TOKEN_HEADER));
+
+		token.set(Optional.of(42L));
+		final Exchange after = new DefaultExchange(camelContext);
+		policy.onExchangeBegin(null, after);
+		assertEquals(42L, after.getIn().getHeader(FencingTokenRoutePolicy.FENCING_TOKEN_HEADER, Long.class).longValue());
+	}
+}
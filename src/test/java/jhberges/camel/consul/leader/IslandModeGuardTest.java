@@ -0,0 +1,95 @@
+package jhberges.camel.consul.leader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ServerSocket;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class IslandModeGuardTest {
+	private static final String SERVICE_NAME = "guarded-service";
+	private static final Optional<Boolean> UNKNOWN = Optional.empty();
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	private static boolean leads(final IslandModeGuard guard, final Optional<Boolean> isLeader, final long now) {
+		return guard.leads(SERVICE_NAME, isLeader, () -> Optional.of("http://leader:8080"), now);
+	}
+
+	@Test
+	public void withoutThresholdsEveryNodeIsAnIslandAtOnce() {
+		final IslandModeGuard island = new IslandModeGuard(true);
+		assertFalse(leads(island, Optional.of(false), 0));
+		assertTrue(leads(island, UNKNOWN, 0));
+
+		final IslandModeGuard noIsland = new IslandModeGuard(false);
+		assertTrue(leads(noIsland, Optional.of(true), 0));
+		assertFalse(leads(noIsland, UNKNOWN, 0));
+	}
+
+	@Test
+	public void lastKnownStateIsKeptUntilBothThresholdsArePassed() {
+		final IslandModeGuard guard = new IslandModeGuard(true, 3, 10_000, false, Optional.empty());
+		assertFalse(leads(guard, Optional.of(false), 0));
+		assertFalse(leads(guard, UNKNOWN, 0));
+		assertFalse(leads(guard, UNKNOWN, SECOND));
+		// Three polls, but not yet for ten seconds
+		assertFalse(leads(guard, UNKNOWN, 2 * SECOND));
+		assertTrue(leads(guard, UNKNOWN, 10 * SECOND));
+
+		// Reaching Consul again ends the outage
+		assertFalse(leads(guard, Optional.of(false), 11 * SECOND));
+		assertFalse(leads(guard, UNKNOWN, 30 * SECOND));
+
+		final IslandModeGuard leader = new IslandModeGuard(true, 3, 10_000, false, Optional.empty());
+		assertTrue(leads(leader, Optional.of(true), 0));
+		assertTrue(leads(leader, UNKNOWN, 0));
+	}
+
+	@Test
+	public void lastKnownLeaderKeepsRunningAndFollowersAskIt() {
+		final AtomicInteger checks = new AtomicInteger();
+		final boolean[] alive = { true };
+		final IslandModeGuard follower = new IslandModeGuard(true, 1, 0, true, Optional.of((serviceName, address) -> {
+			checks.incrementAndGet();
+			assertEquals(Optional.of("http://leader:8080"), address);
+			return Optional.of(alive[0]);
+		}));
+		assertFalse(leads(follower, Optional.of(false), 0));
+		assertFalse(leads(follower, UNKNOWN, SECOND));
+		alive[0] = false;
+		assertTrue(leads(follower, UNKNOWN, 2 * SECOND));
+		assertEquals(2, checks.get());
+
+		final IslandModeGuard leader = new IslandModeGuard(false, 1, 0, true, Optional.empty());
+		assertTrue(leads(leader, Optional.of(true), 0));
+		assertTrue(leads(leader, UNKNOWN, SECOND));
+
+		final IslandModeGuard unchecked = new IslandModeGuard(true, 1, 0, true, Optional.empty());
+		assertFalse(leads(unchecked, Optional.of(false), 0));
+		assertFalse(leads(unchecked, UNKNOWN, SECOND));
+	}
+
+	@Test
+	public void followerStaysStoppedWhenTheLeaderAdvertisesNoAddress() {
+		final IslandModeGuard follower = new IslandModeGuard(true, 1, 0, true, Optional.of(PeerCheck.connecting(1000)));
+		assertFalse(follower.leads(SERVICE_NAME, Optional.of(false), Optional::empty, 0));
+		assertFalse(follower.leads(SERVICE_NAME, UNKNOWN, Optional::empty, SECOND));
+		assertFalse(follower.leads(SERVICE_NAME, UNKNOWN, Optional::empty, 60 * SECOND));
+	}
+
+	@Test
+	public void connectingCheckFindsListeningLeaderAlive() throws Exception {
+		final PeerCheck check = PeerCheck.connecting(1000);
+		try (final ServerSocket server = new ServerSocket(0)) {
+			assertEquals(Optional.of(true),
+					check.isLeaderAlive(SERVICE_NAME, Optional.of("jetty:http://localhost:" + server.getLocalPort() + "/in")));
+		}
+		assertEquals(Optional.empty(), check.isLeaderAlive(SERVICE_NAME, Optional.of("direct-vm:leader")));
+		assertEquals(Optional.empty(), check.isLeaderAlive(SERVICE_NAME, Optional.empty()));
+	}
+}
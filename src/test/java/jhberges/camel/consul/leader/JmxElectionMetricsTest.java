@@ -0,0 +1,83 @@
+package jhberges.camel.consul.leader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JmxElectionMetricsTest {
+	private static final String SERVICE_NAME = "jmx-service";
+	private MBeanServer mBeanServer;
+	private JmxElectionMetrics metrics;
+
+	@Before
+	public void before() {
+		mBeanServer = MBeanServerFactory.newMBeanServer();
+		metrics = new JmxElectionMetrics(mBeanServer);
+	}
+
+	@After
+	public void after() {
+		metrics.close();
+	}
+
+	@Test
+	public void publishesPerServiceStatistics() throws Exception {
+		metrics.requestCompleted(SERVICE_NAME, ElectionMetrics.Operation.RENEW, TimeUnit.MILLISECONDS.toNanos(2), true);
+		metrics.requestCompleted(SERVICE_NAME, ElectionMetrics.Operation.RENEW, TimeUnit.MILLISECONDS.toNanos(4), false);
+		metrics.pollCompleted(SERVICE_NAME, Optional.of(true));
+		metrics.pollCompleted(SERVICE_NAME, Optional.empty());
+		metrics.leadershipAcquired(SERVICE_NAME);
+		metrics.failoverCompleted(SERVICE_NAME, 1500);
+		metrics.routeStateChanged(SERVICE_NAME, "route", true);
+
+		final ObjectName name = JmxElectionMetrics.objectName(SERVICE_NAME);
+		final CompositeData renew = (CompositeData) mBeanServer.getAttribute(name, "Renew");
+		assertEquals(2L, renew.get("count"));
+		assertEquals(1L, renew.get("failures"));
+		assertEquals(3.0, (Double) renew.get("meanMillis"), 0.001);
+		assertEquals(4.0, (Double) renew.get("maxMillis"), 0.001);
+		assertEquals(0L, ((CompositeData) mBeanServer.getAttribute(name, "Acquire")).get("count"));
+		assertEquals(1L, mBeanServer.getAttribute(name, "LeaderPolls"));
+		assertEquals(1L, mBeanServer.getAttribute(name, "UnknownPolls"));
+		assertEquals(1L, mBeanServer.getAttribute(name, "LeadershipAcquired"));
+		assertEquals(1500L, mBeanServer.getAttribute(name, "LastFailoverMillis"));
+		assertEquals(true, mBeanServer.getAttribute(name, "Leader"));
+		assertEquals(true, mBeanServer.getAttribute(name, "RouteRunning"));
+
+		metrics.leadershipLost(SERVICE_NAME);
+		assertEquals(false, mBeanServer.getAttribute(name, "Leader"));
+	}
+
+	@Test
+	public void unregistersOnClose() throws Exception {
+		metrics.sessionRecreated(SERVICE_NAME);
+		assertTrue(mBeanServer.isRegistered(JmxElectionMetrics.objectName(SERVICE_NAME)));
+		metrics.close();
+		assertFalse(mBeanServer.isRegistered(JmxElectionMetrics.objectName(SERVICE_NAME)));
+	}
+
+	@Test
+	public void publishesConnectionPoolUtilisation() throws Exception {
+		try (final PooledConsulHttpClient pool = new PooledConsulHttpClient(5, 2, 1000, 1000, 1000)) {
+			metrics.connectionPoolUsed(SERVICE_NAME, pool);
+			final ObjectName name = JmxElectionMetrics.connectionPoolObjectName(SERVICE_NAME);
+			assertEquals(0, mBeanServer.getAttribute(name, "Leased"));
+			assertEquals(0, mBeanServer.getAttribute(name, "Pending"));
+			assertEquals(5, mBeanServer.getAttribute(name, "Max"));
+			metrics.close();
+			assertFalse(mBeanServer.isRegistered(name));
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package jhberges.camel.consul.leader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jhberges.camel.consul.leader.ElectionMetrics.Operation;
+import jhberges.camel.consul.leader.LeadershipRecorder.Record;
+import jhberges.camel.consul.leader.LeadershipRecorder.Type;
+import jhberges.camel.consul.leader.LeadershipRecordingAnalyzer.Interval;
+
+public class LeadershipRecorderTest {
+	private static final String SERVICE_NAME = "recorded-service";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void ringKeepsTheLatestRecords() {
+		final LeadershipRecorder recorder = LeadershipRecorder.inMemory(4);
+		for (int i = 1; i <= 6; i++) {
+			recorder.requestCompleted(SERVICE_NAME, Operation.RENEW, i, true);
+		}
+		assertEquals(6, recorder.getRecordCount());
+		assertEquals(Arrays.asList(3L, 4L, 5L, 6L),
+				recorder.records().stream().map(Record::getDurationInNanos).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void recordingIsReadBackWithNamesAndSession() throws Exception {
+		final Path path = folder.newFile("node.rec").toPath();
+		final String session = UUID.randomUUID().toString();
+		try (final LeadershipRecorder recorder = LeadershipRecorder.mappedFile(path, 16)) {
+			recorder.pollCompleted(SERVICE_NAME, Optional.empty());
+			recorder.sessionCreated(SERVICE_NAME, session);
+			recorder.pollCompleted(SERVICE_NAME, Optional.of(true));
+			recorder.routeStateChanged(SERVICE_NAME, "route", true);
+		}
+		// Resumed after a restart
+		try (final LeadershipRecorder recorder = LeadershipRecorder.mappedFile(path, 16)) {
+			recorder.requestCompleted(SERVICE_NAME, Operation.CHECK, 1000, false);
+		}
+
+		final List<Record> records = LeadershipRecorder.read(path);
+		assertEquals(5, records.size());
+		assertEquals(Optional.empty(), records.get(0).getSession());
+		assertEquals(LeadershipRecorder.UNKNOWN, records.get(0).getOutcome());
+		assertEquals(Optional.of(session), records.get(2).getSession());
+		assertEquals(Type.POLL, records.get(2).getType());
+		assertEquals(SERVICE_NAME, records.get(2).getName());
+		assertEquals(LeadershipRecorder.YES, records.get(2).getOutcome());
+		assertEquals(Optional.of("route"), records.get(3).getRouteId());
+		assertEquals(Optional.of(Operation.CHECK), records.get(4).getOperation());
+		assertEquals(LeadershipRecorder.NO, records.get(4).getOutcome());
+
+		final Path dump = folder.newFile("dump.rec").toPath();
+		LeadershipRecorder.inMemory(2).dump(dump);
+		assertTrue(LeadershipRecorder.read(dump).isEmpty());
+	}
+
+	@Test
+	public void recorderFollowsTheElection() throws Exception {
+		final FakeConsul consul = new FakeConsul();
+		final LeadershipRecorder recorder = LeadershipRecorder.inMemory(64);
+		final ConsulFacadeBean facade = new ConsulFacadeBean(FakeConsul.URL, consul.node("node"), 10, 0, 1, 1, 1.0);
+		facade.setMetrics(ElectionMetrics.NONE.andThen(recorder));
+		facade.initSessionKey(SERVICE_NAME);
+		facade.pollConsul(SERVICE_NAME);
+
+		final List<Record> records = recorder.records();
+		assertEquals(Type.SESSION_CREATED, records.get(0).getType());
+		assertTrue(records.stream().filter(record -> record.getType() == Type.REQUEST).allMatch(record -> record.getSession().isPresent()));
+		assertEquals(consul.holder("service/" + SERVICE_NAME + "/leader"), records.get(records.size() - 1).getSession());
+	}
+
+	private static Record poll(final long time, final boolean leader) {
+		return new Record(time, new UUID(0, 0), SERVICE_NAME, Type.POLL, Optional.empty(),
+				leader ? LeadershipRecorder.YES : LeadershipRecorder.NO, 0, Optional.empty());
+	}
+
+	private static Record unknownPoll(final long time) {
+		return new Record(time, new UUID(0, 0), SERVICE_NAME, Type.POLL, Optional.empty(), LeadershipRecorder.UNKNOWN, 0,
+				Optional.empty());
+	}
+
+	private static Record acquired(final long time) {
+		return new Record(time, new UUID(0, 0), SERVICE_NAME, Type.ACQUIRED, Optional.empty(), LeadershipRecorder.YES, 0,
+				Optional.empty());
+	}
+
+	private static Record request(final long durationInMicros) {
+		return new Record(0, new UUID(0, 0), SERVICE_NAME, Type.REQUEST, Optional.of(Operation.RENEW),
+				LeadershipRecorder.YES, TimeUnit.MICROSECONDS.toNanos(durationInMicros), Optional.empty());
+	}
+
+	@Test
+	public void analyzerFindsGapsAndDualLeaders() {
+		final Map<String, List<Record>> recordings = new LinkedHashMap<>();
+		recordings.put("a", Arrays.asList(poll(0, true), poll(100, true), poll(200, false), poll(600, true), poll(700, true),
+				request(1), request(3)));
+		recordings.put("b", Arrays.asList(poll(0, false), poll(300, true), poll(400, false), poll(650, true), poll(900, true),
+				request(1000)));
+		final LeadershipRecordingAnalyzer analyzer = new LeadershipRecordingAnalyzer(recordings);
+
+		final List<Interval> leading = analyzer.leadingIntervals(SERVICE_NAME);
+		assertEquals(4, leading.size());
+
+		final List<Interval> gaps = analyzer.failoverGaps(SERVICE_NAME);
+		assertEquals(2, gaps.size());
+		assertEquals(100, gaps.get(0).getDurationInMillis());
+		assertEquals("a -> b", gaps.get(0).getNode());
+		assertEquals(200, gaps.get(1).getDurationInMillis());
+
+		final List<Interval> windows = analyzer.dualLeaderWindows(SERVICE_NAME);
+		assertEquals(1, windows.size());
+		assertEquals(650, windows.get(0).getStartInMillis());
+		assertEquals(700, windows.get(0).getEndInMillis());
+
+		final long[] expected = new long[LeadershipRecordingAnalyzer.BUCKETS];
+		expected[0] = 1;
+		expected[2] = 1;
+		expected[10] = 1;
+		assertArrayEquals(expected, analyzer.latencyHistograms().get(Operation.RENEW));
+		assertFalse(analyzer.latencyHistograms().containsKey(Operation.ACQUIRE));
+	}
+
+	@Test
+	public void partitionedLeaderKeepsLeadingThroughUnknownPolls() {
+		final Map<String, List<Record>> recordings = new LinkedHashMap<>();
+		// a loses Consul at 200, but goes on running its route as an island
+		recordings.put("a", Arrays.asList(poll(0, true), poll(100, true), unknownPoll(200), unknownPoll(300),
+				unknownPoll(400), poll(500, false)));
+		// b acquires the leader key once the session of a has expired
+		recordings.put("b", Arrays.asList(poll(0, false), poll(200, false), acquired(350), poll(350, true), poll(600, true)));
+		final LeadershipRecordingAnalyzer analyzer = new LeadershipRecordingAnalyzer(recordings);
+
+		final List<Interval> leading = analyzer.leadingIntervals(SERVICE_NAME);
+		assertEquals(2, leading.size());
+		assertEquals(500, leading.get(0).getEndInMillis());
+		assertTrue(analyzer.failoverGaps(SERVICE_NAME).isEmpty());
+
+		final List<Interval> windows = analyzer.dualLeaderWindows(SERVICE_NAME);
+		assertEquals(1, windows.size());
+		assertEquals("a + b", windows.get(0).getNode());
+		assertEquals(350, windows.get(0).getStartInMillis());
+		assertEquals(500, windows.get(0).getEndInMillis());
+	}
+}
@@ -0,0 +1,48 @@
+package jhberges.camel.consul.leader;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class MicrometerElectionMetricsTest {
+	private static final String SERVICE_NAME = "micrometer-service";
+
+	@Test
+	public void publishesMeters() {
+		final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		final MicrometerElectionMetrics metrics = new MicrometerElectionMetrics(registry);
+
+		metrics.requestCompleted(SERVICE_NAME, ElectionMetrics.Operation.ACQUIRE, TimeUnit.MILLISECONDS.toNanos(3), true);
+		metrics.pollCompleted(SERVICE_NAME, Optional.empty());
+		metrics.leadershipAcquired(SERVICE_NAME);
+		metrics.routeStateChanged(SERVICE_NAME, "route", true);
+		metrics.failoverCompleted(SERVICE_NAME, 1200);
+
+		assertEquals(1, registry.get("consul.leader.requests")
+				.tags("name", SERVICE_NAME, "operation", "acquire", "outcome", "success").timer().count());
+		assertEquals(1.0, registry.get("consul.leader.polls").tags("result", "unknown").counter().count(), 0.0);
+		assertEquals(1.0, registry.get("consul.leader.transitions").tags("transition", "acquired").counter().count(), 0.0);
+		assertEquals(1.0, registry.get("consul.leader.leader").tags("service", SERVICE_NAME).gauge().value(), 0.0);
+		assertEquals(1.0, registry.get("consul.leader.route.running").gauge().value(), 0.0);
+		assertEquals(1200.0, registry.get("consul.leader.failover").timer().totalTime(TimeUnit.MILLISECONDS), 0.0);
+
+		metrics.leadershipLost(SERVICE_NAME);
+		assertEquals(0.0, registry.get("consul.leader.leader").gauge().value(), 0.0);
+	}
+
+	@Test
+	public void publishesConnectionPoolGauges() throws Exception {
+		final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		try (final PooledConsulHttpClient pool = new PooledConsulHttpClient(5, 2, 1000, 1000, 1000)) {
+			new MicrometerElectionMetrics(registry).connectionPoolUsed(SERVICE_NAME, pool);
+			assertEquals(0.0, registry.get("consul.leader.pool.connections").tags("state", "leased").gauge().value(), 0.0);
+			assertEquals(5.0, registry.get("consul.leader.pool.connections")
+					.tags("session", SERVICE_NAME, "state", "max").gauge().value(), 0.0);
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package jhberges.camel.consul.leader;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Optional;
+
+import org.apache.http.pool.PoolStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class PooledConsulHttpClientTest {
+	private HttpServer server;
+	private String url;
+
+	@Before
+	public void before() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", exchange -> {
+			final byte[] body = "true".getBytes();
+			exchange.sendResponseHeaders(200, body.length);
+			try (final OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+		url = String.format("http://localhost:%d", server.getAddress().getPort());
+	}
+
+	@After
+	public void after() {
+		server.stop(0);
+	}
+
+	@Test
+	public void connectionsAreReleasedAndKeptAlive() throws IOException {
+		final PooledConsulHttpClient pool = new PooledConsulHttpClient(4, 2, 1000, 1000, 30000);
+		try (final FluentConsulHttpTransport transport = new FluentConsulHttpTransport(
+				pool.newExecutor(), Runnable::run, Optional.of(pool), true)) {
+			for (int i = 0; i < 3; i++) {
+				assertEquals("true", transport.execute(ConsulHttpRequest.put(url + "/v1/kv/service/x/leader?acquire=S")).join().asString());
+			}
+			final PoolStats stats = transport.getConnectionPoolStats().get();
+			assertEquals(0, stats.getLeased());
+			assertEquals(1, stats.getAvailable());
+			assertEquals(4, stats.getMax());
+		}
+	}
+}
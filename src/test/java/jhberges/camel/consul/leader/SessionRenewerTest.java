@@ -0,0 +1,137 @@
+package jhberges.camel.consul.leader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SessionRenewerTest {
+	private static final String SERVICE_NAME = "renewed-service";
+	private static final int TTL_IN_SECONDS = 30;
+
+	private FakeConsul consul;
+	private final AtomicInteger renewals = new AtomicInteger();
+	private final AtomicBoolean failRenewals = new AtomicBoolean();
+	private CompletableFuture<ConsulHttpResponse> pendingRenewal;
+	private final SessionRenewer renewer = new SessionRenewer();
+
+	@Before
+	public void before() {
+		consul = new FakeConsul();
+	}
+
+	private ConsulFacadeBean facade(final String nodeName) {
+		final ConsulHttpTransport node = consul.node(nodeName);
+		final ConsulFacadeBean facade = new ConsulFacadeBean(FakeConsul.URL, request -> {
+			if (request.getUri().contains("/v1/session/renew/")) {
+				renewals.incrementAndGet();
+				if (failRenewals.get()) {
+					final CompletableFuture<ConsulHttpResponse> failed = new CompletableFuture<>();
+					failed.completeExceptionally(new IOException("Connection reset"));
+					return failed;
+				} else if (Objects.nonNull(pendingRenewal)) {
+					return pendingRenewal.thenCompose(ignored -> node.execute(request));
+				}
+			}
+			return node.execute(request);
+		}, TTL_IN_SECONDS, 0, 1, 1, 1.0);
+		facade.setSessionRenewer(renewer);
+		facade.initSessionKey(SERVICE_NAME);
+		return facade;
+	}
+
+	@Test
+	public void pollsTrustTheLatestRenewal() {
+		final ConsulFacadeBean leader = facade("leader");
+		final ConsulFacadeBean follower = facade("follower");
+		for (int i = 0; i < 10; i++) {
+			assertEquals(Optional.of(true), leader.pollConsul(SERVICE_NAME));
+			assertEquals(Optional.of(false), follower.pollConsul(SERVICE_NAME));
+		}
+		assertEquals(0, renewals.get());
+	}
+
+	@Test
+	public void dueSessionsAreRenewedTogether() throws Exception {
+		final ConsulFacadeBean first = facade("first");
+		final ConsulFacadeBean second = facade("second");
+		final long now = System.nanoTime();
+
+		renewer.renewDue(now);
+		assertEquals(0, renewals.get());
+		renewer.renewDue(now + TimeUnit.SECONDS.toNanos(TTL_IN_SECONDS / 3));
+		assertEquals(2, renewals.get());
+		// Just renewed, so not due again until another third of the TTL has passed
+		renewer.renewDue(now + TimeUnit.SECONDS.toNanos(TTL_IN_SECONDS / 3));
+		assertEquals(2, renewals.get());
+
+		first.close();
+		renewer.renewDue(now + TimeUnit.SECONDS.toNanos(TTL_IN_SECONDS));
+		assertEquals(3, renewals.get());
+		assertTrue(second.pollConsul(SERVICE_NAME).isPresent());
+	}
+
+	@Test
+	public void failedRenewalIsRetriedOnPoll() {
+		final ConsulFacadeBean facade = facade("node");
+		failRenewals.set(true);
+		renewer.renewDue(System.nanoTime() + TimeUnit.SECONDS.toNanos(TTL_IN_SECONDS / 3));
+		assertEquals(1, renewals.get());
+
+		// The renewer's last attempt failed, so the poll does not trust the earlier renewal
+		failRenewals.set(false);
+		assertEquals(Optional.of(true), facade.pollConsul(SERVICE_NAME));
+		assertEquals(2, renewals.get());
+		assertEquals(Optional.of(true), facade.pollConsul(SERVICE_NAME));
+		assertEquals(2, renewals.get());
+	}
+
+	@Test
+	public void lostSessionIsRecreatedByTheRenewer() {
+		final ConsulFacadeBean facade = facade("node");
+		assertEquals(Optional.of(true), facade.pollConsul(SERVICE_NAME));
+		consul.advance(TTL_IN_SECONDS + 1, TimeUnit.SECONDS);
+
+		renewer.renewDue(System.nanoTime() + TimeUnit.SECONDS.toNanos(TTL_IN_SECONDS));
+		assertEquals(1, renewals.get());
+		assertEquals(Optional.of(true), facade.pollConsul(SERVICE_NAME));
+		assertEquals(1, renewals.get());
+	}
+
+	@Test
+	public void renewalsAreDispatchedAndNotRepeatedWhileInFlight() {
+		final List<Runnable> dispatched = new ArrayList<>();
+		final SessionRenewer dispatching = new SessionRenewer(dispatched::add);
+		final ConsulFacadeBean facade = facade("node");
+		facade.setSessionRenewer(dispatching);
+		final long due = System.nanoTime() + TimeUnit.SECONDS.toNanos(TTL_IN_SECONDS / 3);
+
+		// The tick only hands the renewal over
+		dispatching.renewDue(due);
+		assertEquals(1, dispatched.size());
+		assertEquals(0, renewals.get());
+
+		// A slow agent: the renewal is still under way on the next tick, which leaves it alone
+		pendingRenewal = new CompletableFuture<>();
+		dispatched.remove(0).run();
+		assertEquals(1, renewals.get());
+		dispatching.renewDue(due + TimeUnit.SECONDS.toNanos(1));
+		assertTrue(dispatched.isEmpty());
+
+		// Once it is done, the session is renewed again when due
+		pendingRenewal.complete(null);
+		dispatching.renewDue(due + TimeUnit.SECONDS.toNanos(TTL_IN_SECONDS / 3));
+		assertEquals(1, dispatched.size());
+	}
+}
@@ -0,0 +1,37 @@
+package jhberges.camel.consul.leader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class VirtualThreadsTest {
+
+	@Test
+	public void runsTaskOnAVirtualThread() throws Exception {
+		assumeTrue(VirtualThreads.isAvailable());
+		final CompletableFuture<Boolean> isVirtual = new CompletableFuture<>();
+		final Thread thread = VirtualThreads.newThread("test", () -> {
+			try {
+				isVirtual.complete((Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()));
+			} catch (final ReflectiveOperationException e) {
+				isVirtual.completeExceptionally(e);
+			}
+		});
+		assertEquals("test", thread.getName());
+		thread.start();
+		assertTrue(isVirtual.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void unavailableBeforeJava21() {
+		assumeFalse(VirtualThreads.isAvailable());
+		VirtualThreads.newThread("test", () -> {
+		});
+	}
+}